@@ -21,71 +21,104 @@
 
 package server.markhome.msscf.msscf.cflib.dbutil;
 
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
 
+import jakarta.persistence.Access;
+import jakarta.persistence.AccessType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Embeddable;
+import jakarta.persistence.Transient;
 
 /**
  *
  * @author msobkow
  */
 @Embeddable
+@Access(AccessType.PROPERTY)
 public class CFLibDbKeyHash160 extends CFLibDbKeyHashBase<CFLibDbKeyHash160> implements Serializable {
 
   static final long serialVersionUID = 202505162130L;
   static final public  int HASH_LENGTH = 20; // SHA-1 hash size
   static final public int HASH_LENGTH_STRING = HASH_LENGTH * 2; // SHA-1 hash size as a string
+  static final public int HASH_LENGTH_BASE64 = (HASH_LENGTH * 8 + 5) / 6; // unpadded Base64url
+  static final public int HASH_LENGTH_BASE32 = (HASH_LENGTH * 8 + 4) / 5; // Crockford Base32
   static final String HASH_ALGO = "SHA-1";
 
   @Override
+  @Transient
   public int getHashLength() {
     return HASH_LENGTH;
   }
 
   @Override
+  @Transient
   public int getHashLengthString() {
     return HASH_LENGTH_STRING;
   }
 
   @Override
+  @Transient
   public String getHashAlgo() {
     return HASH_ALGO;
   }
 
-  static MessageDigest[] m = null;
-  @Override
-  protected MessageDigest[] getM() {
-    return m;
+  /**
+   * The key as 3 big-endian words; see CFLibDbKeyHashBase. The low four bytes of w2 are always zero.
+   * The fields cannot be final because JPA and setBytes() load a value into an existing key.
+   */
+  protected long w0, w1, w2;
+
+  /**
+   * False until the key is given a value; only the no-argument constructor leaves it unset.
+   */
+  protected boolean assigned;
+
+  /**
+   * Keys still serialize as the single "bytes" field of releases that stored a byte array,
+   * so streams written before the switch to words read back and older readers accept ours.
+   */
+  private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("bytes", byte[].class) };
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("bytes", getBytes());
+    out.writeFields();
   }
 
-  @Override
-  public void initStatics() {
-    if (m != null) {
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    byte[] b = (byte[]) fields.get("bytes", null);
+    if (b == null) {
+      // A key that had not been given a value
       return;
     }
-    super.initStatics();
-    try {
-      m = new MessageDigest[CONCURRENT_DIGESTS];
-      for (int i = 0; i < CONCURRENT_DIGESTS; i++) {
-        m[i] = MessageDigest.getInstance(HASH_ALGO);
-      }
-    }
-    catch (Exception e) {
-      e.printStackTrace();
+    if (b.length != HASH_LENGTH) {
+      throw new InvalidObjectException("bytes length is " + b.length + ".  Must be " + HASH_LENGTH + ".");
     }
+    setWordsFromBytes(b, 0);
   }
-  
-  // @Convert(converter = CFLibDbKeyHash160Converter.class)
-  @Column(name = "bytes", nullable = false)
-  protected byte[] bytes;
 
   public static byte[] sbytesFromHex(String string) {
     if (string == null) {
@@ -98,29 +131,117 @@ public class CFLibDbKeyHash160 extends CFLibDbKeyHashBase<CFLibDbKeyHash160> imp
     if (string == null) {
       return b;
     }
-
-    int n = string.length();
-    for (int i = 0; i < n; i += 2) {
-      b[i / 2] = (byte) ((Character.digit(string.charAt(i), 16) << 4) + Character.digit(string.charAt(i + 1), 16));
-    }
+    CFLibDbKeyHashHex.decode(string, 0, string.length(), b, 0);
     return b;
   }
 
+  /**
+   * Parse up to HASH_LENGTH_STRING hex digits, filling any missing trailing bytes with zeros; a null string gives the all-zero key.
+   */
   public static CFLibDbKeyHash160 fromHex(String string) {
-    byte[] b = sbytesFromHex(string);
+    if (string == null) {
+      return nullGet();
+    }
+    return fromHex(string, 0, string.length());
+  }
+
+  /**
+   * Parse the hex digits of s from from to to in a single validating pass, without copying the range out of s.
+   */
+  public static CFLibDbKeyHash160 fromHex(CharSequence s, int from, int to) {
     CFLibDbKeyHash160 h = new CFLibDbKeyHash160();
-    h.bytes = b;
+    h.parseHex(s, from, to);
     return h;
   }
 
+  /**
+   * Parse the HASH_LENGTH_BASE64 characters of toBase64(); a null string gives the all-zero key.
+   */
+  public static CFLibDbKeyHash160 fromBase64(CharSequence s) {
+    return fromEncoded(CFLibDbKeyHashEncoding.BASE64URL, s);
+  }
+
+  /**
+   * Parse the HASH_LENGTH_BASE32 characters of toBase32(), in either case; a null string gives the all-zero key.
+   */
+  public static CFLibDbKeyHash160 fromBase32(CharSequence s) {
+    return fromEncoded(CFLibDbKeyHashEncoding.BASE32, s);
+  }
+
+  static CFLibDbKeyHash160 fromEncoded(CFLibDbKeyHashEncoding encoding, CharSequence s) {
+    if (s == null) {
+      return nullGet();
+    }
+    CFLibDbKeyHash160 h = new CFLibDbKeyHash160();
+    h.parse(encoding, s, 0, s.length());
+    return h;
+  }
+
+  /**
+   * Parse a key written as HASH_LENGTH_STRING hex digits, HASH_LENGTH_BASE64 Base64url or HASH_LENGTH_BASE32 Base32 characters,
+   * telling them apart by length; a null string gives the all-zero key.
+   */
+  public static CFLibDbKeyHash160 fromAnyString(CharSequence s) {
+    if (s == null) {
+      return nullGet();
+    }
+    CFLibDbKeyHash160 h = new CFLibDbKeyHash160();
+    h.parseAny(s, 0, s.length());
+    return h;
+  }
+
+  /**
+   * Read the HASH_LENGTH raw bytes written by writeTo(ByteBuffer), advancing src past them.
+   */
+  public static CFLibDbKeyHash160 readFrom(ByteBuffer src) {
+    CFLibDbKeyHash160 h = new CFLibDbKeyHash160();
+    h.readWords(src);
+    return h;
+  }
+
+  /**
+   * Read the HASH_LENGTH raw bytes written by writeTo(DataOutput).
+   */
+  public static CFLibDbKeyHash160 readFrom(DataInput in) throws IOException {
+    CFLibDbKeyHash160 h = new CFLibDbKeyHash160();
+    h.readWords(in);
+    return h;
+  }
+
+  /**
+   * Read the count and packed keys written by CFLibDbKeyHashBase.writeAll() or CFLibDbKeyHash160Array.writeTo().
+   */
+  public static List<CFLibDbKeyHash160> readAll(DataInput in) throws IOException {
+    CFLibDbKeyHash160Array a = new CFLibDbKeyHash160Array(0);
+    a.addAllFrom(in);
+    return a.toList();
+  }
+
+  public static List<CFLibDbKeyHash160> readAll(ByteBuffer src) {
+    CFLibDbKeyHash160Array a = new CFLibDbKeyHash160Array(0);
+    a.addAllFrom(src);
+    return a.toList();
+  }
+
+  /**
+   * The canonical order of the width, unsigned byte by byte as compareTo(), with null before every key.
+   */
+  public static final Comparator<CFLibDbKeyHash160> NULLS_FIRST = CFLibDbKeyHashOrder.NATURAL_NULLS_FIRST.comparator();
+
+  /**
+   * The canonical order of the width, unsigned byte by byte as compareTo(), with null after every key.
+   */
+  public static final Comparator<CFLibDbKeyHash160> NULLS_LAST = CFLibDbKeyHashOrder.NATURAL_NULLS_LAST.comparator();
+
+  /**
+   * The order of compareOrdered(): signed byte by byte, with null before every key.  The comparator is a shared singleton.
+   */
   public static Comparator<CFLibDbKeyHash160> getComparator() {
+    return CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST.comparator();
+  }
 
-    return new Comparator<CFLibDbKeyHash160>() {
-      @Override
-      public int compare(CFLibDbKeyHash160 a, CFLibDbKeyHash160 b) {
-        return compareOrdered(a, b);
-      }
-    };
+  public static Comparator<CFLibDbKeyHash160> getComparator(CFLibDbKeyHashOrder order) {
+    return order.comparator();
   }
 
   public CFLibDbKeyHash160() {
@@ -143,43 +264,24 @@ public class CFLibDbKeyHash160 extends CFLibDbKeyHashBase<CFLibDbKeyHash160> imp
   }
 
   public CFLibDbKeyHash160(CFLibDbKeyHash224 k) {
-    super();
-    bytes = new byte[HASH_LENGTH];
-    if (k != null) {
-      System.arraycopy(k.getBytes(), 0, bytes, 0, HASH_LENGTH);
-    }
+    setWordsFrom(k);
   }
 
   public CFLibDbKeyHash160(CFLibDbKeyHash256 k) {
-    super();
-    bytes = new byte[HASH_LENGTH];
-    if (k != null) {
-      System.arraycopy(k.getBytes(), 0, bytes, 0, HASH_LENGTH);
-    }
+    setWordsFrom(k);
   }
 
   public CFLibDbKeyHash160(CFLibDbKeyHash384 k) {
-    super();
-    bytes = new byte[HASH_LENGTH];
-    if (k != null) {
-      System.arraycopy(k.getBytes(), 0, bytes, 0, HASH_LENGTH);
-    }
+    setWordsFrom(k);
   }
 
   public CFLibDbKeyHash160(CFLibDbKeyHash512 k) {
-    super();
-    bytes = new byte[HASH_LENGTH];
-    if (k != null) {
-      System.arraycopy(k.getBytes(), 0, bytes, 0, HASH_LENGTH);
-    }
+    setWordsFrom(k);
   }
 
   public static CFLibDbKeyHash160 fromInt(int v) {
     CFLibDbKeyHash160 h = nullGet();
-    h.bytes[3] = (byte) (v & 0xFF);
-    h.bytes[2] = (byte) ((v >> 8) & 0xFF);
-    h.bytes[1] = (byte) ((v >> 16) & 0xFF);
-    h.bytes[0] = (byte) ((v >> 24) & 0xFF);
+    h.w0 = ((long) v) << 32;
     return h;
   }
 
@@ -187,13 +289,211 @@ public class CFLibDbKeyHash160 extends CFLibDbKeyHashBase<CFLibDbKeyHash160> imp
     super(notUsed);
   }
 
+  public static CFLibDbKeyHashGenerator.Mode getGenerationMode() {
+    return CFLibDbKeyHashGenerator.getMode(HASH_LENGTH);
+  }
+
+  /**
+   * Choose between RANDOM keys and TIME_ORDERED keys for every CFLibDbKeyHash160 minted from now on.
+   */
+  public static void setGenerationMode(CFLibDbKeyHashGenerator.Mode mode) {
+    CFLibDbKeyHashGenerator.setMode(HASH_LENGTH, mode);
+  }
+
+  /**
+   * Mint count new keys in one pass, reusing a single digest and header for the whole batch.
+   */
+  public static CFLibDbKeyHash160[] generate(int count) {
+    return generate(count, null);
+  }
+
+  /**
+   * Mint count new keys, splitting batches of at least CFLibDbKeyHashGenerator.PARALLEL_THRESHOLD keys over pool.
+   * A null pool generates serially on the calling thread.
+   */
+  public static CFLibDbKeyHash160[] generate(int count, ForkJoinPool pool) {
+    CFLibDbKeyHash160[] r = new CFLibDbKeyHash160[count];
+    for (int i = 0; i < count; i++) {
+      r[i] = nullGet();
+    }
+    CFLibDbKeyHashGenerator.generate(HASH_LENGTH, HASH_ALGO, r, 0, count, pool);
+    return r;
+  }
+
+  /**
+   * Fill count entries of dst starting at offset with newly minted keys.
+   */
+  public static void generate(CFLibDbKeyHash160[] dst, int offset, int count) {
+    Objects.checkFromIndexSize(offset, count, dst.length);
+    for (int i = offset; i < offset + count; i++) {
+      dst[i] = nullGet();
+    }
+    CFLibDbKeyHashGenerator.generate(HASH_LENGTH, HASH_ALGO, dst, offset, count);
+  }
+
+  /**
+   * Mint count new keys packed back to back into dst starting at offset, HASH_LENGTH bytes apiece.
+   */
+  public static void generate(byte[] dst, int offset, int count) {
+    CFLibDbKeyHashGenerator.generate(HASH_LENGTH, HASH_ALGO, dst, offset, count);
+  }
+
+  /**
+   * Mint count new keys packed back to back into dst starting at offset, splitting large batches over pool.
+   */
+  public static void generate(byte[] dst, int offset, int count, ForkJoinPool pool) {
+    CFLibDbKeyHashGenerator.generate(HASH_LENGTH, HASH_ALGO, dst, offset, count, pool);
+  }
+
+  /**
+   * Mint count new keys packed back to back into dst at its position, advancing the position past the last key.
+   */
+  public static void generate(ByteBuffer dst, int count) {
+    CFLibDbKeyHashGenerator.generate(HASH_LENGTH, HASH_ALGO, dst, count);
+  }
+
+  /**
+   * Create a background pre-generation reservoir holding up to capacity keys; call start() on it to begin refilling.
+   */
+  public static CFLibDbKeyHashReservoir<CFLibDbKeyHash160> newReservoir(int capacity) {
+    return newReservoir(capacity, -1, -1);
+  }
+
+  /**
+   * Create a background pre-generation reservoir with explicit low and high watermarks; call start() on it to begin refilling.
+   */
+  public static CFLibDbKeyHashReservoir<CFLibDbKeyHash160> newReservoir(int capacity, int lowWater, int highWater) {
+    return new CFLibDbKeyHashReservoir<CFLibDbKeyHash160>("CFLibDbKeyHash160", capacity, lowWater, highWater, CFLibDbKeyHash160::generate, () -> new CFLibDbKeyHash160(0));
+  }
+
   public static final boolean isNull(CFLibDbKeyHash160 anId) {
     return anId == null || anId.isNull();
   }
 
+  /**
+   * A new copy of the key bytes, or null if the key has not been given a value.
+   * This is the persistent property; copyBytes() avoids the allocation.
+   */
   @Override
+  @Column(name = "bytes", nullable = false)
   public byte[] getBytes() {
-    return bytes;
+    if (!assigned) {
+      return null;
+    }
+    byte[] b = new byte[HASH_LENGTH];
+    copyBytes(b, 0);
+    return b;
+  }
+
+  @Override
+  public void copyBytes(byte[] dst, int offset) {
+    writeWord(dst, offset, w0, 8);
+    writeWord(dst, offset + 8, w1, 8);
+    writeWord(dst, offset + 16, w2, 4);
+  }
+
+  @Override
+  int wordCount() {
+    return 3;
+  }
+
+  @Override
+  long word(int index) {
+    switch (index) {
+      case 0: return w0;
+      case 1: return w1;
+      case 2: return w2;
+      default: throw new IndexOutOfBoundsException("index is " + index + ".  Must be >= 0 and < 3.");
+    }
+  }
+
+  @Override
+  void setWord(int index, long value) {
+    switch (index) {
+      case 0: w0 = value; break;
+      case 1: w1 = value; break;
+      case 2: w2 = value; break;
+      default: throw new IndexOutOfBoundsException("index is " + index + ".  Must be >= 0 and < 3.");
+    }
+    assigned = true;
+    hashCache = 0;
+  }
+
+  @Override
+  boolean wordsEqual(long[] words, int base) {
+    return words[base] == w0 && words[base + 1] == w1 && words[base + 2] == w2;
+  }
+
+  @Override
+  int compareWords(CFLibDbKeyHash160 o, long flip) {
+    if (w0 != o.w0) {
+      return Long.compareUnsigned(w0 ^ flip, o.w0 ^ flip);
+    }
+    if (w1 != o.w1) {
+      return Long.compareUnsigned(w1 ^ flip, o.w1 ^ flip);
+    }
+    if (w2 != o.w2) {
+      return Long.compareUnsigned(w2 ^ flip, o.w2 ^ flip);
+    }
+    return 0;
+  }
+
+  @Override
+  void copyWords(long[] words, int base) {
+    words[base] = w0;
+    words[base + 1] = w1;
+    words[base + 2] = w2;
+  }
+
+  @Override
+  boolean hasValue() {
+    return assigned;
+  }
+
+  @Override
+  int hashWords() {
+    long h = hashStep(0L, w0);
+    h = hashStep(h, w1);
+    h = hashStep(h, w2);
+    return hashFinish(h);
+  }
+
+  @Override
+  public boolean equals(Object aTest) {
+    if (aTest == this) {
+      return true;
+    }
+    if (aTest == null || aTest.getClass() != getClass()) {
+      return false;
+    }
+    CFLibDbKeyHash160 k = (CFLibDbKeyHash160) aTest;
+    return w0 == k.w0 && w1 == k.w1 && w2 == k.w2 && assigned == k.assigned;
+  }
+
+  @Override
+  @Transient
+  public boolean isNull() {
+    return (w0 | w1 | w2) == 0L;
+  }
+
+  @Override
+  public int compare(CFLibDbKeyHash160 h1, CFLibDbKeyHash160 h2) {
+    if (h1 == null) {
+      return h2 == null ? 0 : 1;
+    }
+    if (h2 == null) {
+      return -1;
+    }
+    if (h1.w0 != h2.w0) {
+      return Long.compareUnsigned(h1.w0, h2.w0);
+    }
+    if (h1.w1 != h2.w1) {
+      return Long.compareUnsigned(h1.w1, h2.w1);
+    }
+    if (h1.w2 != h2.w2) {
+      return Long.compareUnsigned(h1.w2, h2.w2);
+    }
+    return 0;
   }
 
   /**
@@ -201,7 +501,7 @@ public class CFLibDbKeyHash160 extends CFLibDbKeyHashBase<CFLibDbKeyHash160> imp
    */
   static public CFLibDbKeyHash160 nullGet() {
     CFLibDbKeyHash160 k = new CFLibDbKeyHash160();
-    k.bytes = new byte[HASH_LENGTH];
+    k.assigned = true;
     return k;
   }
 
@@ -223,13 +523,16 @@ public class CFLibDbKeyHash160 extends CFLibDbKeyHashBase<CFLibDbKeyHash160> imp
     if (newBytes.length != HASH_LENGTH) {
       throw new IllegalArgumentException("newBytes must be of length " + HASH_LENGTH + ".");
     }
-    bytes = newBytes.clone();
+    setWordsFromBytes(newBytes, 0);
   }
 
   /** Copy into existing key */
   @Override
   public void setBytes(byte[] newBytes, int offset,  int length) {
-      System.arraycopy(newBytes, offset, bytes, 0, Math.min(HASH_LENGTH,length));
+    byte[] b = new byte[HASH_LENGTH];
+    copyBytes(b, 0);
+    System.arraycopy(newBytes, offset, b, 0, Math.min(HASH_LENGTH,length));
+    setWordsFromBytes(b, 0);
   }
 
   static public int compareOrdered(CFLibDbKeyHash160 h1, CFLibDbKeyHash160 h2) {
@@ -246,11 +549,14 @@ public class CFLibDbKeyHash160 extends CFLibDbKeyHashBase<CFLibDbKeyHash160> imp
         return 1;
       }
       else {
-        for (int i = 0; i < HASH_LENGTH; i++) {
-          int v1 = h1.bytes[i] + 256;
-          int v2 = h2.bytes[i] + 256;
-          if (v1 < v2) return -1;
-          if (v1 > v2) return 1;
+        if (h1.w0 != h2.w0) {
+          return Long.compareUnsigned(h1.w0 ^ SIGN_BITS, h2.w0 ^ SIGN_BITS);
+        }
+        if (h1.w1 != h2.w1) {
+          return Long.compareUnsigned(h1.w1 ^ SIGN_BITS, h2.w1 ^ SIGN_BITS);
+        }
+        if (h1.w2 != h2.w2) {
+          return Long.compareUnsigned(h1.w2 ^ SIGN_BITS, h2.w2 ^ SIGN_BITS);
         }
       }
     }
@@ -259,104 +565,302 @@ public class CFLibDbKeyHash160 extends CFLibDbKeyHashBase<CFLibDbKeyHash160> imp
 
   public static CFLibDbKeyHash160 hash(String text) {
     if (text != null) {
+      CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
       try {
-        MessageDigest md = MessageDigest.getInstance(HASH_ALGO);
-        byte[] buf = text.getBytes("UTF-8");
-        md.update(buf);
-
-        return new CFLibDbKeyHash160(md.digest());
+        MessageDigest md = s.digest(HASH_LENGTH, HASH_ALGO);
+        s.updateUtf8(md, text);
+        return digestToKey(md, s.scratch);
       }
       catch (Exception ex) {
+        s.resetDigests();
+      }
+      finally {
+        CFLibDbKeyHashGenerator.release(s);
       }
     }
     return new CFLibDbKeyHash160(0);
   }
 
   public static CFLibDbKeyHash160 hash(byte[] payload) {
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
     try {
-      MessageDigest md = MessageDigest.getInstance(HASH_ALGO);
+      MessageDigest md = s.digest(HASH_LENGTH, HASH_ALGO);
       md.update(payload);
-
-      return new CFLibDbKeyHash160(md.digest());
+      return digestToKey(md, s.scratch);
     }
     catch (Exception ex) {
+      s.resetDigests();
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
     }
     return new CFLibDbKeyHash160(0);
   }
 
   public static CFLibDbKeyHash160 hash(byte[]... payload) {
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
     try {
-      MessageDigest md = MessageDigest.getInstance(HASH_ALGO);
+      MessageDigest md = s.digest(HASH_LENGTH, HASH_ALGO);
       for (byte[] bs : payload) {
         md.update(bs);
       }
-
-      return new CFLibDbKeyHash160(md.digest());
+      return digestToKey(md, s.scratch);
     }
     catch (Exception ex) {
+      s.resetDigests();
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
     }
     return new CFLibDbKeyHash160(0);
   }
 
   public static CFLibDbKeyHash160 hash(CFLibDbKeyHash160... payload) {
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
     try {
-      MessageDigest md = MessageDigest.getInstance(HASH_ALGO);
+      MessageDigest md = s.digest(HASH_LENGTH, HASH_ALGO);
       for (CFLibDbKeyHash160 k : payload) {
-        md.update(k.bytes);
+        k.copyBytes(s.scratch, 0);
+        md.update(s.scratch, 0, HASH_LENGTH);
       }
-      return new CFLibDbKeyHash160(md.digest());
+      return digestToKey(md, s.scratch);
     }
     catch (Exception ex) {
+      s.resetDigests();
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
     }
     return new CFLibDbKeyHash160(0);
   }
 
   public static CFLibDbKeyHash160 hash(int[] payload) {
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
     try {
-      MessageDigest md = MessageDigest.getInstance(HASH_ALGO);
-      for (int x : payload) {
-        md.update((byte) ((x >>> 24) & 255));
-        md.update((byte) ((x >>> 16) & 255));
-        md.update((byte) ((x >>> 8) & 255));
-        md.update((byte) (x & 255));
-      }
+      MessageDigest md = s.digest(HASH_LENGTH, HASH_ALGO);
+      s.updateInts(md, payload);
+      return digestToKey(md, s.scratch);
+    }
+    catch (Exception ex) {
+      s.resetDigests();
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
+    }
+    return new CFLibDbKeyHash160(0);
+  }
 
-      return new CFLibDbKeyHash160(md.digest());
+  /**
+   * Hash the remaining bytes of payload, which may be a direct buffer or a MemorySegment.asByteBuffer() view, without first copying it to a byte[].
+   * The buffer's position and limit are unchanged on return.
+   */
+  public static CFLibDbKeyHash160 hash(ByteBuffer payload) {
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
+    try {
+      MessageDigest md = s.digest(HASH_LENGTH, HASH_ALGO);
+      CFLibDbKeyHashDigests.update(md, payload);
+      return digestToKey(md, s.scratch);
     }
     catch (Exception ex) {
+      s.resetDigests();
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
     }
     return new CFLibDbKeyHash160(0);
   }
 
-  @Override
-  public CFLibDbKeyHash160 deepClone() {
-    return new CFLibDbKeyHash160(this);
+  /**
+   * Hash the remaining bytes of each buffer in turn, as if they had been gathered into one payload.
+   * Every buffer's position and limit are unchanged on return.
+   */
+  public static CFLibDbKeyHash160 hash(ByteBuffer... payload) {
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
+    try {
+      MessageDigest md = s.digest(HASH_LENGTH, HASH_ALGO);
+      for (ByteBuffer bb : payload) {
+        CFLibDbKeyHashDigests.update(md, bb);
+      }
+      return digestToKey(md, s.scratch);
+    }
+    catch (Exception ex) {
+      s.resetDigests();
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
+    }
+    return new CFLibDbKeyHash160(0);
   }
 
-  static public CFLibDbKeyHash160 fromHexQuick(String string) {
-    if (string == null) {
-      return null;
+  /**
+   * Hash the whole content of a file; the result equals hash(byte[]) of the file's bytes.
+   */
+  public static CFLibDbKeyHash160 hashFile(Path path) throws IOException {
+    return hashFile(path, null);
+  }
+
+  /**
+   * Hash the whole content of a file, reporting progress after each mapped window.
+   */
+  public static CFLibDbKeyHash160 hashFile(Path path, CFLibDbKeyHashDigests.Progress progress) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return hash(channel, 0, channel.size(), progress);
     }
-    if (string.length() != HASH_LENGTH * 2) {
-      return null;
+  }
+
+  /**
+   * Hash len bytes of channel starting at pos through bounded memory-mapped windows.
+   * Unlike the in-memory hash functions, I/O failures are thrown rather than answered with a generated key.
+   */
+  public static CFLibDbKeyHash160 hash(FileChannel channel, long pos, long len) throws IOException {
+    return hash(channel, pos, len, null);
+  }
+
+  public static CFLibDbKeyHash160 hash(FileChannel channel, long pos, long len, CFLibDbKeyHashDigests.Progress progress) throws IOException {
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
+    try {
+      MessageDigest md = s.digest(HASH_LENGTH, HASH_ALGO);
+      CFLibDbKeyHashDigests.update(md, channel, pos, len, progress);
+      return digestToKey(md, s.scratch);
     }
-    for (int i = 0; i < string.length(); i++) {
-      try {
-        if (Character.digit(string.charAt(i), 16) < 0) {
-          return null;
-        }
-      }
-      catch (Exception e) {
-        return null;
-      }
+    catch (IOException | RuntimeException ex) {
+      s.resetDigests();
+      throw ex;
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
+    }
+  }
+
+  /**
+   * Create a tree hasher for this width with the default chunk size and fan-out; keep it to re-hash changed chunks incrementally.
+   */
+  public static CFLibDbKeyHashTree newTree() {
+    return new CFLibDbKeyHashTree(HASH_LENGTH, HASH_ALGO);
+  }
+
+  public static CFLibDbKeyHashTree newTree(int chunkSize, int fanOut) {
+    return new CFLibDbKeyHashTree(HASH_LENGTH, HASH_ALGO, chunkSize, fanOut);
+  }
+
+  /**
+   * Tree-hash payload as defined by CFLibDbKeyHashTree, digesting its chunks in parallel on the common pool.
+   * This is a different function from hash(byte[]); the two never produce the same key for the same payload.
+   */
+  public static CFLibDbKeyHash160 treeHash(byte[] payload) {
+    return treeHash(ByteBuffer.wrap(payload), ForkJoinPool.commonPool());
+  }
 
+  /**
+   * Tree-hash the remaining bytes of payload, digesting its chunks on pool, or on the calling thread if pool is null.
+   */
+  public static CFLibDbKeyHash160 treeHash(ByteBuffer payload, ForkJoinPool pool) {
+    return new CFLibDbKeyHash160(newTree().build(payload, pool));
+  }
+
+  /**
+   * Tree-hash the content of a file, mapping and digesting its chunks on pool.
+   */
+  public static CFLibDbKeyHash160 treeHashFile(Path path, ForkJoinPool pool) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new CFLibDbKeyHash160(newTree().build(channel, 0, channel.size(), pool));
     }
+  }
+
+  /**
+   * Create a hasher that derives keys of this width under namespace, digesting the namespace only once.
+   * The hasher keeps the digest algorithm in effect when it is created.
+   */
+  public static CFLibDbKeyHasher<CFLibDbKeyHash160> newHasher(byte[] namespace) {
+    return new CFLibDbKeyHasher<CFLibDbKeyHash160>(HASH_LENGTH, HASH_ALGO, namespace, CFLibDbKeyHash160::digestToKey);
+  }
+
+  /**
+   * Create a hasher that derives keys of this width under the UTF-8 encoding of namespace.
+   */
+  public static CFLibDbKeyHasher<CFLibDbKeyHash160> newHasher(String namespace) {
+    return newHasher(CFLibDbKeyHasher.namespaceBytes(namespace));
+  }
+
+  /**
+   * Create a writer that hashes composite keys of this width field by field, in the canonical layout defined by CFLibDbKeyHashFieldWriter.
+   */
+  public static CFLibDbKeyHashFieldWriter<CFLibDbKeyHash160> newFieldWriter() {
+    return new CFLibDbKeyHashFieldWriter<CFLibDbKeyHash160>(HASH_LENGTH, HASH_ALGO, new byte[0], CFLibDbKeyHash160::digestToKey);
+  }
+
+  /**
+   * Create a field writer whose keys are prefixed by the UTF-8 encoding of namespace.
+   */
+  public static CFLibDbKeyHashFieldWriter<CFLibDbKeyHash160> newFieldWriter(String namespace) {
+    return new CFLibDbKeyHashFieldWriter<CFLibDbKeyHash160>(HASH_LENGTH, HASH_ALGO, CFLibDbKeyHasher.namespaceBytes(namespace), CFLibDbKeyHash160::digestToKey);
+  }
+
+  /**
+   * Create an open-addressing map from keys of this width to long values, sized for expected entries; absent keys read as 0.
+   */
+  public static CFLibDbKeyHashLongMap<CFLibDbKeyHash160> newLongMap(int expected) {
+    return new CFLibDbKeyHashLongMap<CFLibDbKeyHash160>(HASH_LENGTH, CFLibDbKeyHash160::nullGet, expected, 0L);
+  }
+
+  /**
+   * Create an open-addressing map from keys of this width to long values, where absent keys read as missingValue.
+   */
+  public static CFLibDbKeyHashLongMap<CFLibDbKeyHash160> newLongMap(int expected, long missingValue) {
+    return new CFLibDbKeyHashLongMap<CFLibDbKeyHash160>(HASH_LENGTH, CFLibDbKeyHash160::nullGet, expected, missingValue);
+  }
+
+  /**
+   * Create an open-addressing map from keys of this width to object values, sized for expected entries.
+   */
+  public static <V> CFLibDbKeyHashObjectMap<CFLibDbKeyHash160, V> newMap(int expected) {
+    return new CFLibDbKeyHashObjectMap<CFLibDbKeyHash160, V>(HASH_LENGTH, CFLibDbKeyHash160::nullGet, expected);
+  }
+
+  /**
+   * Create a lock-free concurrent map from keys of this width to non-negative long values such as row ids, sized for expected entries.
+   */
+  public static CFLibDbKeyHashConcurrentLongMap<CFLibDbKeyHash160> newConcurrentLongMap(int expected) {
+    return new CFLibDbKeyHashConcurrentLongMap<CFLibDbKeyHash160>(HASH_LENGTH, CFLibDbKeyHash160::nullGet, expected);
+  }
+
+  /**
+   * Finish md into the words of a new key, borrowing a stripe's scratch buffer for the digest; used as the finisher of hashers and field writers.
+   */
+  static CFLibDbKeyHash160 digestToKey(MessageDigest md) {
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
     try {
-      return fromHex(string);
+      return digestToKey(md, s.scratch);
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
     }
-    catch (Exception e) {
+  }
+
+  /**
+   * Finish md into scratch and load the words of a new key from it, without allocating a digest result array.
+   */
+  static CFLibDbKeyHash160 digestToKey(MessageDigest md, byte[] scratch) {
+    CFLibDbKeyHashGenerator.digestInto(md, scratch, 0, HASH_LENGTH);
+    CFLibDbKeyHash160 h = new CFLibDbKeyHash160();
+    h.setWordsFromBytes(scratch, 0);
+    return h;
+  }
+
+  @Override
+  public CFLibDbKeyHash160 deepClone() {
+    return new CFLibDbKeyHash160(this);
+  }
+
+  /**
+   * Parse exactly HASH_LENGTH_STRING hex digits, returning null instead of throwing when string is null, the wrong length or not hex.
+   */
+  static public CFLibDbKeyHash160 fromHexQuick(String string) {
+    if (string == null || string.length() != HASH_LENGTH_STRING) {
       return null;
     }
+    CFLibDbKeyHash160 h = new CFLibDbKeyHash160();
+    return h.setWordsFromHex(string, 0, HASH_LENGTH_STRING) ? h : null;
   }
 
   public static final CFLibDbKeyHash160[] toCFLibDbKeyHash160(String[] ids) {
@@ -373,6 +877,20 @@ public class CFLibDbKeyHash160 extends CFLibDbKeyHashBase<CFLibDbKeyHash160> imp
     return r;
   }
 
+  /**
+   * Parse hex ids straight into a columnar array, without a key object per id.
+   */
+  public static final CFLibDbKeyHash160Array toCFLibDbKeyHash160Array(String[] ids) {
+    if (ids == null) {
+      return null;
+    }
+    CFLibDbKeyHash160Array r = new CFLibDbKeyHash160Array(ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      r.addAll(sbytesFromHex(ids[i]), 0, 1);
+    }
+    return r;
+  }
+
   public static final List<CFLibDbKeyHash160> toCFLibDbKeyHash160List(String[] ids) {
 
     if (ids == null) {
@@ -404,4 +922,31 @@ public class CFLibDbKeyHash160 extends CFLibDbKeyHashBase<CFLibDbKeyHash160> imp
     return r;
 
   }
+
+  /**
+   * Convert hex ids lazily, in parallel if ids is parallel.  Strict conversion reads each id as new CFLibDbKeyHash160(String) does and throws on one
+   * that is not hex; lenient conversion skips every id that is not exactly HASH_LENGTH_STRING hex digits.  See CFLibDbKeyHashIds.
+   */
+  public static Stream<CFLibDbKeyHash160> toCFLibDbKeyHash160Stream(Stream<? extends CharSequence> ids, boolean lenient) {
+    return CFLibDbKeyHashIds.stream(ids, CFLibDbKeyHash160::new, lenient);
+  }
+
+  public static Stream<CFLibDbKeyHash160> toCFLibDbKeyHash160Stream(Iterable<? extends CharSequence> ids, boolean parallel, boolean lenient) {
+    return CFLibDbKeyHashIds.stream(ids, parallel, CFLibDbKeyHash160::new, lenient);
+  }
+
+  public static Stream<CFLibDbKeyHash160> toCFLibDbKeyHash160Stream(Spliterator<? extends CharSequence> ids, boolean parallel, boolean lenient) {
+    return CFLibDbKeyHashIds.stream(ids, parallel, CFLibDbKeyHash160::new, lenient);
+  }
+
+  /**
+   * A collector that decodes hex ids straight into a columnar array, strictly or leniently as toCFLibDbKeyHash160Stream() does.
+   */
+  public static Collector<CharSequence, ?, CFLibDbKeyHash160Array> toCFLibDbKeyHash160Array(boolean lenient) {
+    return CFLibDbKeyHashIds.toArray(CFLibDbKeyHash160Array::new, lenient);
+  }
+
+  public static CFLibDbKeyHash160Array toCFLibDbKeyHash160Array(Stream<? extends CharSequence> ids, boolean lenient) {
+    return CFLibDbKeyHashIds.toArray(ids, CFLibDbKeyHash160Array::new, lenient);
+  }
 }
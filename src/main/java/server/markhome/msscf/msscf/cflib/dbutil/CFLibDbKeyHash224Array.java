@@ -0,0 +1,52 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.Collection;
+
+/**
+ * A columnar array of CFLibDbKeyHash224 keys packed 4 longs apiece; see CFLibDbKeyHashArray.
+ *
+ * @author msobkow
+ */
+public class CFLibDbKeyHash224Array extends CFLibDbKeyHashArray<CFLibDbKeyHash224> {
+
+  static final long serialVersionUID = 202610171224L;
+
+  public CFLibDbKeyHash224Array() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public CFLibDbKeyHash224Array(int capacity) {
+    super(CFLibDbKeyHash224.HASH_LENGTH, capacity);
+  }
+
+  public CFLibDbKeyHash224Array(Collection<CFLibDbKeyHash224> keys) {
+    this(keys.size());
+    addAll(keys);
+  }
+
+  @Override
+  protected CFLibDbKeyHash224 newKey() {
+    return CFLibDbKeyHash224.nullGet();
+  }
+}
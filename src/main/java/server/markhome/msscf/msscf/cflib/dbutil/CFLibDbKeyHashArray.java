@@ -0,0 +1,852 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A growable columnar array of keys of one width, packed back to back in a single long[] so that a batch of N keys is one object rather than N.
+ * <p>
+ * Key i occupies words i*stride through i*stride+stride-1 of the store, laid out exactly as the words of a key object (see CFLibDbKeyHashBase).
+ * Keys are read either as new objects with get(i), or through a caller-owned flyweight with get(i, view), which reloads the view in place;
+ * the view is an ordinary key, so it honours the usual compareTo, compareOrdered, equals and toString contracts.
+ * <p>
+ * sort() and binarySearch() use the natural (compareTo) order of the keys, unsigned byte by byte;
+ * sortOrdered() and binarySearchOrdered() use the order of compareOrdered().
+ * getOrder() declares the CFLibDbKeyHashOrder the keys were last sorted by, until the next change to the keys.
+ * Both sorts are the radix sorts of CFLibDbKeyHashSort, working directly on the packed words.
+ * indexOf(), compareAll() and countLess() scan every key against one probe in place, without loading a view per key.
+ * encodeHex() and addAllHex() convert the whole array to and from fixed-width ASCII hex records, such as a CSV column,
+ * with the SWAR codec of CFLibDbKeyHashHex.
+ * addHex() and addHexQuietly() append one hex id at a time, as the collectors of CFLibDbKeyHashIds do.
+ * writeTo() and addAllFrom() do the same for the binary form of CFLibDbKeyHashBase.writeAll(), a count followed by the packed key bytes,
+ * which is also the serialized form of the array: getHashLength() bytes per key, where a List of keys costs their field data and framing per key.
+ * Keys without a value (from the no-argument constructor) are stored as all zeros, and null keys are rejected.
+ * Instances are not thread safe.
+ *
+ * @author msobkow
+ */
+public abstract class CFLibDbKeyHashArray<T extends CFLibDbKeyHashBase<T>> implements Serializable {
+
+  static final long serialVersionUID = 202610171000L;
+  static final int DEFAULT_CAPACITY = 16;
+  static final int STAGING_BYTES = 8192;
+
+  final int hashLength;
+  final int stride;
+  transient long[] words;
+  transient int size = 0;
+  CFLibDbKeyHashOrder order = null;
+
+  protected CFLibDbKeyHashArray(int hashLength, int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity is " + capacity + ".  Must be >= 0.");
+    }
+    this.hashLength = hashLength;
+    this.stride = (hashLength + 7) / 8;
+    this.words = new long[Math.multiplyExact(capacity, stride)];
+  }
+
+  /**
+   * A new all-zero key of the width, used to materialize and view entries.
+   */
+  protected abstract T newKey();
+
+  public int getHashLength() {
+    return hashLength;
+  }
+
+  /**
+   * The number of longs each key occupies in the store.
+   */
+  public int getStride() {
+    return stride;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int capacity() {
+    return words.length / stride;
+  }
+
+  public void clear() {
+    size = 0;
+    order = null;
+  }
+
+  public void ensureCapacity(int capacity) {
+    if (capacity > capacity()) {
+      int grown = Math.max(capacity, capacity() + (capacity() >> 1) + 1);
+      words = Arrays.copyOf(words, Math.multiplyExact(grown, stride));
+    }
+  }
+
+  public void trimToSize() {
+    if (size < capacity()) {
+      words = Arrays.copyOf(words, size * stride);
+    }
+  }
+
+  final void checkIndex(int index) {
+    Objects.checkIndex(index, size);
+  }
+
+  /**
+   * Word w of key index, big-endian, as in CFLibDbKeyHashBase.
+   */
+  public long getWord(int index, int w) {
+    checkIndex(index);
+    Objects.checkIndex(w, stride);
+    return words[index * stride + w];
+  }
+
+  public void add(T key) {
+    ensureCapacity(size + 1);
+    store(size, key);
+    size++;
+  }
+
+  /**
+   * Append the keys in iteration order.  If any is null a NullPointerException is thrown before the array is changed.
+   */
+  public void addAll(Collection<? extends T> keys) {
+    for (T key : keys) {
+      checkKey(key);
+    }
+    ensureCapacity(size + keys.size());
+    for (T key : keys) {
+      store(size, key);
+      size++;
+    }
+  }
+
+  /**
+   * Append count keys of keys starting at offset.  If any is null a NullPointerException is thrown before the array is changed.
+   */
+  public void addAll(T[] keys, int offset, int count) {
+    Objects.checkFromIndexSize(offset, count, keys.length);
+    for (int i = offset; i < offset + count; i++) {
+      checkKey(keys[i]);
+    }
+    ensureCapacity(size + count);
+    for (int i = offset; i < offset + count; i++) {
+      store(size, keys[i]);
+      size++;
+    }
+  }
+
+  public void addAll(CFLibDbKeyHashArray<T> keys) {
+    ensureCapacity(size + keys.size);
+    System.arraycopy(keys.words, 0, words, size * stride, keys.size * stride);
+    size += keys.size;
+    order = null;
+  }
+
+  /**
+   * Append count keys packed back to back in packed starting at offset, getHashLength() bytes apiece, as written by the width's generate(byte[], int, int).
+   */
+  public void addAll(byte[] packed, int offset, int count) {
+    Objects.checkFromIndexSize(offset, Math.multiplyExact(count, hashLength), packed.length);
+    ensureCapacity(size + count);
+    for (int i = 0; i < count; i++) {
+      loadBytes(size++, packed, offset + i * hashLength);
+    }
+    order = null;
+  }
+
+  public void set(int index, T key) {
+    checkIndex(index);
+    store(index, key);
+  }
+
+  /**
+   * Key index as a new key object.
+   */
+  public T get(int index) {
+    return get(index, newKey());
+  }
+
+  /**
+   * Reload the flyweight view with key index and return it; no object is allocated.
+   */
+  public T get(int index, T view) {
+    checkIndex(index);
+    int base = index * stride;
+    for (int w = 0; w < stride; w++) {
+      view.setWord(w, words[base + w]);
+    }
+    return view;
+  }
+
+  /**
+   * Copy the bytes of key index into dst starting at offset.
+   */
+  public void copyBytes(int index, byte[] dst, int offset) {
+    checkIndex(index);
+    int base = index * stride;
+    for (int w = 0; w < stride; w++) {
+      CFLibDbKeyHashBase.writeWord(dst, offset + 8 * w, words[base + w], Math.min(8, hashLength - 8 * w));
+    }
+  }
+
+  /**
+   * All keys packed back to back, getHashLength() bytes apiece.
+   */
+  public byte[] toBytes() {
+    byte[] b = new byte[size * hashLength];
+    for (int i = 0; i < size; i++) {
+      copyBytes(i, b, i * hashLength);
+    }
+    return b;
+  }
+
+  /**
+   * The hex string of key index, identical to get(index).toString().
+   */
+  public String toString(int index) {
+    byte[] ascii = new byte[hashLength * 2];
+    toHex(index, ascii, 0);
+    return CFLibDbKeyHashHex.latin1(ascii);
+  }
+
+  /**
+   * Write the hex digits of key index as ASCII into dst starting at offset, returning the offset just past them.
+   */
+  public int toHex(int index, byte[] dst, int offset) {
+    checkIndex(index);
+    Objects.checkFromIndexSize(offset, 2 * hashLength, dst.length);
+    int base = index * stride;
+    for (int w = 0; w < stride; w++) {
+      offset = CFLibDbKeyHashHex.encodeWord(words[base + w], Math.min(8, hashLength - 8 * w), dst, offset);
+    }
+    return offset;
+  }
+
+  /**
+   * The hex strings of all keys, suitable for the width's toCFLibDbKeyHashNNN, List and Set helpers.
+   */
+  public String[] toHexArray() {
+    String[] r = new String[size];
+    for (int i = 0; i < size; i++) {
+      r[i] = toString(i);
+    }
+    return r;
+  }
+
+  /**
+   * Write every key as a fixed-width record of ASCII hex into dst at offset, each followed by separator unless it is negative
+   * (e.g. '\n' for one key per line), returning the offset just past the last record.
+   */
+  public int encodeHex(byte[] dst, int offset, int separator) {
+    return encodeHex(0, size, dst, offset, separator);
+  }
+
+  int encodeHex(int from, int to, byte[] dst, int offset, int separator) {
+    int record = CFLibDbKeyHashHex.recordLength(hashLength, separator);
+    Objects.checkFromIndexSize(offset, Math.multiplyExact(to - from, record), dst.length);
+    for (int i = from; i < to; i++) {
+      int base = i * stride;
+      for (int w = 0; w < stride; w++) {
+        offset = CFLibDbKeyHashHex.encodeWord(words[base + w], Math.min(8, hashLength - 8 * w), dst, offset);
+      }
+      if (separator >= 0) {
+        dst[offset++] = (byte) separator;
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * Every key as fixed-width records of ASCII hex, as written by encodeHex(byte[], int, int).
+   */
+  public byte[] toHexBytes(int separator) {
+    byte[] b = new byte[Math.multiplyExact(size, CFLibDbKeyHashHex.recordLength(hashLength, separator))];
+    encodeHex(b, 0, separator);
+    return b;
+  }
+
+  /**
+   * Write every key as a fixed-width record of ASCII hex at the position of dst, advancing it.
+   * Direct buffers are filled through a small staging array.
+   */
+  public void encodeHex(ByteBuffer dst, int separator) {
+    int record = CFLibDbKeyHashHex.recordLength(hashLength, separator);
+    int length = Math.multiplyExact(size, record);
+    if (dst.remaining() < length) {
+      throw new IndexOutOfBoundsException("dst has " + dst.remaining() + " bytes remaining.  Must have " + length + ".");
+    }
+    if (dst.hasArray()) {
+      int at = dst.arrayOffset() + dst.position();
+      encodeHex(0, size, dst.array(), at, separator);
+      dst.position(dst.position() + length);
+      return;
+    }
+    int batch = Math.max(1, STAGING_BYTES / record);
+    byte[] staging = new byte[batch * record];
+    for (int i = 0; i < size; i += batch) {
+      int n = Math.min(batch, size - i);
+      encodeHex(i, i + n, staging, 0, separator);
+      dst.put(staging, 0, n * record);
+    }
+  }
+
+  /**
+   * Append count keys from fixed-width records of ASCII hex in src starting at offset, each followed by separator unless it is negative.
+   * Upper and lower case digits are accepted.  If any record is not valid hex, or is not followed by separator, an
+   * IllegalArgumentException is thrown and the array is left as it was.
+   */
+  public void addAllHex(byte[] src, int offset, int count, int separator) {
+    int record = CFLibDbKeyHashHex.recordLength(hashLength, separator);
+    Objects.checkFromIndexSize(offset, Math.multiplyExact(count, record), src.length);
+    ensureCapacity(size + count);
+    for (int i = 0; i < count; i++) {
+      int at = offset + i * record;
+      long check = CFLibDbKeyHashHex.decodeWords(src, at, hashLength, words, (size + i) * stride);
+      if (check < 0 || (separator >= 0 && src[at + record - 1] != (byte) separator)) {
+        throw new IllegalArgumentException("record " + i + " is '" + new String(src, at, record, StandardCharsets.ISO_8859_1)
+          + "'.  Must be " + (2 * hashLength) + " hex digits" + (separator < 0 ? "" : " and the separator") + ".");
+      }
+    }
+    size += count;
+    order = null;
+  }
+
+  /**
+   * Append count keys from fixed-width records of ASCII hex at the position of src, advancing it past them.
+   * Direct buffers are read through a small staging array.  On invalid input the array is left as it was, but src may have advanced.
+   */
+  public void addAllHex(ByteBuffer src, int count, int separator) {
+    int record = CFLibDbKeyHashHex.recordLength(hashLength, separator);
+    int length = Math.multiplyExact(count, record);
+    if (src.remaining() < length) {
+      throw new IndexOutOfBoundsException("src has " + src.remaining() + " bytes remaining.  Must have " + length + ".");
+    }
+    if (src.hasArray()) {
+      addAllHex(src.array(), src.arrayOffset() + src.position(), count, separator);
+      src.position(src.position() + length);
+      return;
+    }
+    int start = size;
+    int batch = Math.max(1, STAGING_BYTES / record);
+    byte[] staging = new byte[batch * record];
+    try {
+      for (int i = 0; i < count; i += batch) {
+        int n = Math.min(batch, count - i);
+        src.get(staging, 0, n * record);
+        addAllHex(staging, 0, n, separator);
+      }
+    }
+    catch (IllegalArgumentException e) {
+      size = start;
+      throw e;
+    }
+  }
+
+  /**
+   * Append the key spelled by the hex id as the width's String constructor reads it: a null id is the all-zero key, and an id of fewer than
+   * 2 * getHashLength() digits fills the leading bytes.  Digits are decoded straight into the store, without a key object.
+   * If id is not hex an IllegalArgumentException is thrown and the array is left as it was.
+   */
+  public void addHex(CharSequence id) {
+    if (id == null) {
+      ensureCapacity(size + 1);
+      Arrays.fill(words, size * stride, (size + 1) * stride, 0L);
+      size++;
+      order = null;
+      return;
+    }
+    int n = id.length();
+    if (n > 2 * hashLength || (n & 1) != 0) {
+      throw new IllegalArgumentException("id length is " + n + ".  Must be even and <= " + 2 * hashLength + ".  id is '" + id + "'.");
+    }
+    ensureCapacity(size + 1);
+    if (!loadHex(size, id, n)) {
+      throw CFLibDbKeyHashHex.invalid(id, 0, n);
+    }
+    size++;
+    order = null;
+  }
+
+  /**
+   * Append the key if id is exactly 2 * getHashLength() hex digits in either case, returning false and leaving the array as it was
+   * if id is null, another length or not hex, all found in a single pass over the digits.
+   */
+  public boolean addHexQuietly(CharSequence id) {
+    if (id == null || id.length() != 2 * hashLength) {
+      return false;
+    }
+    ensureCapacity(size + 1);
+    if (!loadHex(size, id, id.length())) {
+      return false;
+    }
+    size++;
+    order = null;
+    return true;
+  }
+
+  /**
+   * Decode the n hex digits of id straight into the words of slot index, zero filling past them; false if a character is not a hex digit,
+   * in which case the slot holds garbage.  Only the slot is written, so callers append by loading slot size and then updating size and order on success.
+   */
+  final boolean loadHex(int index, CharSequence id, int n) {
+    int base = index * stride;
+    int bad = 0;
+    int i = 0;
+    for (int w = 0; w < stride; w++) {
+      long word = 0L;
+      for (int shift = 56; shift >= 0 && i < n; shift -= 8, i += 2) {
+        int v = CFLibDbKeyHashHex.pair(id.charAt(i), id.charAt(i + 1));
+        bad |= v;
+        word |= (long) (v & 0xFF) << shift;
+      }
+      words[base + w] = word;
+    }
+    return bad >= 0;
+  }
+
+  /**
+   * Write the keys as CFLibDbKeyHashBase.writeAll() does: a big-endian int count followed by getHashLength() bytes per key, packed back to back.
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(size);
+    int batch = STAGING_BYTES / hashLength;
+    byte[] staging = new byte[Math.min(batch, size) * hashLength];
+    for (int i = 0; i < size; i += batch) {
+      int n = Math.min(batch, size - i);
+      packBytes(i, i + n, staging, 0);
+      out.write(staging, 0, n * hashLength);
+    }
+  }
+
+  /**
+   * Put the keys at the position of dst in the layout of writeTo(DataOutput), advancing it; the count is big-endian whatever the order of dst.
+   * Direct buffers are filled through a small staging array.
+   */
+  public void writeTo(ByteBuffer dst) {
+    long length = 4 + (long) size * hashLength;
+    if (dst.remaining() < length) {
+      throw new IndexOutOfBoundsException("dst has " + dst.remaining() + " bytes remaining.  Must have " + length + ".");
+    }
+    dst.putInt(dst.order() == ByteOrder.BIG_ENDIAN ? size : Integer.reverseBytes(size));
+    if (dst.hasArray()) {
+      packBytes(0, size, dst.array(), dst.arrayOffset() + dst.position());
+      dst.position(dst.position() + size * hashLength);
+      return;
+    }
+    int batch = STAGING_BYTES / hashLength;
+    byte[] staging = new byte[Math.min(batch, size) * hashLength];
+    for (int i = 0; i < size; i += batch) {
+      int n = Math.min(batch, size - i);
+      packBytes(i, i + n, staging, 0);
+      dst.put(staging, 0, n * hashLength);
+    }
+  }
+
+  final void packBytes(int from, int to, byte[] dst, int offset) {
+    for (int i = from; i < to; i++, offset += hashLength) {
+      int base = i * stride;
+      for (int w = 0; w < stride; w++) {
+        CFLibDbKeyHashBase.writeWord(dst, offset + 8 * w, words[base + w], Math.min(8, hashLength - 8 * w));
+      }
+    }
+  }
+
+  /**
+   * Append the keys written by writeTo(DataOutput) or CFLibDbKeyHashBase.writeAll().
+   * The array grows as the keys arrive rather than trusting the count up front, and is left as it was if the input ends early.
+   */
+  public void addAllFrom(DataInput in) throws IOException {
+    int count = in.readInt();
+    if (count < 0) {
+      throw new StreamCorruptedException("key count is " + count + ".  Must be >= 0.");
+    }
+    int start = size;
+    int batch = STAGING_BYTES / hashLength;
+    byte[] staging = new byte[Math.min(batch, count) * hashLength];
+    try {
+      for (int i = 0; i < count; i += batch) {
+        int n = Math.min(batch, count - i);
+        in.readFully(staging, 0, n * hashLength);
+        addAll(staging, 0, n);
+      }
+    }
+    catch (IOException e) {
+      size = start;
+      throw e;
+    }
+  }
+
+  /**
+   * Append the keys written by writeTo(ByteBuffer) at the position of src, advancing it past them.
+   * If src does not hold a whole batch it is left where it was, as is the array.
+   */
+  public void addAllFrom(ByteBuffer src) {
+    if (src.remaining() < 4) {
+      throw new IndexOutOfBoundsException("src has " + src.remaining() + " bytes remaining.  Must have 4.");
+    }
+    int raw = src.getInt(src.position());
+    int count = src.order() == ByteOrder.BIG_ENDIAN ? raw : Integer.reverseBytes(raw);
+    if (count < 0) {
+      throw new IllegalArgumentException("key count is " + count + ".  Must be >= 0.");
+    }
+    long length = 4 + (long) count * hashLength;
+    if (src.remaining() < length) {
+      throw new IndexOutOfBoundsException("src has " + src.remaining() + " bytes remaining.  Must have " + length + ".");
+    }
+    src.position(src.position() + 4);
+    if (src.hasArray()) {
+      addAll(src.array(), src.arrayOffset() + src.position(), count);
+      src.position(src.position() + count * hashLength);
+      return;
+    }
+    ensureCapacity(size + count);
+    int batch = STAGING_BYTES / hashLength;
+    byte[] staging = new byte[Math.min(batch, count) * hashLength];
+    for (int i = 0; i < count; i += batch) {
+      int n = Math.min(batch, count - i);
+      src.get(staging, 0, n * hashLength);
+      addAll(staging, 0, n);
+    }
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    writeTo(out);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (hashLength != newKey().getHashLength() || stride != (hashLength + 7) / 8) {
+      throw new InvalidObjectException("key length is " + hashLength + ".  Must be " + newKey().getHashLength() + ".");
+    }
+    CFLibDbKeyHashOrder sorted = order;
+    words = new long[0];
+    addAllFrom(in);
+    order = sorted;
+  }
+
+  public List<T> toList() {
+    List<T> r = new ArrayList<T>(size);
+    for (int i = 0; i < size; i++) {
+      r.add(get(i));
+    }
+    return r;
+  }
+
+  public Set<T> toSet() {
+    Set<T> r = new HashSet<T>(Math.max(16, (int) (size / 0.75f) + 1));
+    for (int i = 0; i < size; i++) {
+      r.add(get(i));
+    }
+    return r;
+  }
+
+  /**
+   * Compare keys i and j in natural (compareTo) order.
+   */
+  public int compare(int i, int j) {
+    checkIndex(i);
+    checkIndex(j);
+    return compareAt(words, i * stride, words, j * stride, stride, 0L);
+  }
+
+  /**
+   * Compare keys i and j in the order of compareOrdered().
+   */
+  public int compareOrdered(int i, int j) {
+    checkIndex(i);
+    checkIndex(j);
+    return compareAt(words, i * stride, words, j * stride, stride, CFLibDbKeyHashBase.SIGN_BITS);
+  }
+
+  /**
+   * Sort the keys into natural (compareTo) order, declared as NATURAL_NULLS_LAST.
+   */
+  public void sort() {
+    sort(CFLibDbKeyHashOrder.NATURAL_NULLS_LAST, null);
+  }
+
+  /**
+   * Sort the keys into natural (compareTo) order, splitting large arrays over pool.
+   */
+  public void parallelSort(ForkJoinPool pool) {
+    sort(CFLibDbKeyHashOrder.NATURAL_NULLS_LAST, pool);
+  }
+
+  /**
+   * Sort the keys into the order of compareOrdered(), declared as SIGNED_NULLS_FIRST.
+   */
+  public void sortOrdered() {
+    sort(CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST, null);
+  }
+
+  /**
+   * Sort the keys into the order of compareOrdered(), splitting large arrays over pool.
+   */
+  public void parallelSortOrdered(ForkJoinPool pool) {
+    sort(CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST, pool);
+  }
+
+  /**
+   * Sort the keys into order; as the array holds no nulls, the null placement of order only affects what getOrder() reports.
+   */
+  public void sort(CFLibDbKeyHashOrder order) {
+    sort(order, null);
+  }
+
+  /**
+   * The order the keys were last sorted by, or null if they have not been sorted or have changed since.
+   */
+  public CFLibDbKeyHashOrder getOrder() {
+    return order;
+  }
+
+  /**
+   * True if the keys are known to be in the key order of order; the array holds no nulls, so either null placement matches.
+   */
+  public boolean isSortedBy(CFLibDbKeyHashOrder order) {
+    return this.order != null && this.order.isSameKeyOrder(order);
+  }
+
+  /**
+   * Search keys sorted by sort() for key, with the result convention of Arrays.binarySearch.
+   */
+  public int binarySearch(T key) {
+    return binarySearch(key, 0L);
+  }
+
+  /**
+   * Search keys sorted by sortOrdered() for key, with the result convention of Arrays.binarySearch.
+   */
+  public int binarySearchOrdered(T key) {
+    return binarySearch(key, CFLibDbKeyHashBase.SIGN_BITS);
+  }
+
+  /**
+   * The index of the first key equal to key, or -1 if there is none.
+   */
+  public int indexOf(T key) {
+    return indexOf(key, 0);
+  }
+
+  /**
+   * The index of the first key at or after from that is equal to key, or -1 if there is none.
+   */
+  public int indexOf(T key, int from) {
+    if (key == null) {
+      throw new NullPointerException("key must not be null.");
+    }
+    long w0 = key.word(0);
+    for (int i = Math.max(from, 0), base = i * stride; i < size; i++, base += stride) {
+      if (words[base] == w0 && key.wordsEqual(words, base)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The index of the last key equal to key, or -1 if there is none.
+   */
+  public int lastIndexOf(T key) {
+    if (key == null) {
+      throw new NullPointerException("key must not be null.");
+    }
+    long w0 = key.word(0);
+    for (int i = size - 1, base = i * stride; i >= 0; i--, base -= stride) {
+      if (words[base] == w0 && key.wordsEqual(words, base)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public boolean contains(T key) {
+    return indexOf(key, 0) >= 0;
+  }
+
+  /**
+   * Compare every key against probe in natural (compareTo) order, storing -1, 0 or 1 for key i versus probe in result[i].
+   */
+  public void compareAll(T probe, int[] result) {
+    compareAll(probe, result, 0L);
+  }
+
+  /**
+   * Compare every key against probe in the order of compareOrdered(), storing -1, 0 or 1 for key i versus probe in result[i].
+   */
+  public void compareAllOrdered(T probe, int[] result) {
+    compareAll(probe, result, CFLibDbKeyHashBase.SIGN_BITS);
+  }
+
+  /**
+   * The number of keys less than probe in natural (compareTo) order.
+   */
+  public int countLess(T probe) {
+    return countLess(probe, 0L);
+  }
+
+  /**
+   * The number of keys less than probe in the order of compareOrdered().
+   */
+  public int countLessOrdered(T probe) {
+    return countLess(probe, CFLibDbKeyHashBase.SIGN_BITS);
+  }
+
+  static void checkKey(CFLibDbKeyHashBase<?> key) {
+    if (key == null) {
+      throw new NullPointerException("key must not be null.");
+    }
+  }
+
+  final void store(int index, T key) {
+    checkKey(key);
+    int base = index * stride;
+    for (int w = 0; w < stride; w++) {
+      words[base + w] = key.word(w);
+    }
+    order = null;
+  }
+
+  final void loadBytes(int index, byte[] b, int offset) {
+    int base = index * stride;
+    for (int w = 0; w < stride; w++) {
+      words[base + w] = CFLibDbKeyHashBase.readWord(b, offset + 8 * w, Math.min(8, hashLength - 8 * w));
+    }
+  }
+
+  /**
+   * Compare stride words of a at ai with those of b at bi as unsigned longs after XORing both with flip;
+   * a flip of 0 gives the natural order, SIGN_BITS the order of compareOrdered().
+   */
+  static int compareAt(long[] a, int ai, long[] b, int bi, int stride, long flip) {
+    for (int w = 0; w < stride; w++) {
+      long x = a[ai + w];
+      long y = b[bi + w];
+      if (x != y) {
+        return Long.compareUnsigned(x ^ flip, y ^ flip);
+      }
+    }
+    return 0;
+  }
+
+  final long[] probeWords(T probe) {
+    if (probe == null) {
+      throw new NullPointerException("probe must not be null.");
+    }
+    long[] p = new long[stride];
+    for (int w = 0; w < stride; w++) {
+      p[w] = probe.word(w);
+    }
+    return p;
+  }
+
+  /**
+   * Compare the key at base with the probe words; most keys differ from the probe in their first word, so the rest are only
+   * examined, with the vectorized Arrays.mismatch, when the first words agree.
+   */
+  final int compareProbe(int base, long[] p, long flip) {
+    long x = words[base];
+    if (x == p[0]) {
+      int w = Arrays.mismatch(words, base + 1, base + stride, p, 1, stride);
+      if (w < 0) {
+        return 0;
+      }
+      x = words[base + 1 + w];
+      return Long.compareUnsigned(x ^ flip, p[1 + w] ^ flip) < 0 ? -1 : 1;
+    }
+    return Long.compareUnsigned(x ^ flip, p[0] ^ flip) < 0 ? -1 : 1;
+  }
+
+  void compareAll(T probe, int[] result, long flip) {
+    long[] p = probeWords(probe);
+    if (result.length < size) {
+      throw new IllegalArgumentException("result length is " + result.length + ".  Must be >= size " + size + ".");
+    }
+    for (int i = 0, base = 0; i < size; i++, base += stride) {
+      result[i] = compareProbe(base, p, flip);
+    }
+  }
+
+  int countLess(T probe, long flip) {
+    long[] p = probeWords(probe);
+    int n = 0;
+    for (int i = 0, base = 0; i < size; i++, base += stride) {
+      if (compareProbe(base, p, flip) < 0) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  int binarySearch(T key, long flip) {
+    long[] probe = probeWords(key);
+    int lo = 0;
+    int hi = size - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = compareAt(words, mid * stride, probe, 0, stride, flip);
+      if (c < 0) {
+        lo = mid + 1;
+      }
+      else if (c > 0) {
+        hi = mid - 1;
+      }
+      else {
+        return mid;
+      }
+    }
+    return -(lo + 1);
+  }
+
+  void sort(CFLibDbKeyHashOrder order, ForkJoinPool pool) {
+    if (order == null) {
+      throw new NullPointerException("order must not be null.");
+    }
+    CFLibDbKeyHashSort.sortRecords(words, stride, stride, hashLength, size, order.flip, pool);
+    this.order = order;
+  }
+}
@@ -21,10 +21,17 @@
 
 package server.markhome.msscf.msscf.cflib.dbutil;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
-import java.util.Arrays;
+import java.nio.ByteOrder;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.Objects;
 
 /**
  * Base class for CFLib database key hashes.
@@ -32,9 +39,11 @@ import java.util.Comparator;
  * This foundation class provides essential support for n-digit hashes, usually based on the sizes of commmon hash algorithms like SHA-256, SHA-512, etc.
  * It includes methods for byte manipulation, comparison, and static initialization of hash buffers.
  * It is designed to be extended by specific hash implementations, such as CFLibDbKeyHash256 or CFLibDbKeyHash512.
- * It also provides a consistent way to handle the underlying byte arrays, ensuring that all derived classes can be compared and manipulated uniformly.
- * One issue is that the base class may provide the "gateway" for synchronization of the hash buffer attributes, so the static class data defined here is used as the thread synchronization coordinator, rather than attributes of the specialization classes.
- * To be fair, whether is even an issue really depends on what the JDK and JVM fine-print processing rules say about such specific cases.
+ * Each derived class holds its key in a fixed number of long fields (words) rather than a byte array, saving the array header and pointer and the cache miss of chasing it.
+ * Word i holds bytes 8*i through 8*i+7 of the key, big-endian, so comparing words as unsigned longs orders keys exactly as comparing their bytes as unsigned values.
+ * A final word that is only partly used (160 and 224 bit keys) holds its bytes in its high end and zeros below them.
+ * getBytes() materializes a fresh copy of the key bytes on each call; it is the JPA property and is kept for compatibility, while copyBytes() fills a caller's buffer instead.
+ * Key generation is delegated to CFLibDbKeyHashGenerator, which keeps its header buffers and digests in per-thread stripes so that no synchronization is needed to mint a key.
  * 
  * @author msobkow
  */
@@ -56,6 +65,20 @@ public abstract class CFLibDbKeyHashBase<T extends CFLibDbKeyHashBase<T>> implem
   static final int RANDBYTES_LENGTH = 8;
   static final int TOTAL_BYTES = HEADER_BYTES + RANDBYTES_LENGTH;
 
+  /**
+   * XORing a word with this flips the sign bit of each of its bytes, so an unsigned comparison of the results orders the bytes as signed values, as compareOrdered() does.
+   */
+  static final long SIGN_BITS = 0x8080808080808080L;
+
+  static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  /**
+   * The cached hashCode(), or 0 until it is first computed; setWord() clears it, so a key reloaded in place rehashes.
+   */
+  transient int hashCache;
+
   public abstract int getHashLength();
   public int getHashLengthString() {
     return getHashLength() * 2;
@@ -66,40 +89,267 @@ public abstract class CFLibDbKeyHashBase<T extends CFLibDbKeyHashBase<T>> implem
   public abstract void setBytes(byte[] bytes);
   public abstract void setBytes(byte[] newBytes, int offset,  int length);
 
-  static final int CONCURRENT_DIGESTS = Runtime.getRuntime().availableProcessors() * 2;
-  static ByteBuffer[] hashBuffer = null;
-  static volatile int rotator = 0;
-  static volatile long counter = 1;
+  /**
+   * The number of longs holding the key, (getHashLength() + 7) / 8.
+   */
+  abstract int wordCount();
 
-  public void initStatics() {
-    if (hashBuffer != null) {
+  /**
+   * Word index of the key, big-endian; unused low bytes of a partial final word are zero.
+   */
+  abstract long word(int index);
+
+  /**
+   * Set word index of the key, marking the key as holding a value.
+   */
+  abstract void setWord(int index, long value);
+
+  /**
+   * True if the wordCount() longs of words starting at base are the words of this key.
+   */
+  abstract boolean wordsEqual(long[] words, int base);
+
+  /**
+   * Compare the words of this key with those of o as unsigned longs after XORing both with flip, returning -1, 0 or 1;
+   * a flip of 0 gives the natural order, SIGN_BITS the order of compareOrdered().
+   */
+  abstract int compareWords(T o, long flip);
+
+  /**
+   * Fold word w into the running hash h of the key words.
+   */
+  static long hashStep(long h, long w) {
+    return (h ^ w) * HASH_MULTIPLIER;
+  }
+
+  /**
+   * Finish the running hash h into a hash code with the MurmurHash3 64 bit finalizer, so every bit of every word reaches every bit of the result.
+   */
+  static int hashFinish(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  /**
+   * The hash of the key words, hashStep() applied to each in order from 0 and then hashFinish().
+   */
+  int hashWords() {
+    long h = 0L;
+    for (int i = 0; i < wordCount(); i++) {
+      h = hashStep(h, word(i));
+    }
+    return hashFinish(h);
+  }
+
+  /**
+   * Store the words of this key in words starting at base.
+   */
+  abstract void copyWords(long[] words, int base);
+
+  /**
+   * False only for a key built with the no-argument constructor that has not been given a value yet, whose getBytes() is null.
+   */
+  abstract boolean hasValue();
+
+  /**
+   * Read count (1 to 8) bytes of b starting at offset as the high end of a big-endian word.
+   */
+  static long readWord(byte[] b, int offset, int count) {
+    if (count == 8) {
+      return (long) LONGS.get(b, offset);
+    }
+    long w = 0;
+    for (int i = 0; i < count; i++) {
+      w |= (b[offset + i] & 0xFFL) << (56 - 8 * i);
+    }
+    return w;
+  }
+
+  /**
+   * Write the high count (1 to 8) bytes of big-endian word w to b starting at offset.
+   */
+  static void writeWord(byte[] b, int offset, long w, int count) {
+    if (count == 8) {
+      LONGS.set(b, offset, w);
       return;
     }
-    try {
-      hashBuffer = new ByteBuffer[CONCURRENT_DIGESTS];
-      CFLibDbHostAddr.initAddrHeader();
-      long pid = ProcessHandle.current().pid();
-      long tid = Thread.currentThread().threadId();
-      for (int i = 0; i < CONCURRENT_DIGESTS; i++) {
-        CFLibUuid6 u = CFLibUuid6.generateUuid6();
-        hashBuffer[i] = ByteBuffer.allocate(TOTAL_BYTES);
-        byte[] uub = u.getBytes();
-        for (int j = 0; j <  CFLibUuid6.TOTAL_BYTES; j++) {
-          hashBuffer[i].put(uub[j]);
-        }
-        hashBuffer[i].putLong(COUNTER_INDEX, counter);
-        hashBuffer[i].putInt(MACHINE_INDEX, 1);
-        hashBuffer[i].putLong(PID_INDEX, pid);
-        hashBuffer[i].putLong(THREAD_INDEX, tid);
-        hashBuffer[i].putLong(RANDBYTES_INDEX, 1);
+    for (int i = 0; i < count; i++) {
+      b[offset + i] = (byte) (w >>> (56 - 8 * i));
+    }
+  }
+
+  /**
+   * Load the key from getHashLength() bytes of b starting at offset.
+   */
+  final void setWordsFromBytes(byte[] b, int offset) {
+    int len = getHashLength();
+    for (int i = 0; i < wordCount(); i++) {
+      setWord(i, readWord(b, offset + 8 * i, Math.min(8, len - 8 * i)));
+    }
+  }
+
+  /**
+   * Load the key from the leading bytes of a key of any width, zero filling when src is the narrower of the two.
+   * A null src loads all zeros.
+   */
+  final void setWordsFrom(CFLibDbKeyHashBase<?> src) {
+    int len = getHashLength();
+    int srcLen = src == null ? 0 : src.getHashLength();
+    for (int i = 0; i < wordCount(); i++) {
+      long w = 8 * i < srcLen ? src.word(i) : 0L;
+      int used = Math.min(8, Math.min(len, srcLen) - 8 * i);
+      if (used <= 0) {
+        w = 0L;
+      }
+      else if (used < 8) {
+        w &= -1L << (64 - 8 * used);
+      }
+      setWord(i, w);
+    }
+  }
+
+  /**
+   * Copy the getHashLength() bytes of the key into dst starting at offset, without allocating.
+   */
+  public void copyBytes(byte[] dst, int offset) {
+    int len = getHashLength();
+    for (int i = 0; i < wordCount(); i++) {
+      writeWord(dst, offset + 8 * i, word(i), Math.min(8, len - 8 * i));
+    }
+  }
+
+  /**
+   * Put the getHashLength() bytes of the key at the position of dst, advancing it.  The bytes are big-endian whatever the order of dst,
+   * the same bytes as copyBytes(); a key without a value writes as zeros, as toHex() does.
+   */
+  public void writeTo(ByteBuffer dst) {
+    int len = getHashLength();
+    if (dst.remaining() < len) {
+      throw new IndexOutOfBoundsException("dst has " + dst.remaining() + " bytes remaining.  Must have " + len + ".");
+    }
+    boolean swap = dst.order() != ByteOrder.BIG_ENDIAN;
+    for (int i = 0; i < wordCount(); i++) {
+      long w = word(i);
+      // The 160 and 224 bit widths end on a half word
+      if (len - 8 * i >= 8) {
+        dst.putLong(swap ? Long.reverseBytes(w) : w);
+      }
+      else {
+        int h = (int) (w >>> 32);
+        dst.putInt(swap ? Integer.reverseBytes(h) : h);
+      }
+    }
+  }
+
+  /**
+   * Write the getHashLength() bytes of the key, the same bytes as writeTo(ByteBuffer).
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    int len = getHashLength();
+    for (int i = 0; i < wordCount(); i++) {
+      if (len - 8 * i >= 8) {
+        out.writeLong(word(i));
+      }
+      else {
+        out.writeInt((int) (word(i) >>> 32));
+      }
+    }
+  }
+
+  /**
+   * Load the key from the getHashLength() bytes at the position of src, as written by writeTo(ByteBuffer), advancing it.
+   */
+  final void readWords(ByteBuffer src) {
+    int len = getHashLength();
+    if (src.remaining() < len) {
+      throw new IndexOutOfBoundsException("src has " + src.remaining() + " bytes remaining.  Must have " + len + ".");
+    }
+    boolean swap = src.order() != ByteOrder.BIG_ENDIAN;
+    for (int i = 0; i < wordCount(); i++) {
+      if (len - 8 * i >= 8) {
+        long w = src.getLong();
+        setWord(i, swap ? Long.reverseBytes(w) : w);
+      }
+      else {
+        int h = src.getInt();
+        setWord(i, (long) (swap ? Integer.reverseBytes(h) : h) << 32);
       }
     }
-    catch (Exception e) {
-      e.printStackTrace();
+  }
+
+  final void readWords(DataInput in) throws IOException {
+    int len = getHashLength();
+    for (int i = 0; i < wordCount(); i++) {
+      setWord(i, len - 8 * i >= 8 ? in.readLong() : (long) in.readInt() << 32);
+    }
+  }
+
+  /**
+   * Write keys of one width as a big-endian int count followed by getHashLength() bytes per key, packed back to back,
+   * for the width's readAll() or the addAllFrom() of its array.  Keys without a value write as zeros; null keys are rejected.
+   */
+  public static void writeAll(Collection<? extends CFLibDbKeyHashBase<?>> keys, DataOutput out) throws IOException {
+    Object[] a = keys.toArray();
+    int len = checkWidths(a);
+    out.writeInt(a.length);
+    int batch = Math.max(1, CFLibDbKeyHashArray.STAGING_BYTES / Math.max(1, len));
+    byte[] staging = new byte[Math.min(batch, a.length) * len];
+    for (int i = 0; i < a.length; i += batch) {
+      int n = Math.min(batch, a.length - i);
+      for (int j = 0; j < n; j++) {
+        ((CFLibDbKeyHashBase<?>) a[i + j]).copyBytes(staging, j * len);
+      }
+      out.write(staging, 0, n * len);
+    }
+  }
+
+  /**
+   * Put keys of one width at the position of dst in the layout of writeAll(Collection, DataOutput), advancing it.
+   */
+  public static void writeAll(Collection<? extends CFLibDbKeyHashBase<?>> keys, ByteBuffer dst) {
+    Object[] a = keys.toArray();
+    long length = 4 + (long) a.length * checkWidths(a);
+    if (dst.remaining() < length) {
+      throw new IndexOutOfBoundsException("dst has " + dst.remaining() + " bytes remaining.  Must have " + length + ".");
+    }
+    dst.putInt(dst.order() == ByteOrder.BIG_ENDIAN ? a.length : Integer.reverseBytes(a.length));
+    for (Object key : a) {
+      ((CFLibDbKeyHashBase<?>) key).writeTo(dst);
+    }
+  }
+
+  /**
+   * The common length of the keys in a, which must all be non-null and of one width; 0 if a is empty.
+   */
+  static int checkWidths(Object[] a) {
+    int len = 0;
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] == null) {
+        throw new NullPointerException("key " + i + " must not be null.");
+      }
+      int l = ((CFLibDbKeyHashBase<?>) a[i]).getHashLength();
+      if (i == 0) {
+        len = l;
+      }
+      else if (l != len) {
+        throw new IllegalArgumentException("key " + i + " length is " + l + ".  Must be " + len + ", the length of key 0.");
+      }
     }
+    return len;
   }
 
-  protected abstract MessageDigest[] getM();
+  static final int CONCURRENT_DIGESTS = Runtime.getRuntime().availableProcessors() * 2;
+
+  /**
+   * Generator state is created lazily per stripe by CFLibDbKeyHashGenerator, so all that remains to initialize up front is the host address header.
+   */
+  public void initStatics() {
+    CFLibDbHostAddr.initAddrHeader();
+  }
 
   public final byte[] bytesFromHex(String string) {
     if (string == null) {
@@ -112,11 +362,7 @@ public abstract class CFLibDbKeyHashBase<T extends CFLibDbKeyHashBase<T>> implem
     if (string == null) {
       return b;
     }
-
-    int n = string.length();
-    for (int i = 0; i < n; i += 2) {
-      b[i / 2] = (byte) ((Character.digit(string.charAt(i), 16) << 4) + Character.digit(string.charAt(i + 1), 16));
-    }
+    CFLibDbKeyHashHex.decode(string, 0, string.length(), b, 0);
     return b;
   }
 
@@ -127,7 +373,12 @@ public abstract class CFLibDbKeyHashBase<T extends CFLibDbKeyHashBase<T>> implem
    * This is the hex code of the underlying ID. THIS IS NOT A HASHING FUNCTION.
    */
   public CFLibDbKeyHashBase(String hexId) {
-    setBytes(bytesFromHex(hexId));
+    if (hexId == null) {
+      setBytes(new byte[getHashLength()]);
+    }
+    else {
+      parseHex(hexId, 0, hexId.length());
+    }
   }
 
   public CFLibDbKeyHashBase(byte[] anId) {
@@ -137,58 +388,39 @@ public abstract class CFLibDbKeyHashBase<T extends CFLibDbKeyHashBase<T>> implem
     else if (anId.length > getHashLength()) {
       throw new IllegalArgumentException("anId length must be <= " + getHashLength() + ".");
     }
-    setBytes(new byte[getHashLength()]);
+    byte[] b = new byte[getHashLength()];
     if (anId != null) {
-      System.arraycopy(anId, 0, getBytes(), 0, Math.min(anId.length, getHashLength()));
+      System.arraycopy(anId, 0, b, 0, anId.length);
     }
+    setWordsFromBytes(b, 0);
   }
 
   public CFLibDbKeyHashBase(T otherKey) {
-    if (otherKey == null) {
-      setBytes(new byte[getHashLength()]);
-      return;
-    }
-    byte[] _newId = new byte[getHashLength()];
-    System.arraycopy(otherKey.getBytes(), 0, _newId, 0, getHashLength());
-    setBytes(_newId);
+    setWordsFrom(otherKey);
   }
 
+  /**
+   * Mint a new unique key using the lock-free CFLibDbKeyHashGenerator.
+   */
   public CFLibDbKeyHashBase(int notUsed) {
-    initStatics();
-    int thid = (int) (Math.abs(rotator++) % CONCURRENT_DIGESTS);
-    synchronized (hashBuffer[thid]) {
-      while (true) {
-        counter++;
-        hashBuffer[thid].putLong(COUNTER_INDEX, counter);
-        hashBuffer[thid].putLong(THREAD_INDEX, Thread.currentThread().threadId());
-        hashBuffer[thid].putLong(RANDBYTES_INDEX, (long) (Math.random() * Long.MAX_VALUE));
-        getM()[thid].update(hashBuffer[thid].array(), 0, TOTAL_BYTES);
-
-        setBytes(getM()[thid].digest());
-
-        // we want to reserve the bottom 32 bits of the counter for incremental temporary indexing so we regenerate entries that have the top 12 bytes as 0's */
-        byte[] b = getBytes();
-        for (int i = 4; i < getHashLength(); i++) {
-          if (b[i] != 0) {
-            return;
-          }
-        }
-      }
-    }
+    setBytes(CFLibDbKeyHashGenerator.generate(getHashLength(), getHashAlgo()));
   }
 
+  /**
+   * A hash of every key word, computed on first use and cached.
+   * Keys that share leading bytes, such as those of fromInt() or the time prefix of TIME_ORDERED keys, still hash apart.
+   */
+  @Override
   public int hashCode() {
-    int result = 0;
-    byte[] b = getBytes();
-    for (int i = 3; i >= 0; i--) {
-      //result = (result << 8) | id16[i];
-      result = (result << 8) | (0xFF & ((int) b[i]));
+    int h = hashCache;
+    if (h == 0) {
+      h = hashWords();
+      hashCache = h;
     }
-    return result;
+    return h;
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public boolean equals(Object aTest) {
     if (aTest == null) {
       return false;
@@ -199,8 +431,16 @@ public abstract class CFLibDbKeyHashBase<T extends CFLibDbKeyHashBase<T>> implem
     if (aTest.getClass() != getClass()) {
       return false;
     }
-    T test = (T) aTest;
-    return Arrays.equals(this.getBytes(), test.getBytes());
+    CFLibDbKeyHashBase<?> test = (CFLibDbKeyHashBase<?>) aTest;
+    if (hasValue() != test.hasValue()) {
+      return false;
+    }
+    for (int i = 0; i < wordCount(); i++) {
+      if (word(i) != test.word(i)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public int reduceToInt() {
@@ -208,46 +448,164 @@ public abstract class CFLibDbKeyHashBase<T extends CFLibDbKeyHashBase<T>> implem
   }
 
   public boolean isNull() {
-    byte[] b = getBytes();
-    if (b != null) {
-      for (int i = 0; i < getHashLength(); i++) {
-        if (b[i] != 0) {
-          return false;
-        }
+    for (int i = 0; i < wordCount(); i++) {
+      if (word(i) != 0L) {
+        return false;
       }
     }
     return true;
   }
 
   static public void setMachineId(int id) {
-    for (int i = 0; i < CONCURRENT_DIGESTS; i++) {
-      hashBuffer[i].putInt(MACHINE_INDEX, id);
-    }
+    CFLibDbKeyHashGenerator.setMachineId(id);
   }
 
   public void toString(StringBuilder sb) {
-    // Construct and return the representive hex string
-    byte[] b = getBytes();
-    for (int i = 0; i < getHashLength(); i++) {
-      sb.append(hexDigits.charAt((b[i] & 0xF0) >>> 4));
-      sb.append(hexDigits.charAt(b[i] & 0x0F));
+    try {
+      appendHex(sb);
+    }
+    catch (IOException e) {
+      // StringBuilder does not throw
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Append the getHashLengthString() hex digits of the key to dst.
+   */
+  public <A extends Appendable> A appendHex(A dst) throws IOException {
+    int len = getHashLength();
+    for (int i = 0; i < wordCount(); i++) {
+      CFLibDbKeyHashHex.appendWord(word(i), Math.min(8, len - 8 * i), dst);
     }
+    return dst;
+  }
+
+  /**
+   * Write the getHashLengthString() hex digits of the key into dst starting at offset, returning the offset just past them.
+   */
+  public int toHex(char[] dst, int offset) {
+    int len = getHashLength();
+    Objects.checkFromIndexSize(offset, 2 * len, dst.length);
+    for (int i = 0; i < wordCount(); i++) {
+      offset = CFLibDbKeyHashHex.encodeWord(word(i), Math.min(8, len - 8 * i), dst, offset);
+    }
+    return offset;
+  }
+
+  /**
+   * Write the getHashLengthString() hex digits of the key as ASCII into dst starting at offset, returning the offset just past them.
+   */
+  public int toHex(byte[] dst, int offset) {
+    int len = getHashLength();
+    Objects.checkFromIndexSize(offset, 2 * len, dst.length);
+    for (int i = 0; i < wordCount(); i++) {
+      offset = CFLibDbKeyHashHex.encodeWord(word(i), Math.min(8, len - 8 * i), dst, offset);
+    }
+    return offset;
   }
 
   @Override
   public String toString() {
-    byte[] b = getBytes();
-    if (b == null) {
+    if (!hasValue()) {
+      return "null";
+    }
+    byte[] ascii = new byte[getHashLength() * 2];
+    toHex(ascii, 0);
+    return CFLibDbKeyHashHex.latin1(ascii);
+  }
+
+  /**
+   * Load the key from the hex digits of s from from to to, validating them as they are read.
+   * A range shorter than getHashLengthString() fills the leading bytes and leaves the rest zero.
+   *
+   * @return false if a character is not a hex digit, in which case the key holds garbage
+   */
+  final boolean setWordsFromHex(CharSequence s, int from, int to) {
+    if (to - from > getHashLength() * 2) {
+      throw new IllegalArgumentException("string length is " + (to - from) + ".  Must be <= " + getHashLength() * 2 + ".  string is '" + s + "'.");
+    }
+    if (((to - from) & 1) != 0) {
+      throw new IllegalArgumentException("string length is " + (to - from) + ".  Must be even.  string is '" + s + "'.");
+    }
+    // Decoding into bytes and loading the words from them keeps each byte independent of the others, which is faster than shifting digits into a word
+    byte[] b = new byte[getHashLength()];
+    boolean valid = CFLibDbKeyHashHex.decodeQuietly(s, from, to, b, 0);
+    setWordsFromBytes(b, 0);
+    return valid;
+  }
+
+  /**
+   * Load the key from hex, as setWordsFromHex() but rejecting any character that is not a hex digit.
+   */
+  final void parseHex(CharSequence s, int from, int to) {
+    Objects.checkFromToIndex(from, to, s.length());
+    if (!setWordsFromHex(s, from, to)) {
+      throw CFLibDbKeyHashHex.invalid(s, from, to);
+    }
+  }
+
+  /**
+   * The key in the unpadded Base64url form, e.g. 43 characters for a 256 bit key instead of 64 hex digits, or "null" as toString().
+   */
+  public String toBase64() {
+    return toString(CFLibDbKeyHashEncoding.BASE64URL);
+  }
+
+  /**
+   * The key in Crockford Base32, upper case and unpadded; the strings of one width sort in the same order as the keys.
+   */
+  public String toBase32() {
+    return toString(CFLibDbKeyHashEncoding.BASE32);
+  }
+
+  public String toString(CFLibDbKeyHashEncoding encoding) {
+    if (!hasValue()) {
       return "null";
     }
-    StringBuilder sb = new StringBuilder(b.length * 2);
-    for (int i = 0; i < getHashLength(); i++) {
-      sb.append(hexDigits.charAt((b[i] & 0xF0) >>> 4));
-      sb.append(hexDigits.charAt(b[i] & 0x0F));
+    byte[] b = new byte[getHashLength()];
+    copyBytes(b, 0);
+    return encoding.encode(b);
+  }
+
+  /**
+   * Load the key from the range of s, which must be exactly the encoding of a key of this width.
+   */
+  final void parse(CFLibDbKeyHashEncoding encoding, CharSequence s, int from, int to) {
+    Objects.checkFromToIndex(from, to, s.length());
+    byte[] b = new byte[getHashLength()];
+    encoding.decodeExactly(s, from, to, b, 0, b.length);
+    setWordsFromBytes(b, 0);
+  }
+
+  /**
+   * Load the key from the range of s in whichever of hex, Base64url or Crockford Base32 its length calls for.
+   * The three lengths differ at every width, so no guessing is needed; only the full length of each form is accepted.
+   */
+  final void parseAny(CharSequence s, int from, int to) {
+    Objects.checkFromToIndex(from, to, s.length());
+    int len = getHashLength();
+    int n = to - from;
+    if (n == 2 * len) {
+      parseHex(s, from, to);
+    }
+    else if (n == CFLibDbKeyHashEncoding.BASE64URL.encodedLength(len)) {
+      parse(CFLibDbKeyHashEncoding.BASE64URL, s, from, to);
+    }
+    else if (n == CFLibDbKeyHashEncoding.BASE32.encodedLength(len)) {
+      parse(CFLibDbKeyHashEncoding.BASE32, s, from, to);
+    }
+    else {
+      throw new IllegalArgumentException("string length is " + n + ".  Must be " + (2 * len) + " for hex, "
+        + CFLibDbKeyHashEncoding.BASE64URL.encodedLength(len) + " for BASE64URL or " + CFLibDbKeyHashEncoding.BASE32.encodedLength(len)
+        + " for BASE32.  string is '" + s + "'.");
     }
-    return sb.toString();
   }
 
+  /**
+   * Order keys by their bytes as unsigned values, with null after every key.
+   * Keys are compared a word at a time as unsigned longs; the result is -1, 0 or 1.
+   */
   @Override
   public int compare(T h1, T h2) {
     if (h1 == null) {
@@ -263,20 +621,11 @@ public abstract class CFLibDbKeyHashBase<T extends CFLibDbKeyHashBase<T>> implem
         return -1;
       }
       else {
-        byte[] b1 = h1.getBytes();
-        byte[] b2 = h2.getBytes();
-        for (int i = 0; i < h1.getHashLength(); i++) {
-          int v1 = b1[i];
-          int v2 = b2[i];
-          if (v1 < 0) {
-            v1 += 256;
-          }
-          if (v2 < 0) {
-            v2 += 256;
-          }
-          int c = v1 - v2;
-          if (c != 0) {
-            return c;
+        for (int i = 0; i < h1.wordCount(); i++) {
+          long w1 = h1.word(i);
+          long w2 = h2.word(i);
+          if (w1 != w2) {
+            return Long.compareUnsigned(w1, w2);
           }
         }
       }
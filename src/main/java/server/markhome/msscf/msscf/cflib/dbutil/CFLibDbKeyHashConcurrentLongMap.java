@@ -0,0 +1,648 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A concurrent map from keys of one width to non-negative long values, such as surrogate row ids, built for shared caches.
+ * <p>
+ * Each slot is a run of longs in one long[], holding a state word, the value and then the key words, so get(), put(),
+ * putIfAbsent() and remove() allocate nothing and a lookup usually touches one or two cache lines.  The state word is claimed
+ * by CAS and holds a fingerprint of the key along with whether the key words are still being written, in use, or the slot was
+ * closed by a resize.  A key, once placed, keeps its slot for the life of the table; removing it stores NO_VALUE, and the slot
+ * is reclaimed by the next resize.
+ * <p>
+ * Values are changed only by CAS.  A resize copies the table in chunks, with every thread that touches the map while it runs
+ * helping out, so no operation ever waits for the whole copy.  To copy a slot its value is first frozen in place by a CAS that sets
+ * the top bit, which is why values are limited to 0 through MAX_VALUE; an operation that meets a frozen value moves on to the new table.
+ * Slots of the new table start out unresolved, and the first operation on one settles it from the old table.
+ * <p>
+ * The only waiting is on a slot whose key words are mid-publication and whose fingerprint matches the key being sought:
+ * the thread spins until the claiming thread's few stores land.
+ * Create maps through the width's factories, e.g. CFLibDbKeyHash256.newConcurrentLongMap(expected).
+ *
+ * @author msobkow
+ */
+public class CFLibDbKeyHashConcurrentLongMap<T extends CFLibDbKeyHashBase<T>> {
+
+  /**
+   * Returned for keys that are absent.
+   */
+  public static final long NO_VALUE = -1L;
+
+  /**
+   * The largest value the map can hold.
+   */
+  public static final long MAX_VALUE = (1L << 62) - 1;
+
+  static final long UNSET = -2L;
+  static final long FROZEN_ABSENT = -3L;
+  static final long FROZEN_BIT = Long.MIN_VALUE;
+
+  static final long EMPTY = 0L;
+  static final long CLAIMED = 1L;
+  static final long LIVE = 2L;
+  static final long DEAD = 3L;
+  static final long STATUS = 3L;
+
+  static final int NOT_FOUND = -1;
+  static final int MOVED = -2;
+
+  static final int MIN_CAPACITY = 16;
+  static final int COPY_CHUNK = 256;
+
+  static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+  static final VarHandle TABLE;
+  static final VarHandle NEXT;
+  static final VarHandle USED;
+  static final VarHandle COPY_INDEX;
+  static final VarHandle COPIED;
+
+  static {
+    try {
+      MethodHandles.Lookup l = MethodHandles.lookup();
+      TABLE = l.findVarHandle(CFLibDbKeyHashConcurrentLongMap.class, "table", Table.class);
+      NEXT = l.findVarHandle(Table.class, "next", Table.class);
+      USED = l.findVarHandle(Table.class, "used", int.class);
+      COPY_INDEX = l.findVarHandle(Table.class, "copyIndex", int.class);
+      COPIED = l.findVarHandle(Table.class, "copied", int.class);
+    }
+    catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  static final class Table {
+    /**
+     * width longs per slot: the state word, the value, then the key words.
+     */
+    final long[] slots;
+    final int width;
+    final int mask;
+    final int shift;
+    final int threshold;
+    /**
+     * The table this one is being copied from, cleared once every slot of it has been copied.
+     */
+    volatile Table prev;
+    volatile Table next = null;
+    volatile int used = 0;
+    volatile int copyIndex = 0;
+    volatile int copied = 0;
+
+    Table(int capacity, int stride, Table prev) {
+      width = stride + 2;
+      slots = new long[Math.multiplyExact(capacity, width)];
+      long initial = prev == null ? NO_VALUE : UNSET;
+      for (int i = 1; i < slots.length; i += width) {
+        slots[i] = initial;
+      }
+      mask = capacity - 1;
+      shift = 64 - Integer.numberOfTrailingZeros(capacity);
+      threshold = capacity - (capacity >>> 2);
+      this.prev = prev;
+    }
+
+    int capacity() {
+      return mask + 1;
+    }
+  }
+
+  final int hashLength;
+  final int stride;
+  final Supplier<T> keyFactory;
+  final LongAdder size = new LongAdder();
+  volatile Table table;
+
+  /**
+   * @param hashLength the key width in bytes
+   * @param keyFactory creates all-zero keys of the width, e.g. CFLibDbKeyHash256::nullGet
+   * @param expected the number of entries to size the table for without resizing
+   */
+  public CFLibDbKeyHashConcurrentLongMap(int hashLength, Supplier<T> keyFactory, int expected) {
+    if (keyFactory == null) {
+      throw new NullPointerException("keyFactory must not be null.");
+    }
+    this.hashLength = hashLength;
+    this.stride = (hashLength + 7) / 8;
+    this.keyFactory = keyFactory;
+    this.table = new Table(Math.max(MIN_CAPACITY, CFLibDbKeyHashTable.tableSizeFor(expected)), stride, null);
+  }
+
+  public int getHashLength() {
+    return hashLength;
+  }
+
+  /**
+   * The number of keys with a value.  The count is exact only while no updates are in flight.
+   */
+  public long size() {
+    return size.sum();
+  }
+
+  public boolean isEmpty() {
+    return size.sum() == 0L;
+  }
+
+  static void checkKey(Object key) {
+    if (key == null) {
+      throw new NullPointerException("key must not be null.");
+    }
+  }
+
+  static void checkValue(long value) {
+    if (value < 0L || value > MAX_VALUE) {
+      throw new IllegalArgumentException("value is " + value + ".  Must be between 0 and " + MAX_VALUE + ".");
+    }
+  }
+
+  static boolean isFrozen(long x) {
+    return x < UNSET;
+  }
+
+  static long freeze(long x) {
+    return x == NO_VALUE ? FROZEN_ABSENT : x | FROZEN_BIT;
+  }
+
+  /**
+   * Spread the first and last words of a key into 64 bits, as CFLibDbKeyHashTable does; the top bits pick the home slot
+   * and the rest form the fingerprint.
+   */
+  final long mix(T key, long[] src, int srcBase) {
+    long h = key != null
+      ? (key.word(0) ^ key.word(stride - 1)) * CFLibDbKeyHashTable.GOLDEN
+      : (src[srcBase] ^ src[srcBase + stride - 1]) * CFLibDbKeyHashTable.GOLDEN;
+    return h ^ (h >>> 32);
+  }
+
+  final boolean matches(Table t, int slot, T key, long[] src, int srcBase) {
+    int base = t.width * slot + 2;
+    if (key != null) {
+      return key.wordsEqual(t.slots, base);
+    }
+    for (int w = 0; w < stride; w++) {
+      if (t.slots[base + w] != src[srcBase + w]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Find the slot of a key, given either as key or as the words at src[srcBase], optionally claiming a slot for it if absent.
+   * <p>
+   * Claims made by copySlot() pass mayResize false and are always granted.  While a table is still being filled from its
+   * previous one, other claims first reserve their slot and are refused once they would cut into the room the uncopied
+   * slots of the previous table may still need; the claiming thread then finishes the copy itself.
+   *
+   * @return the slot; NOT_FOUND if absent and not claiming; MOVED if a claim must be made in the next table instead
+   */
+  final int locate(Table t, T key, long[] src, int srcBase, long h, boolean claim, boolean mayResize) {
+    long fp = h << 2;
+    int i = (int) (h >>> t.shift);
+    for (int n = 0; n <= t.mask; n++, i = (i + 1) & t.mask) {
+      long s = (long) SLOTS.getAcquire(t.slots, t.width * i);
+      while (s == EMPTY) {
+        if (!claim) {
+          return NOT_FOUND;
+        }
+        if (t.next != null) {
+          return MOVED;
+        }
+        Table p = t.prev;
+        boolean reserved = false;
+        if (mayResize && p != null) {
+          int r = (int) USED.getAndAdd(t, 1);
+          if (r + (p.capacity() - p.copied) >= t.mask) {
+            USED.getAndAdd(t, -1);
+            copyAll(p);
+            s = (long) SLOTS.getAcquire(t.slots, t.width * i);
+            continue;
+          }
+          reserved = true;
+        }
+        if (SLOTS.compareAndSet(t.slots, t.width * i, EMPTY, fp | CLAIMED)) {
+          if (key != null) {
+            key.copyWords(t.slots, t.width * i + 2);
+          }
+          else {
+            System.arraycopy(src, srcBase, t.slots, t.width * i + 2, stride);
+          }
+          SLOTS.setRelease(t.slots, t.width * i, fp | LIVE);
+          int used = reserved ? t.used : (int) USED.getAndAdd(t, 1) + 1;
+          if (mayResize && used >= t.threshold) {
+            startResize(t);
+          }
+          return i;
+        }
+        if (reserved) {
+          USED.getAndAdd(t, -1);
+        }
+        s = (long) SLOTS.getAcquire(t.slots, t.width * i);
+      }
+      if (s == DEAD) {
+        return claim ? MOVED : NOT_FOUND;
+      }
+      if ((s & ~STATUS) == fp) {
+        while ((s & STATUS) == CLAIMED) {
+          Thread.onSpinWait();
+          s = (long) SLOTS.getAcquire(t.slots, t.width * i);
+        }
+        if (matches(t, i, key, src, srcBase)) {
+          return i;
+        }
+      }
+    }
+    if (claim) {
+      if (mayResize) {
+        startResize(t);
+      }
+      return MOVED;
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * The value in slot i of t, settling it from the previous table first if it is still unresolved.
+   */
+  final long valueAt(Table t, int i, T key, long h) {
+    long x = (long) SLOTS.getVolatile(t.slots, t.width * i + 1);
+    if (x != UNSET) {
+      return x;
+    }
+    Table p = t.prev;
+    if (p != null) {
+      int s = locateOld(p, key, h);
+      if (s >= 0) {
+        copySlot(p, s);
+      }
+    }
+    SLOTS.compareAndSet(t.slots, t.width * i + 1, UNSET, NO_VALUE);
+    return (long) SLOTS.getVolatile(t.slots, t.width * i + 1);
+  }
+
+  /**
+   * Find a key in a table being copied, closing the empty slot that ends its probe so it can no longer be added there.
+   */
+  final int locateOld(Table p, T key, long h) {
+    while (true) {
+      int i = locate(p, key, null, 0, h, false, false);
+      if (i >= 0) {
+        return i;
+      }
+      int end = (int) (h >>> p.shift);
+      long s = (long) SLOTS.getAcquire(p.slots, p.width * end);
+      for (int n = 0; n < p.mask && s != EMPTY && s != DEAD; n++) {
+        end = (end + 1) & p.mask;
+        s = (long) SLOTS.getAcquire(p.slots, p.width * end);
+      }
+      if (s != EMPTY || SLOTS.compareAndSet(p.slots, p.width * end, EMPTY, DEAD)) {
+        return NOT_FOUND;
+      }
+      // A key was claimed at the end of the probe; look again in case it is this one
+    }
+  }
+
+  /**
+   * Freeze the value in slot s of p and carry it over to p.next.
+   */
+  final void copySlot(Table p, int s) {
+    long x;
+    while (true) {
+      x = (long) SLOTS.getVolatile(p.slots, p.width * s + 1);
+      if (x == UNSET) {
+        // p was itself copied from a table that has since been finished
+        SLOTS.compareAndSet(p.slots, p.width * s + 1, UNSET, NO_VALUE);
+      }
+      else if (isFrozen(x)) {
+        break;
+      }
+      else if (SLOTS.compareAndSet(p.slots, p.width * s + 1, x, freeze(x))) {
+        x = freeze(x);
+        break;
+      }
+    }
+    if (x == FROZEN_ABSENT) {
+      return;
+    }
+    Table n = p.next;
+    int base = p.width * s + 2;
+    int i = locate(n, null, p.slots, base, mix(null, p.slots, base), true, false);
+    if (i >= 0) {
+      SLOTS.compareAndSet(n.slots, n.width * i + 1, UNSET, x & ~FROZEN_BIT);
+    }
+  }
+
+  final void copyOne(Table p, int s) {
+    while (true) {
+      long st = (long) SLOTS.getAcquire(p.slots, p.width * s);
+      if (st == DEAD || (st == EMPTY && SLOTS.compareAndSet(p.slots, p.width * s, EMPTY, DEAD))) {
+        return;
+      }
+      if ((st & STATUS) == LIVE) {
+        copySlot(p, s);
+        return;
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Copy one chunk of p into p.next, finishing the resize if it was the last.
+   */
+  final void helpCopy(Table p) {
+    int cap = p.capacity();
+    int start = (int) COPY_INDEX.getAndAdd(p, COPY_CHUNK);
+    if (start >= cap) {
+      return;
+    }
+    int end = Math.min(cap, start + COPY_CHUNK);
+    for (int s = start; s < end; s++) {
+      copyOne(p, s);
+    }
+    if ((int) COPIED.getAndAdd(p, end - start) + (end - start) == cap) {
+      finishCopy(p);
+    }
+  }
+
+  /**
+   * Copy every slot of p without relying on other helpers, then finish the resize.
+   */
+  final void copyAll(Table p) {
+    for (int s = 0; s <= p.mask; s++) {
+      copyOne(p, s);
+    }
+    finishCopy(p);
+  }
+
+  final void finishCopy(Table p) {
+    p.next.prev = null;
+    // Finishes can land out of order, so advance past every table whose copy is done
+    Table t = table;
+    Table n;
+    while ((n = t.next) != null && n.prev == null) {
+      t = TABLE.compareAndSet(this, t, n) ? n : table;
+    }
+  }
+
+  final void startResize(Table t) {
+    if (t.next != null) {
+      return;
+    }
+    Table p = t.prev;
+    if (p != null) {
+      // Only one copy runs at a time
+      copyAll(p);
+    }
+    int cap = t.capacity();
+    // Grow if at least half the claimed slots hold values; otherwise the copy just sheds removed keys
+    int capacity = size.sum() >= (t.threshold >>> 1) ? Math.multiplyExact(cap, 2) : cap;
+    NEXT.compareAndSet(t, null, new Table(capacity, stride, t));
+  }
+
+  /**
+   * The newest table, helping any resize in progress along the way.
+   */
+  final Table newest() {
+    Table t = table;
+    Table n;
+    while ((n = t.next) != null) {
+      helpCopy(t);
+      t = n;
+    }
+    return t;
+  }
+
+  public boolean containsKey(T key) {
+    return get(key) != NO_VALUE;
+  }
+
+  /**
+   * @return the value of key, or NO_VALUE if it is absent
+   */
+  public long get(T key) {
+    checkKey(key);
+    long h = mix(key, null, 0);
+    Table t = newest();
+    while (true) {
+      int i = locate(t, key, null, 0, h, false, false);
+      if (i >= 0) {
+        long x = valueAt(t, i, key, h);
+        if (!isFrozen(x)) {
+          return x;
+        }
+        t = t.next;
+        continue;
+      }
+      Table p = t.prev;
+      if (p != null) {
+        // The key may not have been copied yet
+        int s = locate(p, key, null, 0, h, false, false);
+        if (s >= 0) {
+          long x = (long) SLOTS.getVolatile(p.slots, p.width * s + 1);
+          if (x == UNSET) {
+            x = NO_VALUE;
+          }
+          if (!isFrozen(x)) {
+            return x;
+          }
+          if (x != FROZEN_ABSENT) {
+            copySlot(p, s);
+            continue;
+          }
+          // Frozen while absent, so nothing is carried over; the key is absent unless it has since been added to t
+          if (locate(t, key, null, 0, h, false, false) >= 0) {
+            continue;
+          }
+        }
+      }
+      Table n = t.next;
+      if (n == null) {
+        return NO_VALUE;
+      }
+      t = n;
+    }
+  }
+
+  public long getOrDefault(T key, long defaultValue) {
+    long x = get(key);
+    return x != NO_VALUE ? x : defaultValue;
+  }
+
+  /**
+   * Store value only if key is absent.
+   *
+   * @return the existing value of key, or NO_VALUE if value was stored
+   */
+  public long putIfAbsent(T key, long value) {
+    return update(key, value, true);
+  }
+
+  /**
+   * @return the previous value of key, or NO_VALUE if it was absent
+   */
+  public long put(T key, long value) {
+    return update(key, value, false);
+  }
+
+  final long update(T key, long value, boolean onlyIfAbsent) {
+    checkKey(key);
+    checkValue(value);
+    long h = mix(key, null, 0);
+    Table t = newest();
+    while (true) {
+      int i = locate(t, key, null, 0, h, true, true);
+      if (i == MOVED) {
+        t = newest();
+        continue;
+      }
+      long x = valueAt(t, i, key, h);
+      if (isFrozen(x)) {
+        t = newest();
+        continue;
+      }
+      if (onlyIfAbsent && x != NO_VALUE) {
+        return x;
+      }
+      if (SLOTS.compareAndSet(t.slots, t.width * i + 1, x, value)) {
+        if (x == NO_VALUE) {
+          size.increment();
+        }
+        return x;
+      }
+    }
+  }
+
+  /**
+   * @return the removed value of key, or NO_VALUE if it was absent
+   */
+  public long remove(T key) {
+    return removeValue(key, NO_VALUE);
+  }
+
+  /**
+   * Remove key only if its value is expected.
+   *
+   * @return true if the key was removed
+   */
+  public boolean remove(T key, long expected) {
+    checkValue(expected);
+    return removeValue(key, expected) == expected;
+  }
+
+  /**
+   * Remove key if expected is NO_VALUE or matches its value.
+   */
+  final long removeValue(T key, long expected) {
+    checkKey(key);
+    long h = mix(key, null, 0);
+    Table t = newest();
+    while (true) {
+      Table at = t;
+      int i = locate(t, key, null, 0, h, false, false);
+      if (i < 0) {
+        Table p = t.prev;
+        if (p != null) {
+          // The key may not have been copied yet, in which case it is removed where it is
+          i = locate(p, key, null, 0, h, false, false);
+          at = p;
+        }
+        if (i < 0) {
+          Table n = t.next;
+          if (n == null) {
+            return NO_VALUE;
+          }
+          t = n;
+          continue;
+        }
+      }
+      long x = at == t ? valueAt(t, i, key, h) : (long) SLOTS.getVolatile(at.slots, at.width * i + 1);
+      if (x == UNSET) {
+        x = NO_VALUE;
+      }
+      if (isFrozen(x)) {
+        if (at == t) {
+          t = t.next;
+        }
+        else if (x != FROZEN_ABSENT) {
+          copySlot(at, i);
+        }
+        else if (locate(t, key, null, 0, h, false, false) < 0) {
+          // Frozen while absent and not added to t since, so absent unless a later table has it
+          Table n = t.next;
+          if (n == null) {
+            return NO_VALUE;
+          }
+          t = n;
+        }
+        continue;
+      }
+      if (x == NO_VALUE || (expected != NO_VALUE && x != expected)) {
+        return NO_VALUE;
+      }
+      if (SLOTS.compareAndSet(at.slots, at.width * i + 1, x, NO_VALUE)) {
+        size.decrement();
+        return x;
+      }
+    }
+  }
+
+  /**
+   * Receives the entries of forEach().
+   */
+  @FunctionalInterface
+  public interface EntryConsumer<T> {
+    void accept(T key, long value);
+  }
+
+  /**
+   * Pass every entry to action, finishing any resize in progress first.  Entries changed while this runs may or may not be seen.
+   * The key passed is one flyweight view reloaded for each entry, so copy it with deepClone() to keep it.
+   */
+  public void forEach(EntryConsumer<? super T> action) {
+    Table t = table;
+    while (t.next != null) {
+      copyAll(t);
+      t = t.next;
+    }
+    T view = keyFactory.get();
+    for (int i = 0; i <= t.mask; i++) {
+      if (((long) SLOTS.getAcquire(t.slots, t.width * i) & STATUS) != LIVE) {
+        continue;
+      }
+      long x = (long) SLOTS.getVolatile(t.slots, t.width * i + 1);
+      if (x < 0L) {
+        // Removed, never settled (so absent, as the copy into t is finished), or frozen by a resize that started since
+        continue;
+      }
+      int base = t.width * i + 2;
+      for (int w = 0; w < stride; w++) {
+        view.setWord(w, t.slots[base + w]);
+      }
+      action.accept(view, x);
+    }
+  }
+}
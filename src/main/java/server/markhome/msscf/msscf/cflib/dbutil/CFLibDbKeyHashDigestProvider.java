@@ -0,0 +1,58 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Service provider interface for the digests used to mint and hash CFLibDbKeyHash keys.
+ * <p>
+ * Implementations are discovered with java.util.ServiceLoader (list them in META-INF/services/server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHashDigestProvider) or registered directly with CFLibDbKeyHashDigests.setProvider().
+ * A provider returns an ordinary MessageDigest, so a pure-Java algorithm only needs to extend MessageDigest (or wrap a MessageDigestSpi) to be usable here.
+ * <p>
+ * Whatever the algorithm, the digest must produce exactly hashLength bytes, and the choice of provider is part of the identity of every key hashed through it: switching providers changes the value of hash(...) for the same input.
+ *
+ * @author msobkow
+ */
+public interface CFLibDbKeyHashDigestProvider {
+
+  /**
+   * The name used to select this provider through configuration.
+   */
+  String getName();
+
+  /**
+   * Can this provider produce digests of hashLength bytes?
+   */
+  boolean supports(int hashLength);
+
+  /**
+   * Create a new digest producing exactly hashLength bytes.
+   *
+   * @param hashLength the key width in bytes
+   * @param algo the JCA algorithm name configured for the key width; providers implementing their own algorithm may ignore it
+   * @return a new, independent digest
+   * @throws NoSuchAlgorithmException if the digest cannot be created
+   */
+  MessageDigest newDigest(int hashLength, String algo) throws NoSuchAlgorithmException;
+}
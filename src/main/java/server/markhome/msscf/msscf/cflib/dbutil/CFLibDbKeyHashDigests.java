@@ -0,0 +1,269 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The registry of CFLibDbKeyHashDigestProvider implementations, one selected per key width.
+ * <p>
+ * Every key width uses the JCA provider (MessageDigest.getInstance with the width's algorithm) unless configured otherwise.
+ * At first use the registry loads every provider visible to ServiceLoader, then selects for each width the provider named by the system property
+ * <code>server.markhome.msscf.msscf.cflib.dbutil.digest.&lt;bits&gt;</code>, falling back to <code>server.markhome.msscf.msscf.cflib.dbutil.digest</code>.
+ * The name <code>jca:&lt;ProviderName&gt;</code> selects a specific java.security.Provider, e.g. <code>jca:SUN</code>.
+ * <p>
+ * Both the lock-free key generator and the static hash(...) functions of every key class obtain their digests here.
+ * Changing a width's provider bumps getVersion(), which makes cached digests be recreated on their next use.
+ *
+ * @author msobkow
+ */
+public final class CFLibDbKeyHashDigests {
+
+  public static final String PROPERTY_PREFIX = "server.markhome.msscf.msscf.cflib.dbutil.digest";
+
+  /**
+   * The default provider, backed by MessageDigest.getInstance() and optionally pinned to one java.security.Provider.
+   */
+  public static final class JcaProvider implements CFLibDbKeyHashDigestProvider {
+    final String providerName;
+
+    public JcaProvider() {
+      this(null);
+    }
+
+    public JcaProvider(String providerName) {
+      this.providerName = providerName;
+    }
+
+    @Override
+    public String getName() {
+      return providerName == null ? "jca" : "jca:" + providerName;
+    }
+
+    @Override
+    public boolean supports(int hashLength) {
+      return true;
+    }
+
+    @Override
+    public MessageDigest newDigest(int hashLength, String algo) throws NoSuchAlgorithmException {
+      if (providerName == null) {
+        return MessageDigest.getInstance(algo);
+      }
+      Provider p = Security.getProvider(providerName);
+      if (p == null) {
+        throw new NoSuchAlgorithmException("JCA provider " + providerName + " is not installed.");
+      }
+      return MessageDigest.getInstance(algo, p);
+    }
+  }
+
+  public static final CFLibDbKeyHashDigestProvider JCA = new JcaProvider();
+
+  /**
+   * File content is mapped and digested in windows of at most this many bytes, which bounds the address space held at any one time.
+   */
+  public static final long MAP_WINDOW_BYTES = 64L << 20;
+
+  /**
+   * Receives progress reports while large content is digested.
+   */
+  @FunctionalInterface
+  public interface Progress {
+    /**
+     * @param done the number of bytes digested so far
+     * @param total the number of bytes to be digested in all
+     */
+    void progress(long done, long total);
+  }
+
+  static final int[] WIDTHS = { 16, 20, 28, 32, 48, 64 };
+  static final AtomicReferenceArray<CFLibDbKeyHashDigestProvider> selected = new AtomicReferenceArray<CFLibDbKeyHashDigestProvider>(WIDTHS.length);
+  static volatile List<CFLibDbKeyHashDigestProvider> discovered = null;
+  static volatile int version = 0;
+
+  private CFLibDbKeyHashDigests() {
+  }
+
+  /**
+   * The providers found through ServiceLoader, loaded once.
+   */
+  public static List<CFLibDbKeyHashDigestProvider> getDiscoveredProviders() {
+    List<CFLibDbKeyHashDigestProvider> d = discovered;
+    if (d == null) {
+      List<CFLibDbKeyHashDigestProvider> found = new ArrayList<CFLibDbKeyHashDigestProvider>();
+      try {
+        for (CFLibDbKeyHashDigestProvider p : ServiceLoader.load(CFLibDbKeyHashDigestProvider.class)) {
+          found.add(p);
+        }
+      }
+      catch (ServiceConfigurationError e) {
+        e.printStackTrace();
+      }
+      d = Collections.unmodifiableList(found);
+      discovered = d;
+    }
+    return d;
+  }
+
+  /**
+   * Find a provider by name among the built-in JCA providers and the discovered providers.
+   *
+   * @return the provider, or null if none has that name
+   */
+  public static CFLibDbKeyHashDigestProvider findProvider(String name) {
+    if (name == null || name.isEmpty() || name.equals("jca")) {
+      return JCA;
+    }
+    if (name.startsWith("jca:")) {
+      return new JcaProvider(name.substring(4));
+    }
+    for (CFLibDbKeyHashDigestProvider p : getDiscoveredProviders()) {
+      if (name.equals(p.getName())) {
+        return p;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the provider selected for a key width, resolving the configuration on first use.
+   * If the configured provider is not installed or does not support the width an IllegalArgumentException naming the property is thrown, rather than
+   * quietly running on a provider nobody configured.
+   */
+  public static CFLibDbKeyHashDigestProvider getProvider(int hashLength) {
+    int slot = CFLibDbKeyHashGenerator.digestSlot(hashLength);
+    CFLibDbKeyHashDigestProvider p = selected.get(slot);
+    if (p == null) {
+      String property = PROPERTY_PREFIX + "." + (hashLength * 8);
+      String name = System.getProperty(property);
+      if (name == null) {
+        property = PROPERTY_PREFIX;
+        name = System.getProperty(property);
+      }
+      p = findProvider(name);
+      if (p == null || !p.supports(hashLength)
+        || (p instanceof JcaProvider && ((JcaProvider) p).providerName != null && Security.getProvider(((JcaProvider) p).providerName) == null))
+      {
+        throw new IllegalArgumentException("System property " + property + " is '" + name + "'.  No digest provider of that name is available for "
+          + (hashLength * 8) + " bit keys.");
+      }
+      if (!selected.compareAndSet(slot, null, p)) {
+        p = selected.get(slot);
+      }
+    }
+    return p;
+  }
+
+  /**
+   * Select the provider for a key width, overriding any configuration.
+   */
+  public static synchronized void setProvider(int hashLength, CFLibDbKeyHashDigestProvider provider) {
+    if (provider == null) {
+      throw new NullPointerException("provider must not be null.");
+    }
+    if (!provider.supports(hashLength)) {
+      throw new IllegalArgumentException("Digest provider " + provider.getName() + " does not support " + hashLength + " byte keys.");
+    }
+    selected.set(CFLibDbKeyHashGenerator.digestSlot(hashLength), provider);
+    version++;
+  }
+
+  /**
+   * Incremented whenever a provider selection changes, so that cached digests can tell they are stale.
+   */
+  public static int getVersion() {
+    return version;
+  }
+
+  /**
+   * Create a new digest for a key width from its selected provider.
+   *
+   * @throws IllegalStateException if the digest cannot be created or produces the wrong number of bytes
+   */
+  public static MessageDigest newDigest(int hashLength, String algo) {
+    CFLibDbKeyHashDigestProvider p = getProvider(hashLength);
+    MessageDigest md;
+    try {
+      md = p.newDigest(hashLength, algo);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Digest provider " + p.getName() + " cannot create " + algo + ".", e);
+    }
+    int len = md.getDigestLength();
+    if (len != 0 && len != hashLength) {
+      throw new IllegalStateException("Digest provider " + p.getName() + " produced a " + len + " byte " + md.getAlgorithm() + " digest for " + hashLength + " byte keys.");
+    }
+    return md;
+  }
+
+  /**
+   * Feed the remaining bytes of payload to md, leaving the buffer's position where it was.
+   * Heap buffers are digested straight from their backing array.
+   * Direct buffers are fed through the digest's own reusable staging array in bounded chunks, so the payload is never copied to the heap as a whole.
+   */
+  public static void update(MessageDigest md, ByteBuffer payload) {
+    int pos = payload.position();
+    md.update(payload);
+    payload.position(pos);
+  }
+
+  /**
+   * Feed len bytes of channel starting at pos to md, memory-mapping the region one MAP_WINDOW_BYTES window at a time.
+   * The bytes digested are exactly those a read of the same region would return, so the result matches digesting the content as one byte[].
+   * The channel's own position is not used or changed.
+   *
+   * @param progress notified after each window, or null
+   */
+  public static void update(MessageDigest md, FileChannel channel, long pos, long len, Progress progress) throws IOException {
+    if (pos < 0 || len < 0) {
+      throw new IllegalArgumentException("pos is " + pos + " and len is " + len + ".  Both must be >= 0.");
+    }
+    long size = channel.size();
+    if (pos + len > size) {
+      throw new IllegalArgumentException("pos + len is " + (pos + len) + ".  Must be <= channel size " + size + ".");
+    }
+    long done = 0;
+    while (done < len) {
+      long n = Math.min(MAP_WINDOW_BYTES, len - done);
+      MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos + done, n);
+      md.update(window);
+      done += n;
+      if (progress != null) {
+        progress.progress(done, len);
+      }
+    }
+  }
+}
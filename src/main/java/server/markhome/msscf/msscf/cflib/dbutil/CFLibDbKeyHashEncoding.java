@@ -0,0 +1,310 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * The compact textual forms of keys and Uuid6s, as alternatives to hex.
+ * <p>
+ * Both encodings are unpadded and written most significant bit first, so the final character carries the left-over bits of the last byte,
+ * padded with zero bits.  Decoding insists on those pad bits being zero, so every key has exactly one spelling in each encoding.
+ * Lengths are fixed per width, and differ from each other and from hex at every width, which is what lets fromAnyString() tell them apart.
+ * <p>
+ * Encoding and decoding are driven by a digit table and a table of the values of character pairs per encoding, a whole group of 3 or 5 bytes
+ * at a time; as in CFLibDbKeyHashHex, the values looked up are ORed together so a single test at the end catches any character that is not a digit.
+ * Whole arrays are encoded to Base64url by java.util.Base64, whose output is identical.
+ *
+ * @author msobkow
+ */
+public enum CFLibDbKeyHashEncoding {
+
+  /**
+   * Unpadded Base64url (RFC 4648 section 5), the shortest form and safe in URLs and JSON; its alphabet does not sort in byte order.
+   */
+  BASE64URL("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_", 6, false, ""),
+
+  /**
+   * Crockford Base32, written in upper case.  Its alphabet ascends in ASCII, so the strings of one width sort in the same order as the keys.
+   * Decoding ignores case and reads I and L as 1 and O as 0, as the Crockford specification asks.
+   */
+  BASE32("0123456789ABCDEFGHJKMNPQRSTVWXYZ", 5, true, "I1L1O0");
+
+  final int bits;
+  final int mask;
+  /**
+   * The bytes and characters of the smallest whole group, which encodes with no pad bits: 3 and 4 for Base64, 5 and 8 for Base32.
+   */
+  final int groupBytes;
+  final int groupChars;
+  final byte[] digits;
+  final byte[] values = new byte[128];
+  /**
+   * The value of each pair of ASCII characters, indexed by (c0 &lt;&lt; 7) | c1, or -1 if either is not a digit, as in CFLibDbKeyHashHex.
+   */
+  final short[] pairs = new short[1 << 14];
+
+  CFLibDbKeyHashEncoding(String alphabet, int bits, boolean ignoreCase, String aliases) {
+    this.bits = bits;
+    this.mask = (1 << bits) - 1;
+    // The lowest common multiple of bits and 8: 24 for Base64, 40 for Base32
+    int group = bits * 8 / Math.min(Integer.lowestOneBit(bits), 8);
+    this.groupBytes = group / 8;
+    this.groupChars = group / bits;
+    this.digits = alphabet.getBytes(StandardCharsets.ISO_8859_1);
+    Arrays.fill(values, (byte) -1);
+    for (int i = 0; i < digits.length; i++) {
+      values[digits[i]] = (byte) i;
+    }
+    for (int i = 0; i < aliases.length(); i += 2) {
+      values[aliases.charAt(i)] = values[aliases.charAt(i + 1)];
+    }
+    if (ignoreCase) {
+      for (int c = 'A'; c <= 'Z'; c++) {
+        values[Character.toLowerCase(c)] = values[c];
+      }
+    }
+    for (int c0 = 0; c0 < 128; c0++) {
+      for (int c1 = 0; c1 < 128; c1++) {
+        int hi = values[c0];
+        int lo = values[c1];
+        pairs[(c0 << 7) | c1] = (short) ((hi | lo) < 0 ? -1 : (hi << bits) | lo);
+      }
+    }
+  }
+
+  static final class Base64Holder {
+    static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+  }
+
+  /**
+   * The number of characters that encode byteLength bytes.
+   */
+  public int encodedLength(int byteLength) {
+    return (int) (((long) byteLength * 8 + bits - 1) / bits);
+  }
+
+  /**
+   * The number of bytes encoded by charLength characters, or -1 if no whole number of bytes encodes to that length.
+   */
+  public int decodedLength(int charLength) {
+    int n = (int) ((long) charLength * bits / 8);
+    return encodedLength(n) == charLength ? n : -1;
+  }
+
+  /**
+   * The value of c as a digit of the encoding, or -1 if it is not one.
+   */
+  public int value(char c) {
+    // Characters past 0x7F fold onto -1 through the sign of 0x7F - c
+    return values[c & 0x7F] | ((0x7F - c) >> 31);
+  }
+
+  /**
+   * The value of the two digits c0 c1 from the pair table p, or a negative number if either is not a digit.
+   */
+  static int pair(short[] p, char c0, char c1) {
+    return p[((c0 << 7) | c1) & 0x3FFF] | ((0x7F - (c0 | c1)) >> 31);
+  }
+
+  public String encode(byte[] src) {
+    return encode(src, 0, src.length);
+  }
+
+  public String encode(byte[] src, int offset, int length) {
+    if (this == BASE64URL && offset == 0 && length == src.length) {
+      // The JDK encoder writes the identical unpadded form, and its encoding loop is a HotSpot intrinsic
+      return Base64Holder.URL_ENCODER.encodeToString(src);
+    }
+    byte[] ascii = new byte[encodedLength(length)];
+    encode(src, offset, length, ascii, 0);
+    return CFLibDbKeyHashHex.latin1(ascii);
+  }
+
+  /**
+   * Write the encoding of length bytes of src as ASCII into dst at dstOffset, returning the offset just past it.
+   */
+  public int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+    Objects.checkFromIndexSize(offset, length, src.length);
+    Objects.checkFromIndexSize(dstOffset, encodedLength(length), dst.length);
+    int end = offset + length;
+    int whole = end - length % groupBytes;
+    int i = offset;
+    byte[] d = digits;
+    // Whole groups are written out in full for each encoding, leaving only the final partial group to the bit accumulator
+    if (bits == 6) {
+      for (; i < whole; i += 3) {
+        int v = ((src[i] & 0xFF) << 16) | ((src[i + 1] & 0xFF) << 8) | (src[i + 2] & 0xFF);
+        dst[dstOffset] = d[v >>> 18];
+        dst[dstOffset + 1] = d[(v >>> 12) & 63];
+        dst[dstOffset + 2] = d[(v >>> 6) & 63];
+        dst[dstOffset + 3] = d[v & 63];
+        dstOffset += 4;
+      }
+    }
+    else {
+      for (; i < whole; i += 5) {
+        long v = ((long) (src[i] & 0xFF) << 32) | ((long) (src[i + 1] & 0xFF) << 24) | ((src[i + 2] & 0xFF) << 16)
+          | ((src[i + 3] & 0xFF) << 8) | (src[i + 4] & 0xFF);
+        dst[dstOffset] = d[(int) (v >>> 35)];
+        dst[dstOffset + 1] = d[(int) (v >>> 30) & 31];
+        dst[dstOffset + 2] = d[(int) (v >>> 25) & 31];
+        dst[dstOffset + 3] = d[(int) (v >>> 20) & 31];
+        dst[dstOffset + 4] = d[(int) (v >>> 15) & 31];
+        dst[dstOffset + 5] = d[(int) (v >>> 10) & 31];
+        dst[dstOffset + 6] = d[(int) (v >>> 5) & 31];
+        dst[dstOffset + 7] = d[(int) v & 31];
+        dstOffset += 8;
+      }
+    }
+    long acc = 0L;
+    int have = 0;
+    for (; i < end; i++) {
+      acc = (acc << 8) | (src[i] & 0xFF);
+      have += 8;
+      while (have >= bits) {
+        have -= bits;
+        dst[dstOffset++] = digits[(int) (acc >>> have) & mask];
+      }
+    }
+    if (have > 0) {
+      dst[dstOffset++] = digits[(int) (acc << (bits - have)) & mask];
+    }
+    return dstOffset;
+  }
+
+  public byte[] decode(CharSequence s) {
+    int n = decodedLength(s.length());
+    if (n < 0) {
+      throw badLength(s, s.length());
+    }
+    byte[] b = new byte[n];
+    decode(s, 0, s.length(), b, 0);
+    return b;
+  }
+
+  /**
+   * Decode the characters of s from from to to into dst at offset, returning the number of bytes written.
+   *
+   * @throws IllegalArgumentException if the range is not the canonical encoding of a whole number of bytes
+   */
+  public int decode(CharSequence s, int from, int to, byte[] dst, int offset) {
+    Objects.checkFromToIndex(from, to, s.length());
+    int n = decodedLength(to - from);
+    if (n < 0) {
+      throw badLength(s, to - from);
+    }
+    Objects.checkFromIndexSize(offset, n, dst.length);
+    if (!decodeQuietly(s, from, to, dst, offset)) {
+      throw invalid(s, from, to);
+    }
+    return n;
+  }
+
+  /**
+   * Decode a range already known to be of a decodable length, returning false if a character is not a digit or the pad bits are not zero.
+   */
+  boolean decodeQuietly(CharSequence s, int from, int to, byte[] dst, int offset) {
+    int whole = to - (to - from) % groupChars;
+    short[] p = pairs;
+    int check = 0;
+    int i = from;
+    if (bits == 6) {
+      for (; i < whole; i += 4) {
+        int p0 = pair(p, s.charAt(i), s.charAt(i + 1));
+        int p1 = pair(p, s.charAt(i + 2), s.charAt(i + 3));
+        check |= p0 | p1;
+        int v = (p0 << 12) | (p1 & 0xFFF);
+        dst[offset] = (byte) (v >>> 16);
+        dst[offset + 1] = (byte) (v >>> 8);
+        dst[offset + 2] = (byte) v;
+        offset += 3;
+      }
+    }
+    else {
+      for (; i < whole; i += 8) {
+        int p0 = pair(p, s.charAt(i), s.charAt(i + 1));
+        int p1 = pair(p, s.charAt(i + 2), s.charAt(i + 3));
+        int p2 = pair(p, s.charAt(i + 4), s.charAt(i + 5));
+        int p3 = pair(p, s.charAt(i + 6), s.charAt(i + 7));
+        check |= p0 | p1 | p2 | p3;
+        // An invalid pair is negative, which garbles the bytes, but check already fails the whole range
+        long v = ((long) p0 << 30) | ((long) p1 << 20) | ((long) p2 << 10) | (p3 & 0x3FF);
+        dst[offset] = (byte) (v >>> 32);
+        dst[offset + 1] = (byte) (v >>> 24);
+        dst[offset + 2] = (byte) (v >>> 16);
+        dst[offset + 3] = (byte) (v >>> 8);
+        dst[offset + 4] = (byte) v;
+        offset += 5;
+      }
+    }
+    long acc = 0L;
+    int have = 0;
+    for (; i < to; i++) {
+      int v = value(s.charAt(i));
+      check |= v;
+      acc = (acc << bits) | (v & mask);
+      have += bits;
+      if (have >= 8) {
+        have -= 8;
+        dst[offset++] = (byte) (acc >>> have);
+      }
+    }
+    return check >= 0 && (acc & ((1L << have) - 1)) == 0L;
+  }
+
+  /**
+   * True if the range of s is the canonical encoding of byteLength bytes.
+   */
+  public boolean isEncoding(CharSequence s, int from, int to, int byteLength) {
+    Objects.checkFromToIndex(from, to, s.length());
+    return to - from == encodedLength(byteLength) && decodeQuietly(s, from, to, new byte[byteLength], 0);
+  }
+
+  /**
+   * Decode the range of s, which must be exactly the encoding of length bytes, into dst at offset.
+   */
+  void decodeExactly(CharSequence s, int from, int to, byte[] dst, int offset, int length) {
+    if (to - from != encodedLength(length)) {
+      throw new IllegalArgumentException("string length is " + (to - from) + ".  Must be " + encodedLength(length) + " " + this
+        + " characters.  string is '" + s + "'.");
+    }
+    decode(s, from, to, dst, offset);
+  }
+
+  IllegalArgumentException badLength(CharSequence s, int length) {
+    return new IllegalArgumentException("string length is " + length + ", which no whole number of bytes encodes to in " + this
+      + ".  string is '" + s + "'.");
+  }
+
+  IllegalArgumentException invalid(CharSequence s, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (value(s.charAt(i)) < 0) {
+        return new IllegalArgumentException("character " + i + " is '" + s.charAt(i) + "'.  Must be a " + this + " digit.  string is '" + s + "'.");
+      }
+    }
+    return new IllegalArgumentException("string '" + s + "' has non-zero pad bits in its last character.  Must be the canonical " + this + " form.");
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.security.MessageDigest;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Hashes composite natural keys field by field, encoding each field straight into the reusable staging buffer of the hasher.
+ * <p>
+ * Every field is written as a one byte type tag followed by its content, with all integers big-endian:
+ * <table>
+ * <caption>Field encodings</caption>
+ * <tr><th>Field</th><th>Tag</th><th>Content</th></tr>
+ * <tr><td>null</td><td>0x00</td><td>none</td></tr>
+ * <tr><td>boolean</td><td>0x01</td><td>1 byte, 0x01 for true and 0x00 for false</td></tr>
+ * <tr><td>byte</td><td>0x02</td><td>1 byte</td></tr>
+ * <tr><td>short</td><td>0x03</td><td>2 bytes</td></tr>
+ * <tr><td>char</td><td>0x04</td><td>2 bytes, the UTF-16 code unit</td></tr>
+ * <tr><td>int</td><td>0x05</td><td>4 bytes</td></tr>
+ * <tr><td>long</td><td>0x06</td><td>8 bytes</td></tr>
+ * <tr><td>float</td><td>0x07</td><td>4 bytes of Float.floatToIntBits, so every NaN encodes as 0x7fc00000</td></tr>
+ * <tr><td>double</td><td>0x08</td><td>8 bytes of Double.doubleToLongBits, so every NaN encodes as 0x7ff8000000000000</td></tr>
+ * <tr><td>byte[]</td><td>0x10</td><td>4 byte length, then the bytes</td></tr>
+ * <tr><td>text</td><td>0x11</td><td>4 byte length of the UTF-8 encoding, then the UTF-8 bytes (String.getBytes(UTF_8), so unpaired surrogates become '?')</td></tr>
+ * <tr><td>short[]</td><td>0x12</td><td>4 byte element count, then 2 bytes per element</td></tr>
+ * <tr><td>char[]</td><td>0x13</td><td>4 byte element count, then 2 bytes per element</td></tr>
+ * <tr><td>int[]</td><td>0x14</td><td>4 byte element count, then 4 bytes per element</td></tr>
+ * <tr><td>long[]</td><td>0x15</td><td>4 byte element count, then 8 bytes per element</td></tr>
+ * <tr><td>float[]</td><td>0x16</td><td>4 byte element count, then 4 bytes per element as for float</td></tr>
+ * <tr><td>double[]</td><td>0x17</td><td>4 byte element count, then 8 bytes per element as for double</td></tr>
+ * <tr><td>boolean[]</td><td>0x18</td><td>4 byte element count, then 1 byte per element as for boolean</td></tr>
+ * <tr><td>CFLibUuid6</td><td>0x20</td><td>the 28 bytes of the Uuid6</td></tr>
+ * <tr><td>key</td><td>0x21</td><td>1 byte key length (16, 20, 28, 32, 48 or 64), then the key bytes</td></tr>
+ * </table>
+ * Null arrays, text, Uuid6s and keys are written as the null field.
+ * Lengths and counts are unsigned; a field whose length does not fit in 32 bits is rejected.
+ * <p>
+ * The digested payload is the namespace bytes (empty unless a namespace was given) followed by the fields in order.
+ * Because every field is self-delimiting, different field lists always produce different payloads, so ["ab", "c"] and ["a", "bc"] hash apart,
+ * and another service can reproduce a key with nothing more than the table above and the digest of the key width.
+ * <p>
+ * The raw update() methods inherited from CFLibDbKeyHasher append bytes outside this layout and should not be mixed with fields.
+ * Instances are not thread safe.
+ *
+ * @author msobkow
+ */
+public class CFLibDbKeyHashFieldWriter<T extends CFLibDbKeyHashBase<T>> extends CFLibDbKeyHasher<T> {
+
+  public static final byte TAG_NULL = 0x00;
+  public static final byte TAG_BOOLEAN = 0x01;
+  public static final byte TAG_BYTE = 0x02;
+  public static final byte TAG_SHORT = 0x03;
+  public static final byte TAG_CHAR = 0x04;
+  public static final byte TAG_INT = 0x05;
+  public static final byte TAG_LONG = 0x06;
+  public static final byte TAG_FLOAT = 0x07;
+  public static final byte TAG_DOUBLE = 0x08;
+  public static final byte TAG_BYTES = 0x10;
+  public static final byte TAG_TEXT = 0x11;
+  public static final byte TAG_SHORTS = 0x12;
+  public static final byte TAG_CHARS = 0x13;
+  public static final byte TAG_INTS = 0x14;
+  public static final byte TAG_LONGS = 0x15;
+  public static final byte TAG_FLOATS = 0x16;
+  public static final byte TAG_DOUBLES = 0x17;
+  public static final byte TAG_BOOLEANS = 0x18;
+  public static final byte TAG_UUID6 = 0x20;
+  public static final byte TAG_KEY = 0x21;
+
+  /**
+   * @param hashLength the digest length of the key width
+   * @param algo the digest algorithm of the key width
+   * @param namespace the prefix digested ahead of the fields; may be empty but not null
+   * @param finisher completes a digest into a key of the width, e.g. CFLibDbKeyHash256::digestToKey
+   */
+  public CFLibDbKeyHashFieldWriter(int hashLength, String algo, byte[] namespace, Function<MessageDigest, T> finisher) {
+    super(hashLength, algo, namespace, finisher);
+  }
+
+  @Override
+  public CFLibDbKeyHashFieldWriter<T> reset() {
+    super.reset();
+    return this;
+  }
+
+  /**
+   * Stage a tag followed by an unsigned 32 bit length or count.
+   */
+  void header(byte tag, long length) {
+    if (length < 0 || length > 0xFFFFFFFFL) {
+      throw new IllegalArgumentException("field length is " + length + ".  Must be between 0 and " + 0xFFFFFFFFL + ".");
+    }
+    reserve(5);
+    staging[staged++] = tag;
+    stage(length, 4);
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putNull() {
+    stage(TAG_NULL, 1);
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putBoolean(boolean value) {
+    reserve(2);
+    staging[staged++] = TAG_BOOLEAN;
+    staging[staged++] = (byte) (value ? 1 : 0);
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putByte(byte value) {
+    reserve(2);
+    staging[staged++] = TAG_BYTE;
+    staging[staged++] = value;
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putShort(short value) {
+    reserve(3);
+    staging[staged++] = TAG_SHORT;
+    stage(value, 2);
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putChar(char value) {
+    reserve(3);
+    staging[staged++] = TAG_CHAR;
+    stage(value, 2);
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putInt(int value) {
+    reserve(5);
+    staging[staged++] = TAG_INT;
+    stage(value, 4);
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putLong(long value) {
+    reserve(9);
+    staging[staged++] = TAG_LONG;
+    stage(value, 8);
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putFloat(float value) {
+    reserve(5);
+    staging[staged++] = TAG_FLOAT;
+    stage(Float.floatToIntBits(value), 4);
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putDouble(double value) {
+    reserve(9);
+    staging[staged++] = TAG_DOUBLE;
+    stage(Double.doubleToLongBits(value), 8);
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putBytes(byte[] value) {
+    if (value == null) {
+      return putNull();
+    }
+    return putBytes(value, 0, value.length);
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putBytes(byte[] value, int offset, int length) {
+    // Checked before the header is staged, so a bad range leaves no half-written field behind
+    Objects.checkFromIndexSize(offset, length, value.length);
+    header(TAG_BYTES, length);
+    update(value, offset, length);
+    return this;
+  }
+
+  /**
+   * Write text as its UTF-8 byte length followed by the UTF-8 bytes, encoded straight into the staging buffer.
+   */
+  public CFLibDbKeyHashFieldWriter<T> putString(CharSequence value) {
+    if (value == null) {
+      return putNull();
+    }
+    header(TAG_TEXT, CFLibDbKeyHashGenerator.utf8Length(value));
+    update(value);
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putBooleans(boolean[] values) {
+    if (values == null) {
+      return putNull();
+    }
+    header(TAG_BOOLEANS, values.length);
+    for (boolean v : values) {
+      stage(v ? 1 : 0, 1);
+    }
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putShorts(short[] values) {
+    if (values == null) {
+      return putNull();
+    }
+    header(TAG_SHORTS, values.length);
+    for (short v : values) {
+      stage(v, 2);
+    }
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putChars(char[] values) {
+    if (values == null) {
+      return putNull();
+    }
+    header(TAG_CHARS, values.length);
+    for (char v : values) {
+      stage(v, 2);
+    }
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putInts(int[] values) {
+    if (values == null) {
+      return putNull();
+    }
+    header(TAG_INTS, values.length);
+    update(values);
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putLongs(long[] values) {
+    if (values == null) {
+      return putNull();
+    }
+    header(TAG_LONGS, values.length);
+    for (long v : values) {
+      stage(v, 8);
+    }
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putFloats(float[] values) {
+    if (values == null) {
+      return putNull();
+    }
+    header(TAG_FLOATS, values.length);
+    for (float v : values) {
+      stage(Float.floatToIntBits(v), 4);
+    }
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putDoubles(double[] values) {
+    if (values == null) {
+      return putNull();
+    }
+    header(TAG_DOUBLES, values.length);
+    for (double v : values) {
+      stage(Double.doubleToLongBits(v), 8);
+    }
+    return this;
+  }
+
+  public CFLibDbKeyHashFieldWriter<T> putUuid6(CFLibUuid6 value) {
+    if (value == null) {
+      return putNull();
+    }
+    stage(TAG_UUID6, 1);
+    update(value.getBytes(), 0, CFLibUuid6.TOTAL_BYTES);
+    return this;
+  }
+
+  /**
+   * Write a key of any width as its length followed by its bytes, so keys of different widths never collide.
+   */
+  public CFLibDbKeyHashFieldWriter<T> putKey(CFLibDbKeyHashBase<?> value) {
+    if (value == null || !value.hasValue()) {
+      return putNull();
+    }
+    int length = value.getHashLength();
+    reserve(2 + length);
+    staging[staged++] = TAG_KEY;
+    staging[staged++] = (byte) length;
+    value.copyBytes(staging, staged);
+    staged += length;
+    return this;
+  }
+}
@@ -0,0 +1,564 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The lock-free key generation engine behind the CFLibDbKeyHashBase(int) constructor.
+ * <p>
+ * Generator state lives in stripes.  Each stripe owns a private copy of the TOTAL_BYTES generator header, a private counter, and one digest per key width (created through CFLibDbKeyHashDigests), so minting a key never enters a monitor and never writes a shared counter.
+ * Platform threads keep their stripe in a ThreadLocal.
+ * Virtual threads can number in the millions, so they borrow a stripe from a small pool with an atomic get-and-set instead, and seed a fresh stripe when every pooled stripe is in use.
+ * <p>
+ * Uniqueness comes from the header rather than from a shared counter: the Uuid6 seeded when the stripe is created, the machine id, the process id, the stripe id, and the stripe's private counter.
+ * The stripe id is the owning thread id for thread-local stripes, and a negative sequence number for pooled stripes, so no two live stripes ever share an id.
+ * <p>
+ * Bulk generation holds a single stripe for the whole batch and digests straight into the caller's buffer or keys, so the per-key cost is one digest and nothing else.
+ * Batches of at least PARALLEL_THRESHOLD keys can be split over a ForkJoinPool, each worker filling a disjoint range with its own stripe.
+ * <p>
+ * The static hash(...) functions of the key classes borrow stripes the same way, for their pooled digests and the scratch buffer used to encode String and int[] input without allocating.
+ *
+ * @author msobkow
+ */
+public final class CFLibDbKeyHashGenerator {
+
+  static final int TOTAL_BYTES = CFLibDbKeyHashBase.TOTAL_BYTES;
+
+  /**
+   * Pooled stripe slots are spaced this many references apart so that adjacent slots do not share a cache line.
+   */
+  static final int SLOT_STRIDE = 16;
+  static final int POOL_STRIPES = Integer.highestOneBit(Math.max(1, CFLibDbKeyHashBase.CONCURRENT_DIGESTS - 1)) << 1;
+  static final int POOL_MASK = POOL_STRIPES - 1;
+
+  /**
+   * Batches smaller than this many keys are never split across a ForkJoinPool.
+   */
+  public static final int PARALLEL_THRESHOLD = 1024;
+
+  /**
+   * How minted keys are laid out.
+   * <ul>
+   * <li>RANDOM keys are the raw digest of the generator header, so consecutive keys land on random index pages.
+   * <li>TIME_ORDERED keys replace the leading TIME_PREFIX_BYTES of the digest with a big-endian prefix: the same 6 byte coarse timestamp CFLibUuid6.generateUuid6 uses (milliseconds &gt;&gt; 4), followed by the low 16 bits of the stripe counter.
+   * The remaining bytes are still digest output, so keys keep their width and stay unique, but inserts into a B-tree index become append-mostly.
+   * </ul>
+   */
+  public enum Mode {
+    RANDOM,
+    TIME_ORDERED
+  }
+
+  public static final int TIME_PREFIX_BYTES = CFLibUuid6.STAMP_BYTES + 2;
+
+  static final AtomicReferenceArray<Mode> modes = new AtomicReferenceArray<Mode>(new Mode[] { Mode.RANDOM, Mode.RANDOM, Mode.RANDOM, Mode.RANDOM, Mode.RANDOM, Mode.RANDOM });
+  static volatile int machineId = 1;
+  static final AtomicLong pooledStripeIds = new AtomicLong(0);
+  static final AtomicReferenceArray<Stripe> pool = new AtomicReferenceArray<Stripe>(POOL_STRIPES * SLOT_STRIDE);
+  static final ThreadLocal<Stripe> local = ThreadLocal.withInitial(() -> new Stripe(Thread.currentThread().threadId(), true));
+
+  private CFLibDbKeyHashGenerator() {
+  }
+
+  /**
+   * Map a key width to its digest slot within a stripe.
+   */
+  static int digestSlot(int hashLength) {
+    switch (hashLength) {
+      case 16:
+        return 0;
+      case 20:
+        return 1;
+      case 28:
+        return 2;
+      case 32:
+        return 3;
+      case 48:
+        return 4;
+      case 64:
+        return 5;
+      default:
+        throw new IllegalArgumentException("hashLength " + hashLength + " is not a supported key width.");
+    }
+  }
+
+  static final int DIGEST_SLOTS = 6;
+
+  /**
+   * The size of each stripe's staging buffer for encoding hash input; longer input is fed to the digest in chunks of this size.
+   */
+  static final int SCRATCH_BYTES = 1024;
+
+  /**
+   * Per-thread (or per-borrower) generator state.
+   * Only the stripe's current holder ever touches it, so none of the fields need to be volatile.
+   */
+  static final class Stripe {
+    // Padding keeps the hot counter of one stripe off the cache line of a neighbouring stripe allocated next to it.
+    long p0, p1, p2, p3, p4, p5, p6;
+    long counter = 0;
+    long q0, q1, q2, q3, q4, q5, q6;
+
+    final long stripeId;
+    final boolean threadLocal;
+    boolean busy = false;
+    final byte[] header = new byte[TOTAL_BYTES];
+    final ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+    final MessageDigest[] digests = new MessageDigest[DIGEST_SLOTS];
+    final String[] digestAlgos = new String[DIGEST_SLOTS];
+    final int[] digestVersions = new int[DIGEST_SLOTS];
+    final byte[] scratch = new byte[SCRATCH_BYTES];
+
+    Stripe(long stripeId, boolean threadLocal) {
+      this.stripeId = stripeId;
+      this.threadLocal = threadLocal;
+      CFLibUuid6 u = CFLibUuid6.generateUuid6();
+      System.arraycopy(u.getBytes(), 0, header, CFLibDbKeyHashBase.UUID6_INDEX, CFLibDbKeyHashBase.UUID6_LENGTH);
+      headerBuffer.putInt(CFLibDbKeyHashBase.MACHINE_INDEX, machineId);
+      headerBuffer.putLong(CFLibDbKeyHashBase.PID_INDEX, ProcessHandle.current().pid());
+      headerBuffer.putLong(CFLibDbKeyHashBase.THREAD_INDEX, stripeId);
+    }
+
+    /**
+     * Get the stripe's digest for a key width, recreating it if the width's algorithm or digest provider has changed since it was cached.
+     */
+    MessageDigest digest(int hashLength, String algo) {
+      int slot = digestSlot(hashLength);
+      MessageDigest md = digests[slot];
+      String mdAlgo = digestAlgos[slot];
+      int version = CFLibDbKeyHashDigests.getVersion();
+      if (md == null || digestVersions[slot] != version || (mdAlgo != algo && !mdAlgo.equals(algo))) {
+        md = CFLibDbKeyHashDigests.newDigest(hashLength, algo);
+        digests[slot] = md;
+        digestAlgos[slot] = algo;
+        digestVersions[slot] = version;
+      }
+      return md;
+    }
+
+    /**
+     * Discard any partial input left in the stripe's digests after a failed hash.
+     */
+    void resetDigests() {
+      for (MessageDigest md : digests) {
+        if (md != null) {
+          md.reset();
+        }
+      }
+    }
+
+    /**
+     * Feed the UTF-8 encoding of text to md through the scratch buffer.
+     * The bytes fed are identical to those of String.getBytes(UTF_8), including the '?' substituted for unpaired surrogates.
+     */
+    void updateUtf8(MessageDigest md, CharSequence text) {
+      int n = putUtf8(md, scratch, 0, text);
+      if (n > 0) {
+        md.update(scratch, 0, n);
+      }
+    }
+
+    /**
+     * Feed each int to md as 4 big-endian bytes through the scratch buffer.
+     */
+    void updateInts(MessageDigest md, int[] payload) {
+      int n = putInts(md, scratch, 0, payload);
+      if (n > 0) {
+        md.update(scratch, 0, n);
+      }
+    }
+
+    /**
+     * Advance the stripe to its next unique header.
+     */
+    void next() {
+      counter++;
+      headerBuffer.putLong(CFLibDbKeyHashBase.COUNTER_INDEX, counter);
+      headerBuffer.putInt(CFLibDbKeyHashBase.MACHINE_INDEX, machineId);
+      headerBuffer.putLong(CFLibDbKeyHashBase.RANDBYTES_INDEX, ThreadLocalRandom.current().nextLong());
+    }
+  }
+
+  static Stripe acquire() {
+    Thread t = Thread.currentThread();
+    if (!t.isVirtual()) {
+      Stripe s = local.get();
+      if (!s.busy) {
+        s.busy = true;
+        return s;
+      }
+      // Re-entered on the same thread; the thread's own stripe is mid-use
+      return new Stripe(-pooledStripeIds.incrementAndGet(), false);
+    }
+    int home = (int) t.threadId();
+    for (int i = 0; i < POOL_STRIPES; i++) {
+      Stripe s = pool.getAndSet(((home + i) & POOL_MASK) * SLOT_STRIDE, null);
+      if (s != null) {
+        return s;
+      }
+    }
+    return new Stripe(-pooledStripeIds.incrementAndGet(), false);
+  }
+
+  static void release(Stripe s) {
+    if (s.threadLocal) {
+      s.busy = false;
+      return;
+    }
+    int home = (int) s.stripeId;
+    for (int i = 0; i < POOL_STRIPES; i++) {
+      if (pool.compareAndSet(((home + i) & POOL_MASK) * SLOT_STRIDE, null, s)) {
+        return;
+      }
+    }
+    // Pool is full; let the stripe be collected
+  }
+
+  /**
+   * We reserve the bottom 32 bits of the key space for incremental temporary indexing, so entries whose bytes past the first four are all 0's must be regenerated.
+   */
+  static boolean isReserved(byte[] b, int offset, int length) {
+    for (int i = 4; i < length; i++) {
+      if (b[offset + i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Mint a new unique key value of the specified width.
+   *
+   * @param hashLength the key width in bytes
+   * @param algo the digest algorithm for the key width
+   * @return a newly allocated array of hashLength bytes
+   */
+  public static byte[] generate(int hashLength, String algo) {
+    Stripe s = acquire();
+    try {
+      byte[] b = new byte[hashLength];
+      mint(s, s.digest(hashLength, algo), isTimeOrdered(hashLength), b, 0, hashLength);
+      return b;
+    }
+    finally {
+      release(s);
+    }
+  }
+
+  /**
+   * Mint count keys of the specified width into dst, packed back to back starting at offset.
+   *
+   * @param hashLength the key width in bytes
+   * @param algo the digest algorithm for the key width
+   * @param dst the buffer to fill; it must hold at least offset + count * hashLength bytes
+   * @param offset the offset of the first key in dst
+   * @param count the number of keys to mint
+   */
+  public static void generate(int hashLength, String algo, byte[] dst, int offset, int count) {
+    Objects.checkFromIndexSize(offset, Math.multiplyExact(count, hashLength), dst.length);
+    Stripe s = acquire();
+    try {
+      MessageDigest md = s.digest(hashLength, algo);
+      boolean timeOrdered = isTimeOrdered(hashLength);
+      for (int i = 0; i < count; i++) {
+        mint(s, md, timeOrdered, dst, offset + i * hashLength, hashLength);
+      }
+    }
+    finally {
+      release(s);
+    }
+  }
+
+  /**
+   * Mint count keys into dst, splitting the batch over pool when it is large enough to be worth it.
+   */
+  public static void generate(int hashLength, String algo, byte[] dst, int offset, int count, ForkJoinPool pool) {
+    Objects.checkFromIndexSize(offset, Math.multiplyExact(count, hashLength), dst.length);
+    if (pool == null || count < PARALLEL_THRESHOLD) {
+      generate(hashLength, algo, dst, offset, count);
+      return;
+    }
+    pool.invoke(new FillTask(hashLength, algo, dst, null, offset, count));
+  }
+
+  /**
+   * Mint count keys into dst at its current position, advancing the position past the last key written.
+   */
+  public static void generate(int hashLength, String algo, ByteBuffer dst, int count) {
+    int length = Math.multiplyExact(count, hashLength);
+    if (dst.remaining() < length) {
+      throw new IllegalArgumentException("dst has " + dst.remaining() + " bytes remaining.  Must be >= " + length + ".");
+    }
+    if (dst.hasArray()) {
+      generate(hashLength, algo, dst.array(), dst.arrayOffset() + dst.position(), count);
+      dst.position(dst.position() + length);
+      return;
+    }
+    byte[] chunk = new byte[Math.min(count, 256) * hashLength];
+    int done = 0;
+    while (done < count) {
+      int n = Math.min(count - done, chunk.length / hashLength);
+      generate(hashLength, algo, chunk, 0, n);
+      dst.put(chunk, 0, n * hashLength);
+      done += n;
+    }
+  }
+
+  /**
+   * Mint count keys into the already-allocated keys of dst starting at offset.
+   * Each digest lands in the stripe's scratch buffer and is loaded straight into the key's words.
+   */
+  public static void generate(int hashLength, String algo, CFLibDbKeyHashBase<?>[] dst, int offset, int count) {
+    Objects.checkFromIndexSize(offset, count, dst.length);
+    Stripe s = acquire();
+    try {
+      MessageDigest md = s.digest(hashLength, algo);
+      boolean timeOrdered = isTimeOrdered(hashLength);
+      for (int i = offset; i < offset + count; i++) {
+        mint(s, md, timeOrdered, s.scratch, 0, hashLength);
+        dst[i].setWordsFromBytes(s.scratch, 0);
+      }
+    }
+    finally {
+      release(s);
+    }
+  }
+
+  /**
+   * Mint count keys into the already-allocated keys of dst, splitting the batch over pool when it is large enough to be worth it.
+   */
+  public static void generate(int hashLength, String algo, CFLibDbKeyHashBase<?>[] dst, int offset, int count, ForkJoinPool pool) {
+    Objects.checkFromIndexSize(offset, count, dst.length);
+    if (pool == null || count < PARALLEL_THRESHOLD) {
+      generate(hashLength, algo, dst, offset, count);
+      return;
+    }
+    pool.invoke(new FillTask(hashLength, algo, null, dst, offset, count));
+  }
+
+  /**
+   * Append the UTF-8 encoding of text to the n bytes already staged in buf, feeding buf to md whenever it fills.
+   * The bytes produced are identical to those of String.getBytes(UTF_8), including the '?' substituted for unpaired surrogates.
+   *
+   * @return the number of bytes left staged in buf, which the caller must still feed to md
+   */
+  static int putUtf8(MessageDigest md, byte[] buf, int n, CharSequence text) {
+    int limit = buf.length - 4;
+    int len = text.length();
+    for (int i = 0; i < len; i++) {
+      if (n > limit) {
+        md.update(buf, 0, n);
+        n = 0;
+      }
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        buf[n++] = (byte) c;
+      }
+      else if (c < 0x800) {
+        buf[n++] = (byte) (0xC0 | (c >> 6));
+        buf[n++] = (byte) (0x80 | (c & 0x3F));
+      }
+      else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(text.charAt(i + 1))) {
+          int cp = Character.toCodePoint(c, text.charAt(++i));
+          buf[n++] = (byte) (0xF0 | (cp >> 18));
+          buf[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+          buf[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+          buf[n++] = (byte) (0x80 | (cp & 0x3F));
+        }
+        else {
+          buf[n++] = (byte) '?';
+        }
+      }
+      else {
+        buf[n++] = (byte) (0xE0 | (c >> 12));
+        buf[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buf[n++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    return n;
+  }
+
+  /**
+   * The number of bytes putUtf8 produces for text, computed without encoding it.
+   */
+  static long utf8Length(CharSequence text) {
+    int len = text.length();
+    long n = len;
+    for (int i = 0; i < len; i++) {
+      char c = text.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          n += 1;
+        }
+        else if (Character.isSurrogate(c)) {
+          if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(text.charAt(i + 1))) {
+            // Two chars become four bytes
+            n += 2;
+            i++;
+          }
+        }
+        else {
+          n += 2;
+        }
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Append each int as 4 big-endian bytes to the n bytes already staged in buf, feeding buf to md whenever it fills.
+   *
+   * @return the number of bytes left staged in buf, which the caller must still feed to md
+   */
+  static int putInts(MessageDigest md, byte[] buf, int n, int[] payload) {
+    int limit = buf.length - 4;
+    for (int x : payload) {
+      if (n > limit) {
+        md.update(buf, 0, n);
+        n = 0;
+      }
+      buf[n++] = (byte) (x >>> 24);
+      buf[n++] = (byte) (x >>> 16);
+      buf[n++] = (byte) (x >>> 8);
+      buf[n++] = (byte) x;
+    }
+    return n;
+  }
+
+  /**
+   * Digest the stripe's next header into dst at offset, regenerating until the value is outside the reserved range.
+   * In TIME_ORDERED mode the leading TIME_PREFIX_BYTES are then overwritten with the time prefix.
+   */
+  static void mint(Stripe s, MessageDigest md, boolean timeOrdered, byte[] dst, int offset, int hashLength) {
+    do {
+      s.next();
+      md.update(s.header, 0, TOTAL_BYTES);
+      digestInto(md, dst, offset, hashLength);
+    } while (isReserved(dst, offset, hashLength));
+    if (timeOrdered) {
+      long ts = System.currentTimeMillis() >> 4;
+      dst[offset] = (byte) (ts >> (5 * 8));
+      dst[offset + 1] = (byte) (ts >> (4 * 8));
+      dst[offset + 2] = (byte) (ts >> (3 * 8));
+      dst[offset + 3] = (byte) (ts >> (2 * 8));
+      dst[offset + 4] = (byte) (ts >> (1 * 8));
+      dst[offset + 5] = (byte) ts;
+      dst[offset + 6] = (byte) (s.counter >> 8);
+      dst[offset + 7] = (byte) s.counter;
+    }
+  }
+
+  static void digestInto(MessageDigest md, byte[] dst, int offset, int hashLength) {
+    try {
+      md.digest(dst, offset, hashLength);
+    }
+    catch (DigestException e) {
+      throw new IllegalStateException("Digest " + md.getAlgorithm() + " does not produce " + hashLength + " bytes.", e);
+    }
+  }
+
+  /**
+   * Splits a batch in halves until it drops below PARALLEL_THRESHOLD, then fills the range on the worker's own stripe.
+   */
+  static final class FillTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final int hashLength;
+    final String algo;
+    final byte[] bytes;
+    final transient CFLibDbKeyHashBase<?>[] keys;
+    final int offset;
+    final int count;
+
+    FillTask(int hashLength, String algo, byte[] bytes, CFLibDbKeyHashBase<?>[] keys, int offset, int count) {
+      this.hashLength = hashLength;
+      this.algo = algo;
+      this.bytes = bytes;
+      this.keys = keys;
+      this.offset = offset;
+      this.count = count;
+    }
+
+    @Override
+    protected void compute() {
+      if (count < PARALLEL_THRESHOLD * 2) {
+        if (bytes != null) {
+          generate(hashLength, algo, bytes, offset, count);
+        }
+        else {
+          generate(hashLength, algo, keys, offset, count);
+        }
+        return;
+      }
+      int half = count / 2;
+      int rest = count - half;
+      if (bytes != null) {
+        invokeAll(new FillTask(hashLength, algo, bytes, null, offset, half),
+          new FillTask(hashLength, algo, bytes, null, offset + half * hashLength, rest));
+      }
+      else {
+        invokeAll(new FillTask(hashLength, algo, null, keys, offset, half),
+          new FillTask(hashLength, algo, null, keys, offset + half, rest));
+      }
+    }
+  }
+
+  static boolean isTimeOrdered(int hashLength) {
+    return modes.get(digestSlot(hashLength)) == Mode.TIME_ORDERED;
+  }
+
+  public static Mode getMode(int hashLength) {
+    return modes.get(digestSlot(hashLength));
+  }
+
+  /**
+   * Set the generation mode for one key width.
+   * The change applies to keys minted from now on; keys already minted are untouched.
+   */
+  public static void setMode(int hashLength, Mode mode) {
+    if (mode == null) {
+      throw new NullPointerException("mode must not be null.");
+    }
+    modes.set(digestSlot(hashLength), mode);
+  }
+
+  public static int getMachineId() {
+    return machineId;
+  }
+
+  /**
+   * Set the machine id stamped into every header generated from now on, across all stripes.
+   */
+  public static void setMachineId(int id) {
+    machineId = id;
+  }
+}
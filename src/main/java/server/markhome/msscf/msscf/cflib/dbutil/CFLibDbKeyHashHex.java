@@ -0,0 +1,350 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The lower-case hex codec shared by every key width, CFLibDbKeyHashArray and anything else that renders or parses key hex.
+ * <p>
+ * Encoding looks each byte up in a table of digit pairs and writes the pair straight into a caller's byte[] (as ASCII), char[] or Appendable.
+ * Strings are built from the ASCII bytes as ISO-8859-1, which with compact strings is a plain copy into a Latin-1 String rather than a
+ * compression pass over a char[].
+ * <p>
+ * Decoding accepts upper and lower case digits from any CharSequence range and validates as it goes: each character is looked up once,
+ * and the lookups are ORed together so that a single test at the end catches any character that is not a hex digit.
+ * Invalid input is reported with an IllegalArgumentException, or a false result from the quiet variants.
+ * <p>
+ * Whole batches of keys are converted to and from fixed-width ASCII records in a byte[] or ByteBuffer by encode(), decode() and
+ * CFLibDbKeyHashArray.encodeHex()/addAllHex().  The bulk paths work eight digits at a time in a long (SWAR):
+ * four key bytes are spread a nibble to a byte and turned into digits with a few adds, and eight digits are range checked and packed back
+ * into four bytes with masks and shifts.  The jdk.incubator.vector module is not used, so the codec has no dependency beyond java.base.
+ *
+ * @author msobkow
+ */
+public final class CFLibDbKeyHashHex {
+
+  /**
+   * The two ASCII digits of byte b at PAIRS[2 * b] and PAIRS[2 * b + 1].
+   */
+  static final byte[] PAIRS = new byte[512];
+
+  /**
+   * The value of each ASCII character as a hex digit, or -1.
+   */
+  static final byte[] VALUES = new byte[128];
+
+  /**
+   * The byte spelled by each pair of ASCII characters c0 c1 at PAIR_VALUES[(c0 << 7) | c1], or -1 if either is not a hex digit.
+   */
+  static final short[] PAIR_VALUES = new short[1 << 14];
+
+  static final long HIGH_BITS = 0x8080808080808080L;
+  static final long NIBBLES = 0x0F0F0F0F0F0F0F0FL;
+  static final long ONES = 0x0101010101010101L;
+
+  static {
+    byte[] digits = CFLibDbKeyHashBase.hexDigits.getBytes(StandardCharsets.ISO_8859_1);
+    for (int b = 0; b < 256; b++) {
+      PAIRS[2 * b] = digits[b >>> 4];
+      PAIRS[2 * b + 1] = digits[b & 0x0F];
+    }
+    Arrays.fill(VALUES, (byte) -1);
+    for (int d = 0; d < 16; d++) {
+      VALUES[digits[d]] = (byte) d;
+      VALUES[Character.toUpperCase(digits[d])] = (byte) d;
+    }
+    for (int c0 = 0; c0 < 128; c0++) {
+      for (int c1 = 0; c1 < 128; c1++) {
+        int hi = VALUES[c0];
+        int lo = VALUES[c1];
+        PAIR_VALUES[(c0 << 7) | c1] = (short) ((hi | lo) < 0 ? -1 : (hi << 4) | lo);
+      }
+    }
+  }
+
+  private CFLibDbKeyHashHex() {
+  }
+
+  /**
+   * The value of c as a hex digit, or -1 if it is not one.  Only ASCII digits are accepted, unlike Character.digit().
+   */
+  public static int digit(char c) {
+    // Characters past 0x7F fold onto -1 through the sign of 0x7F - c
+    return VALUES[c & 0x7F] | ((0x7F - c) >> 31);
+  }
+
+  /**
+   * The byte spelled by the hex digits c0 c1, or a negative number if either is not a hex digit.
+   */
+  static int pair(char c0, char c1) {
+    return PAIR_VALUES[((c0 << 7) | c1) & 0x3FFF] | ((0x7F - (c0 | c1)) >> 31);
+  }
+
+  public static String encode(byte[] src) {
+    return encode(src, 0, src.length);
+  }
+
+  public static String encode(byte[] src, int offset, int length) {
+    byte[] ascii = new byte[Math.multiplyExact(length, 2)];
+    encode(src, offset, length, ascii, 0);
+    return latin1(ascii);
+  }
+
+  /**
+   * Write the hex of length bytes of src as ASCII into dst at dstOffset, returning the offset just past it.
+   */
+  public static int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+    Objects.checkFromIndexSize(offset, length, src.length);
+    Objects.checkFromIndexSize(dstOffset, 2 * length, dst.length);
+    for (int i = offset; i < offset + length; i++) {
+      int p = (src[i] & 0xFF) << 1;
+      dst[dstOffset++] = PAIRS[p];
+      dst[dstOffset++] = PAIRS[p + 1];
+    }
+    return dstOffset;
+  }
+
+  /**
+   * Write the hex of length bytes of src into dst at dstOffset, returning the offset just past it.
+   */
+  public static int encode(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+    Objects.checkFromIndexSize(offset, length, src.length);
+    Objects.checkFromIndexSize(dstOffset, 2 * length, dst.length);
+    for (int i = offset; i < offset + length; i++) {
+      int p = (src[i] & 0xFF) << 1;
+      dst[dstOffset++] = (char) PAIRS[p];
+      dst[dstOffset++] = (char) PAIRS[p + 1];
+    }
+    return dstOffset;
+  }
+
+  /**
+   * Write keys from through to - 1 as fixed-width records of ASCII hex into dst at offset, each followed by separator unless it is
+   * negative, returning the offset just past the last record.  Every key must be of one width.
+   */
+  public static int encode(CFLibDbKeyHashBase<?>[] keys, int from, int to, byte[] dst, int offset, int separator) {
+    Objects.checkFromToIndex(from, to, keys.length);
+    if (from == to) {
+      return offset;
+    }
+    int record = recordLength(keys[from].getHashLength(), separator);
+    Objects.checkFromIndexSize(offset, Math.multiplyExact(to - from, record), dst.length);
+    for (int i = from; i < to; i++) {
+      CFLibDbKeyHashBase<?> k = keys[i];
+      if (k == null) {
+        throw new NullPointerException("keys[" + i + "] must not be null.");
+      }
+      if (k.getHashLength() * 2 + (separator < 0 ? 0 : 1) != record) {
+        throw new IllegalArgumentException("keys[" + i + "] is " + k.getHashLength() + " bytes.  Must be " + keys[from].getHashLength() + ".");
+      }
+      offset = k.toHex(dst, offset);
+      if (separator >= 0) {
+        dst[offset++] = (byte) separator;
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * The bytes of one fixed-width record of a key of hashLength bytes, with or without a separator.
+   */
+  public static int recordLength(int hashLength, int separator) {
+    if (separator > 0x7F) {
+      throw new IllegalArgumentException("separator is " + separator + ".  Must be an ASCII character, or negative for none.");
+    }
+    return hashLength * 2 + (separator < 0 ? 0 : 1);
+  }
+
+  public static <A extends Appendable> A encode(byte[] src, int offset, int length, A dst) throws IOException {
+    Objects.checkFromIndexSize(offset, length, src.length);
+    for (int i = offset; i < offset + length; i++) {
+      int p = (src[i] & 0xFF) << 1;
+      dst.append((char) PAIRS[p]);
+      dst.append((char) PAIRS[p + 1]);
+    }
+    return dst;
+  }
+
+  /**
+   * The 8 ASCII hex digits of the 4 bytes of x as a big-endian long.
+   * Each nibble is spread into its own byte, then 0x30 is added to every byte and a further 0x27 to those above 9, to reach 'a'.
+   */
+  static long encodeSwar(int x) {
+    long v = x & 0xFFFFFFFFL;
+    v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+    v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+    v = ((v << 4) & 0x0F000F000F000F00L) | (v & 0x000F000F000F000FL);
+    long letters = ((v + 0x0606060606060606L) >>> 4) & ONES;
+    return v + 0x3030303030303030L + letters * 0x27;
+  }
+
+  /**
+   * The 4 bytes spelled by the 8 ASCII hex digits of big-endian c, or -1 if any of them is not a hex digit.
+   * Once the high bit of every byte is known to be clear, adding 0x80 - k to a byte sets its high bit exactly when it is >= k,
+   * without carrying into the next byte, so all eight digits are range checked at once.
+   */
+  static long decodeSwar(long c) {
+    long x = c & ~HIGH_BITS;
+    long digits = (x + 0x5050505050505050L) & ~(x + 0x4646464646464646L);
+    long y = x | 0x2020202020202020L;
+    long letters = (y + 0x1F1F1F1F1F1F1F1FL) & ~(y + 0x1919191919191919L) & HIGH_BITS;
+    if ((((digits | letters) & HIGH_BITS) ^ HIGH_BITS | (c & HIGH_BITS)) != 0L) {
+      return -1L;
+    }
+    long v = (x & NIBBLES) + (letters >>> 7) * 9;
+    v = ((v >>> 4) | v) & 0x00FF00FF00FF00FFL;
+    v = ((v >>> 8) | v) & 0x0000FFFF0000FFFFL;
+    return ((v >>> 16) | v) & 0xFFFFFFFFL;
+  }
+
+  /**
+   * Write the hex of the high count (1 to 8) bytes of big-endian word w as ASCII into dst at offset, returning the offset just past it.
+   */
+  static int encodeWord(long w, int count, byte[] dst, int offset) {
+    if (count == 8) {
+      CFLibDbKeyHashBase.LONGS.set(dst, offset, encodeSwar((int) (w >>> 32)));
+      CFLibDbKeyHashBase.LONGS.set(dst, offset + 8, encodeSwar((int) w));
+      return offset + 16;
+    }
+    if (count == 4) {
+      CFLibDbKeyHashBase.LONGS.set(dst, offset, encodeSwar((int) (w >>> 32)));
+      return offset + 8;
+    }
+    for (int shift = 56; shift > 56 - 8 * count; shift -= 8) {
+      int p = ((int) (w >>> shift) & 0xFF) << 1;
+      dst[offset++] = PAIRS[p];
+      dst[offset++] = PAIRS[p + 1];
+    }
+    return offset;
+  }
+
+  static int encodeWord(long w, int count, char[] dst, int offset) {
+    for (int shift = 56; shift > 56 - 8 * count; shift -= 8) {
+      int p = ((int) (w >>> shift) & 0xFF) << 1;
+      dst[offset++] = (char) PAIRS[p];
+      dst[offset++] = (char) PAIRS[p + 1];
+    }
+    return offset;
+  }
+
+  /**
+   * Decode the 2 * hashLength ASCII hex digits in src at offset into the words of one key, stored in dst from base.
+   * The result is negative if any digit is invalid, in which case the words stored are meaningless.
+   */
+  static long decodeWords(byte[] src, int offset, int hashLength, long[] dst, int base) {
+    long check = 0L;
+    for (int b = 0; b < hashLength; b += 8) {
+      long hi = decodeSwar((long) CFLibDbKeyHashBase.LONGS.get(src, offset));
+      long lo = 0L;
+      if (hashLength - b >= 8) {
+        lo = decodeSwar((long) CFLibDbKeyHashBase.LONGS.get(src, offset + 8));
+      }
+      check |= hi | lo;
+      dst[base++] = (hi << 32) | lo;
+      offset += 16;
+    }
+    return check;
+  }
+
+  static void appendWord(long w, int count, Appendable dst) throws IOException {
+    for (int shift = 56; shift > 56 - 8 * count; shift -= 8) {
+      int p = ((int) (w >>> shift) & 0xFF) << 1;
+      dst.append((char) PAIRS[p]);
+      dst.append((char) PAIRS[p + 1]);
+    }
+  }
+
+  /**
+   * A String of ASCII bytes, copied as Latin-1 without a char[] in between.
+   */
+  static String latin1(byte[] ascii) {
+    return new String(ascii, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * The bytes of an even number of hex digits.
+   */
+  public static byte[] decode(CharSequence s) {
+    if ((s.length() & 1) != 0) {
+      throw new IllegalArgumentException("string length is " + s.length() + ".  Must be even.");
+    }
+    byte[] b = new byte[s.length() / 2];
+    decode(s, 0, s.length(), b, 0);
+    return b;
+  }
+
+  /**
+   * Decode the even number of hex digits of s from from to to into dst at dstOffset, returning the number of bytes written.
+   */
+  public static int decode(CharSequence s, int from, int to, byte[] dst, int dstOffset) {
+    Objects.checkFromToIndex(from, to, s.length());
+    if (((to - from) & 1) != 0) {
+      throw new IllegalArgumentException("hex range length is " + (to - from) + ".  Must be even.");
+    }
+    int count = (to - from) / 2;
+    Objects.checkFromIndexSize(dstOffset, count, dst.length);
+    if (!decodeQuietly(s, from, to, dst, dstOffset)) {
+      throw invalid(s, from, to);
+    }
+    return count;
+  }
+
+  /**
+   * Decode the even length range as decode() does once its arguments are checked, returning false instead of throwing if a character
+   * is not a hex digit; dst then holds garbage.
+   */
+  static boolean decodeQuietly(CharSequence s, int from, int to, byte[] dst, int dstOffset) {
+    int bad = 0;
+    for (int i = from; i < to; i += 2) {
+      int v = pair(s.charAt(i), s.charAt(i + 1));
+      bad |= v;
+      dst[dstOffset++] = (byte) v;
+    }
+    return bad >= 0;
+  }
+
+  /**
+   * True if every character of s from from to to is a hex digit.
+   */
+  public static boolean isHex(CharSequence s, int from, int to) {
+    Objects.checkFromToIndex(from, to, s.length());
+    int bad = 0;
+    for (int i = from; i < to; i++) {
+      bad |= digit(s.charAt(i));
+    }
+    return bad >= 0;
+  }
+
+  static IllegalArgumentException invalid(CharSequence s, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (digit(s.charAt(i)) < 0) {
+        return new IllegalArgumentException("character " + i + " is '" + s.charAt(i) + "'.  Must be a hex digit.  string is '" + s + "'.");
+      }
+    }
+    return new IllegalArgumentException("string '" + s + "' is not hex.");
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Converts hex ids to keys a stream at a time, so a large batch of ids, such as a request body, need not be gathered into a String[] first.
+ * <p>
+ * Each width wraps these as toCFLibDbKeyHashNNNStream() and toCFLibDbKeyHashNNNArray(), for ids from a Stream, an Iterable or a Spliterator.
+ * Conversion is a stateless map, so a parallel source is converted in parallel, and an ordered source keeps its order in the result.
+ * <p>
+ * Strict conversion reads an id as the String constructor of the width does, and an id that is not hex ends the conversion with an IllegalArgumentException.
+ * Lenient conversion keeps only ids of exactly getHashLengthString() hex digits and skips every other id, null included,
+ * judging each with the single validating pass that decodes it.
+ *
+ * @author msobkow
+ */
+public final class CFLibDbKeyHashIds {
+
+  private CFLibDbKeyHashIds() {
+  }
+
+  /**
+   * The key spelled by id as the width's String constructor reads it: null is the all-zero key and a short id fills the leading bytes.
+   *
+   * @param keyFactory creates an empty key of the width to load, e.g. CFLibDbKeyHash256::new
+   */
+  public static <T extends CFLibDbKeyHashBase<T>> T parse(CharSequence id, Supplier<T> keyFactory) {
+    T k = keyFactory.get();
+    if (id == null) {
+      k.setWordsFrom(null);
+    }
+    else {
+      k.parseHex(id, 0, id.length());
+    }
+    return k;
+  }
+
+  /**
+   * The key spelled by exactly getHashLengthString() hex digits in either case, or null if id is null, another length or not hex.
+   */
+  public static <T extends CFLibDbKeyHashBase<T>> T parseQuietly(CharSequence id, Supplier<T> keyFactory) {
+    T k = keyFactory.get();
+    if (id == null || id.length() != 2 * k.getHashLength() || !k.setWordsFromHex(id, 0, id.length())) {
+      return null;
+    }
+    return k;
+  }
+
+  /**
+   * The keys of ids, converted lazily as the stream is consumed and in parallel if ids is parallel.
+   */
+  public static <T extends CFLibDbKeyHashBase<T>> Stream<T> stream(Stream<? extends CharSequence> ids, Supplier<T> keyFactory, boolean lenient) {
+    if (lenient) {
+      return ids.<T>mapMulti((id, sink) -> {
+        T k = parseQuietly(id, keyFactory);
+        if (k != null) {
+          sink.accept(k);
+        }
+      });
+    }
+    return ids.map(id -> parse(id, keyFactory));
+  }
+
+  public static <T extends CFLibDbKeyHashBase<T>> Stream<T> stream(Spliterator<? extends CharSequence> ids, boolean parallel, Supplier<T> keyFactory,
+    boolean lenient)
+  {
+    return stream(StreamSupport.stream(ids, parallel), keyFactory, lenient);
+  }
+
+  public static <T extends CFLibDbKeyHashBase<T>> Stream<T> stream(Iterable<? extends CharSequence> ids, boolean parallel, Supplier<T> keyFactory,
+    boolean lenient)
+  {
+    return stream(ids.spliterator(), parallel, keyFactory, lenient);
+  }
+
+  /**
+   * A collector that decodes ids straight into a columnar array, with no key object per id.
+   * In a parallel stream each thread fills an array of its own and the arrays are appended in encounter order.
+   *
+   * @param arrayFactory creates an empty array of the width, e.g. CFLibDbKeyHash256Array::new
+   */
+  public static <T extends CFLibDbKeyHashBase<T>, A extends CFLibDbKeyHashArray<T>> Collector<CharSequence, A, A> toArray(Supplier<A> arrayFactory,
+    boolean lenient)
+  {
+    BiConsumer<A, CharSequence> add = lenient ? A::addHexQuietly : A::addHex;
+    return Collector.of(arrayFactory, add, (a, b) -> {
+      a.addAll(b);
+      return a;
+    });
+  }
+
+  /**
+   * Decode ids into a columnar array as toArray(Supplier, boolean) does, sizing the array up front when ids is sequential and knows its size.
+   *
+   * @param arrayFactory creates an empty array of the width with the given capacity, e.g. CFLibDbKeyHash256Array::new
+   */
+  public static <T extends CFLibDbKeyHashBase<T>, A extends CFLibDbKeyHashArray<T>> A toArray(Stream<? extends CharSequence> ids,
+    IntFunction<A> arrayFactory, boolean lenient)
+  {
+    if (ids.isParallel()) {
+      return ids.collect(toArray(() -> arrayFactory.apply(CFLibDbKeyHashArray.DEFAULT_CAPACITY), lenient));
+    }
+    Spliterator<? extends CharSequence> split = ids.spliterator();
+    long known = split.getExactSizeIfKnown();
+    A a = arrayFactory.apply(known < 0 || known > Integer.MAX_VALUE ? CFLibDbKeyHashArray.DEFAULT_CAPACITY : (int) known);
+    if (lenient) {
+      split.forEachRemaining(a::addHexQuietly);
+    }
+    else {
+      split.forEachRemaining(a::addHex);
+    }
+    return a;
+  }
+}
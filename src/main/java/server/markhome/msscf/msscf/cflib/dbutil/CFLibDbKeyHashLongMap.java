@@ -0,0 +1,200 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * An open-addressing map from keys of one width to primitive long values, with the key words stored inline in a long[]
+ * and the values in a parallel long[], so an entry costs no objects at all; see CFLibDbKeyHashTable for the probing scheme.
+ * <p>
+ * get() of an absent key returns the map's missing value, 0 unless another was given at construction.
+ * Create maps through the width's factories, e.g. CFLibDbKeyHash256.newLongMap(expected).
+ * Instances are not thread safe.
+ *
+ * @author msobkow
+ */
+public class CFLibDbKeyHashLongMap<T extends CFLibDbKeyHashBase<T>> extends CFLibDbKeyHashTable<T> {
+
+  /**
+   * Receives the entries of forEach().
+   */
+  @FunctionalInterface
+  public interface EntryConsumer<T> {
+    void accept(T key, long value);
+  }
+
+  final long missingValue;
+  long[] values;
+  long zeroValue;
+
+  /**
+   * @param hashLength the key width in bytes
+   * @param keyFactory creates all-zero keys of the width, e.g. CFLibDbKeyHash256::nullGet
+   * @param expected the number of entries to size the table for without resizing
+   * @param missingValue returned by get() and remove() for absent keys
+   */
+  public CFLibDbKeyHashLongMap(int hashLength, Supplier<T> keyFactory, int expected, long missingValue) {
+    super(hashLength, keyFactory, expected);
+    this.missingValue = missingValue;
+  }
+
+  @Override
+  void allocateValues(int capacity) {
+    values = new long[capacity];
+  }
+
+  @Override
+  Object detachValues() {
+    return values;
+  }
+
+  @Override
+  void transferValue(Object oldValues, int from, int to) {
+    values[to] = ((long[]) oldValues)[from];
+  }
+
+  @Override
+  void moveValue(int from, int to) {
+    values[to] = values[from];
+  }
+
+  @Override
+  void clearValue(int slot) {
+    values[slot] = 0L;
+  }
+
+  public long getMissingValue() {
+    return missingValue;
+  }
+
+  public boolean containsKey(T key) {
+    checkKey(key);
+    if (key.isNull()) {
+      return hasZeroKey;
+    }
+    return find(key) >= 0;
+  }
+
+  public long get(T key) {
+    return getOrDefault(key, missingValue);
+  }
+
+  public long getOrDefault(T key, long defaultValue) {
+    checkKey(key);
+    if (key.isNull()) {
+      return hasZeroKey ? zeroValue : defaultValue;
+    }
+    int slot = find(key);
+    return slot >= 0 ? values[slot] : defaultValue;
+  }
+
+  /**
+   * @return the previous value of key, or the missing value if it was absent
+   */
+  public long put(T key, long value) {
+    checkKey(key);
+    if (key.isNull()) {
+      long prior = hasZeroKey ? zeroValue : missingValue;
+      hasZeroKey = true;
+      zeroValue = value;
+      return prior;
+    }
+    int slot = find(key);
+    if (slot >= 0) {
+      long prior = values[slot];
+      values[slot] = value;
+      return prior;
+    }
+    // insert() may resize, replacing values, so the slot must be known before values is read
+    slot = insert(-(slot + 1), key);
+    values[slot] = value;
+    return missingValue;
+  }
+
+  /**
+   * Store value only if key is absent.
+   *
+   * @return the existing value of key, or the missing value if value was stored
+   */
+  public long putIfAbsent(T key, long value) {
+    checkKey(key);
+    if (key.isNull()) {
+      if (hasZeroKey) {
+        return zeroValue;
+      }
+      hasZeroKey = true;
+      zeroValue = value;
+      return missingValue;
+    }
+    int slot = find(key);
+    if (slot >= 0) {
+      return values[slot];
+    }
+    // insert() may resize, replacing values, so the slot must be known before values is read
+    slot = insert(-(slot + 1), key);
+    values[slot] = value;
+    return missingValue;
+  }
+
+  /**
+   * @return the removed value of key, or the missing value if it was absent
+   */
+  public long remove(T key) {
+    checkKey(key);
+    if (key.isNull()) {
+      if (!hasZeroKey) {
+        return missingValue;
+      }
+      hasZeroKey = false;
+      return zeroValue;
+    }
+    int slot = find(key);
+    if (slot < 0) {
+      return missingValue;
+    }
+    long prior = values[slot];
+    removeSlot(slot);
+    return prior;
+  }
+
+  public void clear() {
+    clearTable();
+    Arrays.fill(values, 0L);
+  }
+
+  /**
+   * Pass every entry to action.  The key passed is one flyweight view reloaded for each entry, so copy it with deepClone() to keep it.
+   */
+  public void forEach(EntryConsumer<? super T> action) {
+    T view = keyFactory.get();
+    if (hasZeroKey) {
+      action.accept(view, zeroValue);
+    }
+    for (int slot = 0; slot <= mask; slot++) {
+      if (!isEmptySlot(slot * stride)) {
+        action.accept(loadKey(slot, view), values[slot]);
+      }
+    }
+  }
+}
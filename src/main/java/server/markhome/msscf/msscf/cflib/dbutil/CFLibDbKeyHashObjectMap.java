@@ -0,0 +1,203 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * An open-addressing map from keys of one width to object values, with the key words stored inline in a long[]
+ * and the values in a parallel Object[], so an entry costs no key or node objects; see CFLibDbKeyHashTable for the probing scheme.
+ * <p>
+ * Null values are not permitted, so get() returning null always means the key is absent.
+ * Create maps through the width's factories, e.g. CFLibDbKeyHash256.newMap(expected).
+ * Instances are not thread safe.
+ *
+ * @author msobkow
+ */
+public class CFLibDbKeyHashObjectMap<T extends CFLibDbKeyHashBase<T>, V> extends CFLibDbKeyHashTable<T> {
+
+  Object[] values;
+  V zeroValue;
+
+  /**
+   * @param hashLength the key width in bytes
+   * @param keyFactory creates all-zero keys of the width, e.g. CFLibDbKeyHash256::nullGet
+   * @param expected the number of entries to size the table for without resizing
+   */
+  public CFLibDbKeyHashObjectMap(int hashLength, Supplier<T> keyFactory, int expected) {
+    super(hashLength, keyFactory, expected);
+  }
+
+  @Override
+  void allocateValues(int capacity) {
+    values = new Object[capacity];
+  }
+
+  @Override
+  Object detachValues() {
+    return values;
+  }
+
+  @Override
+  void transferValue(Object oldValues, int from, int to) {
+    values[to] = ((Object[]) oldValues)[from];
+  }
+
+  @Override
+  void moveValue(int from, int to) {
+    values[to] = values[from];
+  }
+
+  @Override
+  void clearValue(int slot) {
+    values[slot] = null;
+  }
+
+  static void checkValue(Object value) {
+    if (value == null) {
+      throw new NullPointerException("value must not be null.");
+    }
+  }
+
+  public boolean containsKey(T key) {
+    checkKey(key);
+    if (key.isNull()) {
+      return hasZeroKey;
+    }
+    return find(key) >= 0;
+  }
+
+  /**
+   * @return the value of key, or null if it is absent
+   */
+  @SuppressWarnings("unchecked")
+  public V get(T key) {
+    checkKey(key);
+    if (key.isNull()) {
+      return zeroValue;
+    }
+    int slot = find(key);
+    return slot >= 0 ? (V) values[slot] : null;
+  }
+
+  public V getOrDefault(T key, V defaultValue) {
+    V v = get(key);
+    return v != null ? v : defaultValue;
+  }
+
+  /**
+   * @return the previous value of key, or null if it was absent
+   */
+  @SuppressWarnings("unchecked")
+  public V put(T key, V value) {
+    checkKey(key);
+    checkValue(value);
+    if (key.isNull()) {
+      V prior = zeroValue;
+      hasZeroKey = true;
+      zeroValue = value;
+      return prior;
+    }
+    int slot = find(key);
+    if (slot >= 0) {
+      V prior = (V) values[slot];
+      values[slot] = value;
+      return prior;
+    }
+    // insert() may resize, replacing values, so the slot must be known before values is read
+    slot = insert(-(slot + 1), key);
+    values[slot] = value;
+    return null;
+  }
+
+  /**
+   * Store value only if key is absent.
+   *
+   * @return the existing value of key, or null if value was stored
+   */
+  @SuppressWarnings("unchecked")
+  public V putIfAbsent(T key, V value) {
+    checkKey(key);
+    checkValue(value);
+    if (key.isNull()) {
+      if (hasZeroKey) {
+        return zeroValue;
+      }
+      hasZeroKey = true;
+      zeroValue = value;
+      return null;
+    }
+    int slot = find(key);
+    if (slot >= 0) {
+      return (V) values[slot];
+    }
+    // insert() may resize, replacing values, so the slot must be known before values is read
+    slot = insert(-(slot + 1), key);
+    values[slot] = value;
+    return null;
+  }
+
+  /**
+   * @return the removed value of key, or null if it was absent
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(T key) {
+    checkKey(key);
+    if (key.isNull()) {
+      V prior = zeroValue;
+      hasZeroKey = false;
+      zeroValue = null;
+      return prior;
+    }
+    int slot = find(key);
+    if (slot < 0) {
+      return null;
+    }
+    V prior = (V) values[slot];
+    removeSlot(slot);
+    return prior;
+  }
+
+  public void clear() {
+    clearTable();
+    Arrays.fill(values, null);
+    zeroValue = null;
+  }
+
+  /**
+   * Pass every entry to action.  The key passed is one flyweight view reloaded for each entry, so copy it with deepClone() to keep it.
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<? super T, ? super V> action) {
+    T view = keyFactory.get();
+    if (hasZeroKey) {
+      action.accept(view, zeroValue);
+    }
+    for (int slot = 0; slot <= mask; slot++) {
+      if (!isEmptySlot(slot * stride)) {
+        action.accept(loadKey(slot, view), (V) values[slot]);
+      }
+    }
+  }
+}
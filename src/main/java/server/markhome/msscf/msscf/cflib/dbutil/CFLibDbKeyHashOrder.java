@@ -0,0 +1,97 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.Comparator;
+
+/**
+ * The orders in which the library sorts keys, each a singleton, allocation-free Comparator usable with keys of any width.
+ * <p>
+ * There are two orders of the key bytes.  NATURAL compares them as unsigned values, as compareTo() and the instance compare() do,
+ * and is the canonical order: it matches the hex strings, Arrays.compareUnsigned() of the bytes and the memcmp order of a binary database column.
+ * SIGNED compares them as signed values, as each width's static compareOrdered() and getComparator() do.
+ * Each comes in a nulls-first and a nulls-last variant; compareTo() and compare() are NATURAL_NULLS_LAST, compareOrdered() is SIGNED_NULLS_FIRST.
+ * <p>
+ * Sorted outputs of the library say which constant they were sorted by, so two of them can be merged without re-sorting whenever
+ * they report the same one (or, for outputs that never hold nulls, the same byte order; see isSameKeyOrder()).
+ * Keys of different widths are not comparable with each other.
+ *
+ * @author msobkow
+ */
+public enum CFLibDbKeyHashOrder implements Comparator<CFLibDbKeyHashBase<?>> {
+  NATURAL_NULLS_FIRST(false, true),
+  NATURAL_NULLS_LAST(false, false),
+  SIGNED_NULLS_FIRST(true, true),
+  SIGNED_NULLS_LAST(true, false);
+
+  final boolean signed;
+  final boolean nullsFirst;
+  final long flip;
+
+  CFLibDbKeyHashOrder(boolean signed, boolean nullsFirst) {
+    this.signed = signed;
+    this.nullsFirst = nullsFirst;
+    this.flip = signed ? CFLibDbKeyHashBase.SIGN_BITS : 0L;
+  }
+
+  /**
+   * True if the key bytes are compared as signed values.
+   */
+  public boolean isSigned() {
+    return signed;
+  }
+
+  public boolean isNullsFirst() {
+    return nullsFirst;
+  }
+
+  /**
+   * True if this and other order non-null keys identically, differing at most in where they put nulls.
+   */
+  public boolean isSameKeyOrder(CFLibDbKeyHashOrder other) {
+    return other != null && other.signed == signed;
+  }
+
+  /**
+   * This order as a comparator of keys of one width; the result is the constant itself, so no comparator is allocated.
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends CFLibDbKeyHashBase<T>> Comparator<T> comparator() {
+    return (Comparator<T>) (Comparator<?>) this;
+  }
+
+  @Override
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public int compare(CFLibDbKeyHashBase<?> h1, CFLibDbKeyHashBase<?> h2) {
+    if (h1 == null) {
+      if (h2 == null) {
+        return 0;
+      }
+      return nullsFirst ? -1 : 1;
+    }
+    if (h2 == null) {
+      return nullsFirst ? 1 : -1;
+    }
+    return ((CFLibDbKeyHashBase) h1).compareWords(h2, flip);
+  }
+}
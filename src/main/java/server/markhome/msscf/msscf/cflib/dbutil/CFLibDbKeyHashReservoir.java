@@ -0,0 +1,364 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * An optional reservoir of pre-generated keys for one key width, so that minting a key on the request path is a ring buffer pop rather than a digest.
+ * <p>
+ * A single background refiller (a virtual thread by default) tops the ring up to the high watermark in batches using the width's bulk generate(int) function, then parks.
+ * Callers take keys with a compare-and-set on the ring head; when the level drops to the low watermark they wake the refiller.
+ * If the reservoir has run dry, take() falls back to minting a key directly on the calling thread and counts the miss, so a reservoir never blocks its callers.
+ * A batch that fails to generate is counted and retried after a growing back-off; after MAX_FAILURES failures in a row the refiller stops and isRunning() turns false,
+ * leaving getFailures() and getLastFailure() to say why.
+ * <p>
+ * Typical use is through the per-width factory, e.g.
+ * <pre>
+ * CFLibDbKeyHashReservoir&lt;CFLibDbKeyHash256&gt; r = CFLibDbKeyHash256.newReservoir(4096);
+ * r.start();
+ * CFLibDbKeyHash256 k = r.take();
+ * ...
+ * r.shutdown();
+ * </pre>
+ *
+ * @author msobkow
+ */
+public class CFLibDbKeyHashReservoir<T extends CFLibDbKeyHashBase<T>> implements AutoCloseable {
+
+  /**
+   * The longest the refiller sleeps between level checks when nobody wakes it.
+   */
+  static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+  static final int MAX_BATCH = 256;
+  /**
+   * The number of consecutive failed batches after which the refiller gives up.
+   */
+  static final int MAX_FAILURES = 5;
+
+  final String name;
+  final IntFunction<T[]> batchGenerator;
+  final Supplier<T> fallback;
+  final Object[] ring;
+  final int mask;
+  final int lowWater;
+  final int highWater;
+
+  final AtomicLong head = new AtomicLong(0);
+  volatile long tail = 0;
+
+  final LongAdder takes = new LongAdder();
+  final LongAdder misses = new LongAdder();
+  volatile long refills = 0;
+  volatile long generated = 0;
+  volatile long failures = 0;
+  volatile Throwable lastFailure = null;
+
+  volatile boolean running = false;
+  volatile Thread refiller = null;
+  Thread shutdownHook = null;
+
+  /**
+   * Construct a reservoir with the low watermark at a quarter of capacity and the high watermark at capacity.
+   *
+   * @param name used to name the refiller thread
+   * @param capacity the ring size, rounded up to a power of two
+   * @param batchGenerator mints a batch of keys, e.g. CFLibDbKeyHash256::generate
+   * @param fallback mints a single key when the reservoir is dry, e.g. () -&gt; new CFLibDbKeyHash256(0)
+   */
+  public CFLibDbKeyHashReservoir(String name, int capacity, IntFunction<T[]> batchGenerator, Supplier<T> fallback) {
+    this(name, capacity, -1, -1, batchGenerator, fallback);
+  }
+
+  /**
+   * @param name used to name the refiller thread
+   * @param capacity the ring size, rounded up to a power of two
+   * @param lowWater the level at or below which takers wake the refiller; negative for a quarter of capacity
+   * @param highWater the level the refiller tops the ring up to; negative for the full capacity
+   * @param batchGenerator mints a batch of keys, e.g. CFLibDbKeyHash256::generate
+   * @param fallback mints a single key when the reservoir is dry, e.g. () -&gt; new CFLibDbKeyHash256(0)
+   */
+  public CFLibDbKeyHashReservoir(String name, int capacity, int lowWater, int highWater, IntFunction<T[]> batchGenerator, Supplier<T> fallback) {
+    if (capacity < 2 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("capacity is " + capacity + ".  Must be between 2 and " + (1 << 30) + ".");
+    }
+    if (batchGenerator == null || fallback == null) {
+      throw new NullPointerException("batchGenerator and fallback must not be null.");
+    }
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    this.name = name;
+    this.ring = new Object[size];
+    this.mask = size - 1;
+    this.highWater = highWater < 0 ? size : Math.min(highWater, size);
+    this.lowWater = lowWater < 0 ? this.highWater / 4 : Math.min(lowWater, this.highWater - 1);
+    this.batchGenerator = batchGenerator;
+    this.fallback = fallback;
+  }
+
+  /**
+   * Start the refiller on a virtual thread.
+   */
+  public void start() {
+    start(true);
+  }
+
+  /**
+   * Start the refiller, on a virtual thread or a daemon platform thread.
+   * Starting a running reservoir does nothing.
+   */
+  public synchronized void start(boolean virtual) {
+    if (running) {
+      return;
+    }
+    running = true;
+    Thread.Builder builder = virtual ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+    // Published before it starts, so a refiller that fails at once still finds itself and clears running
+    Thread t = builder.name(name + "-refill").unstarted(this::refill);
+    refiller = t;
+    t.start();
+  }
+
+  /**
+   * Stop the refiller, remove any shutdown hook, and wait up to timeoutMillis for the refiller to exit.
+   * Keys already in the ring can still be taken; takers fall back to direct minting once they are gone.
+   */
+  public synchronized void shutdown(long timeoutMillis) {
+    running = false;
+    Thread hook = shutdownHook;
+    shutdownHook = null;
+    if (hook != null && hook != Thread.currentThread()) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(hook);
+      }
+      catch (IllegalStateException e) {
+        // The JVM is already shutting down and will run the hook itself
+      }
+    }
+    Thread t = refiller;
+    refiller = null;
+    if (t == null) {
+      return;
+    }
+    LockSupport.unpark(t);
+    try {
+      t.join(timeoutMillis);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public void shutdown() {
+    shutdown(TimeUnit.SECONDS.toMillis(5));
+  }
+
+  @Override
+  public void close() {
+    shutdown();
+  }
+
+  /**
+   * Register a JVM shutdown hook that stops the refiller.
+   * shutdown() removes the hook again, so the reservoir is not kept reachable until the JVM exits.
+   */
+  public synchronized void registerShutdownHook() {
+    if (shutdownHook != null) {
+      return;
+    }
+    shutdownHook = new Thread(this::shutdown, name + "-shutdown");
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /**
+   * True while the refiller is running; false before start(), after shutdown(), or once the refiller has given up after MAX_FAILURES failed batches in a row.
+   */
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Take a pre-generated key, or mint one directly if the reservoir is dry.
+   */
+  @SuppressWarnings("unchecked")
+  public T take() {
+    while (true) {
+      long h = head.get();
+      long t = tail;
+      if (h >= t) {
+        misses.increment();
+        wake();
+        return fallback.get();
+      }
+      T k = (T) ring[(int) (h & mask)];
+      if (head.compareAndSet(h, h + 1)) {
+        takes.increment();
+        if (t - h - 1 <= lowWater) {
+          wake();
+        }
+        return k;
+      }
+    }
+  }
+
+  void wake() {
+    Thread t = refiller;
+    if (t != null) {
+      LockSupport.unpark(t);
+    }
+  }
+
+  void refill() {
+    Thread self = Thread.currentThread();
+    int failed = 0;
+    try {
+      // A refiller that shutdown() gave up waiting for must not keep producing once start() has replaced it
+      while (running && refiller == self) {
+        long level = tail - head.get();
+        if (level < highWater) {
+          int n = (int) Math.min(MAX_BATCH, highWater - level);
+          try {
+            publish(self, batchGenerator.apply(n), n);
+          }
+          catch (RuntimeException e) {
+            failures++;
+            lastFailure = e;
+            if (++failed >= MAX_FAILURES) {
+              return;
+            }
+            // Back off 1, 2, 4, ... park intervals, sleeping through wakes from takers but not through shutdown()
+            long until = System.nanoTime() + (PARK_NANOS << (failed - 1));
+            for (long left = until - System.nanoTime(); running && refiller == self && left > 0; left = until - System.nanoTime()) {
+              LockSupport.parkNanos(this, left);
+            }
+            continue;
+          }
+          failed = 0;
+        }
+        else {
+          LockSupport.parkNanos(this, PARK_NANOS);
+        }
+      }
+    }
+    finally {
+      // A refiller that exits on its own, by giving up or by an Error, is no longer running; one replaced by shutdown() or a restart leaves the flag alone
+      if (refiller == self) {
+        refiller = null;
+        running = false;
+      }
+    }
+  }
+
+  /**
+   * Append up to n keys of batch to the ring, unless self has been replaced as the refiller while it was generating them.
+   * The ring is the single producer's lock, so a replaced refiller still finishing a batch cannot interleave its slot writes with those of its successor.
+   */
+  void publish(Thread self, T[] batch, int n) {
+    synchronized (ring) {
+      if (refiller != self) {
+        return;
+      }
+      long t = tail;
+      n = (int) Math.min(n, highWater - (t - head.get()));
+      if (n <= 0) {
+        return;
+      }
+      for (int i = 0; i < n; i++) {
+        ring[(int) ((t + i) & mask)] = batch[i];
+      }
+      // Publishing tail after the slot writes is what makes the new keys visible to takers
+      tail = t + n;
+      refills++;
+      generated += n;
+    }
+  }
+
+  public int getCapacity() {
+    return ring.length;
+  }
+
+  public int getLowWater() {
+    return lowWater;
+  }
+
+  public int getHighWater() {
+    return highWater;
+  }
+
+  /**
+   * The number of keys currently ready to be taken.
+   */
+  public int getLevel() {
+    return (int) Math.max(0, tail - head.get());
+  }
+
+  /**
+   * The number of keys served from the ring.
+   */
+  public long getTakes() {
+    return takes.sum();
+  }
+
+  /**
+   * The number of times a taker found the reservoir dry and minted its own key.
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * The number of refill batches generated.
+   */
+  public long getRefills() {
+    return refills;
+  }
+
+  /**
+   * The number of keys generated by the refiller.
+   */
+  public long getGenerated() {
+    return generated;
+  }
+
+  /**
+   * The number of refill batches whose generation threw.
+   */
+  public long getFailures() {
+    return failures;
+  }
+
+  /**
+   * The exception thrown by the most recent failed batch, or null if none has failed.
+   */
+  public Throwable getLastFailure() {
+    return lastFailure;
+  }
+
+  @Override
+  public String toString() {
+    return name + "{level=" + getLevel() + ", capacity=" + getCapacity() + ", takes=" + getTakes() + ", misses=" + getMisses() + ", refills=" + getRefills() + ", failures=" + getFailures() + "}";
+  }
+}
@@ -0,0 +1,417 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Most-significant-byte-first radix sorts for keys held in arrays, lists and CFLibDbKeyHashArray columns.
+ * <p>
+ * The sort() methods produce exactly the order of the given CFLibDbKeyHashOrder, and the sortOrdered() methods that of the
+ * width's compareOrdered(), which is SIGNED_NULLS_FIRST.  Keys are distributed on one byte at a time, skipping bytes every key in a range shares, and ranges of
+ * INSERTION_SORT_THRESHOLD keys or fewer are finished with an insertion sort over whole words.  The sorts are stable.
+ * <p>
+ * Object keys are sorted through a packed copy of their words and their original positions, so each key's words are read once
+ * rather than on every comparison; that copy costs (wordCount() + 1) longs per non-null key.
+ * The parallel variants distribute ranges of at least PARALLEL_THRESHOLD keys on the calling thread and sort the resulting buckets
+ * as tasks of the pool.
+ *
+ * @author msobkow
+ */
+public final class CFLibDbKeyHashSort {
+
+  public static final int INSERTION_SORT_THRESHOLD = 32;
+  public static final int PARALLEL_THRESHOLD = 1 << 14;
+
+  private CFLibDbKeyHashSort() {
+  }
+
+  public static <T extends CFLibDbKeyHashBase<T>> void sortOrdered(T[] keys) {
+    sort(keys, 0, keys.length, CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST, null);
+  }
+
+  public static <T extends CFLibDbKeyHashBase<T>> void sortOrdered(T[] keys, int from, int to) {
+    sort(keys, from, to, CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST, null);
+  }
+
+  /**
+   * Sort keys into the order of compareOrdered(), splitting large inputs over pool.
+   */
+  public static <T extends CFLibDbKeyHashBase<T>> void parallelSortOrdered(T[] keys, ForkJoinPool pool) {
+    sort(keys, 0, keys.length, CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST, pool);
+  }
+
+  public static <T extends CFLibDbKeyHashBase<T>> void sortOrdered(List<T> keys) {
+    sort(keys, CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST, null);
+  }
+
+  /**
+   * Sort keys into the order of compareOrdered(), splitting large inputs over pool.
+   */
+  public static <T extends CFLibDbKeyHashBase<T>> void parallelSortOrdered(List<T> keys, ForkJoinPool pool) {
+    sort(keys, CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST, pool);
+  }
+
+  /**
+   * Sort keys into order, leaving them exactly as Arrays.sort(keys, order.comparator()) would.
+   */
+  public static <T extends CFLibDbKeyHashBase<T>> void sort(T[] keys, CFLibDbKeyHashOrder order) {
+    sort(keys, 0, keys.length, order, null);
+  }
+
+  public static <T extends CFLibDbKeyHashBase<T>> void sort(T[] keys, int from, int to, CFLibDbKeyHashOrder order) {
+    sort(keys, from, to, order, null);
+  }
+
+  /**
+   * Sort keys into order, splitting large inputs over pool.
+   */
+  public static <T extends CFLibDbKeyHashBase<T>> void parallelSort(T[] keys, CFLibDbKeyHashOrder order, ForkJoinPool pool) {
+    sort(keys, 0, keys.length, order, pool);
+  }
+
+  public static <T extends CFLibDbKeyHashBase<T>> void sort(List<T> keys, CFLibDbKeyHashOrder order) {
+    sort(keys, order, null);
+  }
+
+  /**
+   * Sort keys into order, splitting large inputs over pool.
+   */
+  public static <T extends CFLibDbKeyHashBase<T>> void parallelSort(List<T> keys, CFLibDbKeyHashOrder order, ForkJoinPool pool) {
+    sort(keys, order, pool);
+  }
+
+  /**
+   * True if keys are in order, so that they can be merged with other outputs of the same order without sorting them again.
+   */
+  public static <T extends CFLibDbKeyHashBase<T>> boolean isSorted(List<T> keys, CFLibDbKeyHashOrder order) {
+    T prev = null;
+    boolean first = true;
+    for (T k : keys) {
+      if (!first && order.compare(prev, k) > 0) {
+        return false;
+      }
+      prev = k;
+      first = false;
+    }
+    return true;
+  }
+
+  /**
+   * Merge two lists already sorted by order into a new sorted list, taking from a first when keys are equal.
+   */
+  public static <T extends CFLibDbKeyHashBase<T>> List<T> merge(List<T> a, List<T> b, CFLibDbKeyHashOrder order) {
+    if (order == null) {
+      throw new NullPointerException("order must not be null.");
+    }
+    List<T> r = new ArrayList<T>(a.size() + b.size());
+    ListIterator<T> ia = a.listIterator();
+    ListIterator<T> ib = b.listIterator();
+    while (ia.hasNext() && ib.hasNext()) {
+      T x = ia.next();
+      T y = ib.next();
+      if (order.compare(x, y) <= 0) {
+        r.add(x);
+        ib.previous();
+      }
+      else {
+        r.add(y);
+        ia.previous();
+      }
+    }
+    while (ia.hasNext()) {
+      r.add(ia.next());
+    }
+    while (ib.hasNext()) {
+      r.add(ib.next());
+    }
+    return r;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T extends CFLibDbKeyHashBase<T>> void sort(List<T> keys, CFLibDbKeyHashOrder order, ForkJoinPool pool) {
+    Object[] a = keys.toArray();
+    sortKeys(a, 0, a.length, order, pool);
+    ListIterator<T> it = keys.listIterator();
+    for (Object k : a) {
+      it.next();
+      it.set((T) k);
+    }
+  }
+
+  static <T extends CFLibDbKeyHashBase<T>> void sort(T[] keys, int from, int to, CFLibDbKeyHashOrder order, ForkJoinPool pool) {
+    if (from < 0 || from > to || to > keys.length) {
+      throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") is out of bounds for length " + keys.length + ".");
+    }
+    sortKeys(keys, from, to, order, pool);
+  }
+
+  static void sortKeys(Object[] keys, int from, int to, CFLibDbKeyHashOrder order, ForkJoinPool pool) {
+    if (order == null) {
+      throw new NullPointerException("order must not be null.");
+    }
+    // Pack the keys toward the end that is not given to nulls, keeping their order, and fill the other end with nulls
+    int lo;
+    int hi;
+    if (order.nullsFirst) {
+      lo = to;
+      for (int i = to - 1; i >= from; i--) {
+        if (keys[i] != null) {
+          keys[--lo] = keys[i];
+        }
+      }
+      Arrays.fill(keys, from, lo, null);
+      hi = to;
+    }
+    else {
+      hi = from;
+      for (int i = from; i < to; i++) {
+        if (keys[i] != null) {
+          keys[hi++] = keys[i];
+        }
+      }
+      Arrays.fill(keys, hi, to, null);
+      lo = from;
+    }
+    int n = hi - lo;
+    if (n < 2) {
+      return;
+    }
+    CFLibDbKeyHashBase<?> first = (CFLibDbKeyHashBase<?>) keys[lo];
+    int stride = first.wordCount();
+    int width = stride + 1;
+    long[] recs = new long[Math.multiplyExact(n, width)];
+    for (int i = 0; i < n; i++) {
+      CFLibDbKeyHashBase<?> k = (CFLibDbKeyHashBase<?>) keys[lo + i];
+      int base = i * width;
+      k.copyWords(recs, base);
+      recs[base + stride] = i;
+    }
+    sortRecords(recs, width, stride, first.getHashLength(), n, order.flip, pool);
+    Object[] src = Arrays.copyOfRange(keys, lo, hi);
+    for (int i = 0; i < n; i++) {
+      keys[lo + i] = src[(int) recs[i * width + stride]];
+    }
+  }
+
+  /**
+   * Sort the first count records of width longs in recs by their leading stride key words, compared as unsigned longs after XORing with flip;
+   * a flip of 0 gives the natural order, SIGN_BITS the order of compareOrdered().
+   */
+  static void sortRecords(long[] recs, int width, int stride, int hashLength, int count, long flip, ForkJoinPool pool) {
+    if (count < 2) {
+      return;
+    }
+    long[] aux = new long[Math.multiplyExact(count, width)];
+    if (pool == null || count < PARALLEL_THRESHOLD) {
+      new Sorter(recs, aux, width, stride, hashLength, flip).sort(0, count, 0);
+    }
+    else {
+      pool.invoke(new SortTask(recs, aux, width, stride, hashLength, flip, 0, count, 0));
+    }
+  }
+
+  /**
+   * The sequential sort, with scratch for one thread: a count array per byte depth, allocated on first use, and one record.
+   */
+  static final class Sorter {
+    final long[] a;
+    final long[] aux;
+    final int width;
+    final int stride;
+    final int hashLength;
+    final long flip;
+    final int flipByte;
+    final int[][] counts;
+    final long[] tmp;
+
+    Sorter(long[] a, long[] aux, int width, int stride, int hashLength, long flip) {
+      this.a = a;
+      this.aux = aux;
+      this.width = width;
+      this.stride = stride;
+      this.hashLength = hashLength;
+      this.flip = flip;
+      this.flipByte = (int) (flip & 0xFF);
+      this.counts = new int[hashLength][];
+      this.tmp = new long[width];
+    }
+
+    final int digit(int i, int d) {
+      return ((int) (a[i * width + (d >>> 3)] >>> (56 - ((d & 7) << 3))) & 0xFF) ^ flipByte;
+    }
+
+    int[] counts(int d) {
+      int[] c = counts[d];
+      if (c == null) {
+        c = new int[257];
+        counts[d] = c;
+      }
+      return c;
+    }
+
+    /**
+     * Sort records [lo, hi), which already agree on their first d bytes.
+     */
+    void sort(int lo, int hi, int d) {
+      while (true) {
+        int n = hi - lo;
+        if (n <= INSERTION_SORT_THRESHOLD) {
+          insertionSort(lo, hi, d >>> 3);
+          return;
+        }
+        if (d >= hashLength) {
+          return;
+        }
+        int[] c = counts(d);
+        if (!distribute(lo, hi, d, c)) {
+          d++;
+          continue;
+        }
+        int start = lo;
+        for (int b = 0; b < 256; b++) {
+          int end = lo + c[b];
+          if (end - start > 1) {
+            sort(start, end, d + 1);
+          }
+          start = end;
+        }
+        return;
+      }
+    }
+
+    /**
+     * Distribute records [lo, hi) into buckets by byte d, leaving the end of bucket b, relative to lo, in c[b].
+     *
+     * @return false, with nothing moved, if every record has the same byte d
+     */
+    boolean distribute(int lo, int hi, int d, int[] c) {
+      int n = hi - lo;
+      Arrays.fill(c, 0);
+      for (int i = lo; i < hi; i++) {
+        c[digit(i, d) + 1]++;
+      }
+      for (int b = 0; b < 256; b++) {
+        if (c[b + 1] == n) {
+          return false;
+        }
+        c[b + 1] += c[b];
+      }
+      for (int i = lo; i < hi; i++) {
+        int dst = (lo + c[digit(i, d)]++) * width;
+        int src = i * width;
+        for (int w = 0; w < width; w++) {
+          aux[dst + w] = a[src + w];
+        }
+      }
+      System.arraycopy(aux, lo * width, a, lo * width, n * width);
+      return true;
+    }
+
+    final int compare(long[] x, int xi, long[] y, int yi, int fromWord) {
+      for (int w = fromWord; w < stride; w++) {
+        long p = x[xi + w];
+        long q = y[yi + w];
+        if (p != q) {
+          return Long.compareUnsigned(p ^ flip, q ^ flip);
+        }
+      }
+      return 0;
+    }
+
+    void insertionSort(int lo, int hi, int fromWord) {
+      for (int i = lo + 1; i < hi; i++) {
+        if (compare(a, (i - 1) * width, a, i * width, fromWord) <= 0) {
+          continue;
+        }
+        System.arraycopy(a, i * width, tmp, 0, width);
+        int j = i - 1;
+        while (j > lo && compare(a, (j - 1) * width, tmp, 0, fromWord) > 0) {
+          j--;
+        }
+        System.arraycopy(a, j * width, a, (j + 1) * width, (i - j) * width);
+        System.arraycopy(tmp, 0, a, j * width, width);
+      }
+    }
+  }
+
+  /**
+   * Distributes a range on the current thread and sorts its buckets as subtasks until they drop below PARALLEL_THRESHOLD.
+   */
+  static final class SortTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final long[] a;
+    final long[] aux;
+    final int width;
+    final int stride;
+    final int hashLength;
+    final long flip;
+    final int lo;
+    final int hi;
+    final int d;
+
+    SortTask(long[] a, long[] aux, int width, int stride, int hashLength, long flip, int lo, int hi, int d) {
+      this.a = a;
+      this.aux = aux;
+      this.width = width;
+      this.stride = stride;
+      this.hashLength = hashLength;
+      this.flip = flip;
+      this.lo = lo;
+      this.hi = hi;
+      this.d = d;
+    }
+
+    @Override
+    protected void compute() {
+      Sorter s = new Sorter(a, aux, width, stride, hashLength, flip);
+      if (hi - lo < PARALLEL_THRESHOLD) {
+        s.sort(lo, hi, d);
+        return;
+      }
+      int[] c = new int[257];
+      int depth = d;
+      while (depth < hashLength && !s.distribute(lo, hi, depth, c)) {
+        depth++;
+      }
+      if (depth >= hashLength) {
+        return;
+      }
+      List<SortTask> tasks = new ArrayList<SortTask>();
+      int start = lo;
+      for (int b = 0; b < 256; b++) {
+        int end = lo + c[b];
+        if (end - start > 1) {
+          tasks.add(new SortTask(a, aux, width, stride, hashLength, flip, start, end, depth + 1));
+        }
+        start = end;
+      }
+      invokeAll(tasks);
+    }
+  }
+}
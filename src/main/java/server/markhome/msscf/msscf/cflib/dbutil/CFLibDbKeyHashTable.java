@@ -0,0 +1,262 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * The open-addressing key table shared by CFLibDbKeyHashLongMap and CFLibDbKeyHashObjectMap.
+ * <p>
+ * Keys are stored inline, stride longs per slot in one long[], with their values in a parallel array kept by the subclass.
+ * A slot whose words are all zero is empty; the all-zero key itself is held outside the table.
+ * Collisions are resolved by linear probing, and removal shifts later entries of the cluster back so no tombstones are left behind.
+ * <p>
+ * The home slot of a key comes from its own bits rather than hashCode(): the first and last words are XORed and spread with one
+ * Fibonacci multiply.  For digest keys that is simply the key bits; the fold and multiply keep keys that are not uniformly
+ * distributed, such as fromInt() keys or the time prefix of TIME_ORDERED keys, from piling into neighbouring slots.
+ *
+ * @author msobkow
+ */
+abstract class CFLibDbKeyHashTable<T extends CFLibDbKeyHashBase<T>> {
+
+  static final long GOLDEN = 0x9E3779B97F4A7C15L;
+  static final float LOAD_FACTOR = 0.75f;
+  static final int MIN_CAPACITY = 8;
+
+  final int hashLength;
+  final int stride;
+  final Supplier<T> keyFactory;
+
+  long[] keys;
+  int mask;
+  int shift;
+  int threshold;
+  /**
+   * The number of keys in the table, not counting the zero key.
+   */
+  int used = 0;
+  boolean hasZeroKey = false;
+
+  CFLibDbKeyHashTable(int hashLength, Supplier<T> keyFactory, int expected) {
+    if (expected < 0) {
+      throw new IllegalArgumentException("expected is " + expected + ".  Must be >= 0.");
+    }
+    if (keyFactory == null) {
+      throw new NullPointerException("keyFactory must not be null.");
+    }
+    this.hashLength = hashLength;
+    this.stride = (hashLength + 7) / 8;
+    this.keyFactory = keyFactory;
+    allocate(tableSizeFor(expected));
+  }
+
+  static int tableSizeFor(int expected) {
+    long needed = Math.max(MIN_CAPACITY, (long) Math.ceil(expected / (double) LOAD_FACTOR) + 1);
+    if (needed > (1 << 30)) {
+      throw new IllegalArgumentException("expected is " + expected + ", which is too many entries.");
+    }
+    return Integer.highestOneBit((int) needed - 1) << 1;
+  }
+
+  void allocate(int capacity) {
+    keys = new long[Math.multiplyExact(capacity, stride)];
+    mask = capacity - 1;
+    shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    threshold = (int) (capacity * LOAD_FACTOR);
+    allocateValues(capacity);
+  }
+
+  /**
+   * Allocate the value array for a table of capacity slots.
+   */
+  abstract void allocateValues(int capacity);
+
+  /**
+   * Detach the current value array before a resize, for transferValue() to read from.
+   */
+  abstract Object detachValues();
+
+  abstract void transferValue(Object oldValues, int from, int to);
+
+  abstract void moveValue(int from, int to);
+
+  abstract void clearValue(int slot);
+
+  public int size() {
+    return used + (hasZeroKey ? 1 : 0);
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public int getHashLength() {
+    return hashLength;
+  }
+
+  /**
+   * The number of slots in the table.
+   */
+  public int capacity() {
+    return mask + 1;
+  }
+
+  final int home(long first, long last) {
+    return (int) (((first ^ last) * GOLDEN) >>> shift);
+  }
+
+  final int homeOfSlot(int slot) {
+    int base = slot * stride;
+    return home(keys[base], keys[base + stride - 1]);
+  }
+
+  final boolean isEmptySlot(int base) {
+    for (int w = 0; w < stride; w++) {
+      if (keys[base + w] != 0L) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  final boolean matches(int base, T key) {
+    return key.wordsEqual(keys, base);
+  }
+
+  static <T extends CFLibDbKeyHashBase<T>> void checkKey(T key) {
+    if (key == null) {
+      throw new NullPointerException("key must not be null.");
+    }
+  }
+
+  /**
+   * The slot holding the non-zero key, or -(slot + 1) for the empty slot where it would be inserted.
+   */
+  final int find(T key) {
+    int i = home(key.word(0), key.word(stride - 1));
+    while (true) {
+      int base = i * stride;
+      if (keys[base] == key.word(0)) {
+        if (matches(base, key)) {
+          return i;
+        }
+      }
+      if (isEmptySlot(base)) {
+        return -(i + 1);
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Store the non-zero key in the empty slot, growing the table if that takes it past its load factor.
+   *
+   * @return the slot the key occupies after any resize
+   */
+  final int insert(int slot, T key) {
+    key.copyWords(keys, slot * stride);
+    if (++used > threshold) {
+      return resize(slot);
+    }
+    return slot;
+  }
+
+  /**
+   * Double the table, returning where the entry at slot tracked ends up.
+   */
+  int resize(int tracked) {
+    long[] oldKeys = keys;
+    Object oldValues = detachValues();
+    int oldCapacity = mask + 1;
+    allocate(oldCapacity * 2);
+    int moved = -1;
+    for (int s = 0; s < oldCapacity; s++) {
+      int base = s * stride;
+      boolean empty = true;
+      for (int w = 0; w < stride; w++) {
+        if (oldKeys[base + w] != 0L) {
+          empty = false;
+          break;
+        }
+      }
+      if (empty) {
+        continue;
+      }
+      int i = home(oldKeys[base], oldKeys[base + stride - 1]);
+      while (!isEmptySlot(i * stride)) {
+        i = (i + 1) & mask;
+      }
+      System.arraycopy(oldKeys, base, keys, i * stride, stride);
+      transferValue(oldValues, s, i);
+      if (s == tracked) {
+        moved = i;
+      }
+    }
+    return moved;
+  }
+
+  /**
+   * Empty the slot and shift the rest of its cluster back so every remaining key stays reachable from its home slot.
+   */
+  final void removeSlot(int slot) {
+    int hole = slot;
+    int j = slot;
+    while (true) {
+      j = (j + 1) & mask;
+      if (isEmptySlot(j * stride)) {
+        break;
+      }
+      int h = homeOfSlot(j);
+      // The entry at j may move into the hole only if its home does not lie cyclically in (hole, j]
+      boolean stays = hole <= j ? (hole < h && h <= j) : (hole < h || h <= j);
+      if (!stays) {
+        System.arraycopy(keys, j * stride, keys, hole * stride, stride);
+        moveValue(j, hole);
+        hole = j;
+      }
+    }
+    int base = hole * stride;
+    for (int w = 0; w < stride; w++) {
+      keys[base + w] = 0L;
+    }
+    clearValue(hole);
+    used--;
+  }
+
+  /**
+   * Load the key in slot into view and return it.
+   */
+  final T loadKey(int slot, T view) {
+    int base = slot * stride;
+    for (int w = 0; w < stride; w++) {
+      view.setWord(w, keys[base + w]);
+    }
+    return view;
+  }
+
+  void clearTable() {
+    Arrays.fill(keys, 0L);
+    used = 0;
+    hasZeroKey = false;
+  }
+}
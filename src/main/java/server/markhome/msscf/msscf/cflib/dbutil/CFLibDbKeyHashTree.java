@@ -0,0 +1,366 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tree-mode (Merkle) hashing of large payloads, so the chunks of a multi-GB payload can be digested on every core and re-digested individually when they change.
+ * <p>
+ * The tree is defined as follows, with H the digest of the key width (see CFLibDbKeyHashDigests) and all integers big-endian:
+ * <ol>
+ * <li>The payload is cut into consecutive chunks of chunkSize bytes; the last chunk may be shorter.  An empty payload is a single empty chunk.
+ * <li>Each chunk is a leaf node: <code>H(0x00 || chunk)</code>.
+ * <li>While a level has more than one node, its nodes are grouped in order, fanOut at a time (the last group may be smaller), and each group becomes one node of the next level: <code>H(0x01 || node_0 || ... || node_k)</code>.
+ * <li>The root, which is the key, is <code>H(0x02 || chunkSize as 8 bytes || fanOut as 4 bytes || payload length as 8 bytes || top node)</code>.
+ * </ol>
+ * The domain tags keep leaves, interior nodes and roots from ever colliding with one another, and binding the parameters into the root means trees built with different chunk sizes or fan-outs never produce the same key.
+ * A tree hash is therefore a different function from the plain hash(...) of the same payload.
+ * The defaults, DEFAULT_CHUNK_SIZE and DEFAULT_FAN_OUT, are part of the definition of every key built with them and must never change.
+ * <p>
+ * An instance keeps every level of the tree after build(), so updateChunk() can re-digest one changed chunk and the nodes on its path to the root without touching the rest of the payload.
+ * Instances are not thread safe.
+ *
+ * @author msobkow
+ */
+public final class CFLibDbKeyHashTree {
+
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+  public static final int DEFAULT_FAN_OUT = 16;
+
+  static final byte LEAF_TAG = 0x00;
+  static final byte NODE_TAG = 0x01;
+  static final byte ROOT_TAG = 0x02;
+
+  /**
+   * Leaf ranges of fewer chunks than this are digested on a single worker.
+   */
+  static final int LEAVES_PER_TASK = 8;
+
+  final int hashLength;
+  final String algo;
+  final int chunkSize;
+  final int fanOut;
+
+  long payloadLength = -1;
+  int chunkCount = 0;
+  byte[][] levels = null;
+  byte[] root = null;
+
+  /**
+   * Supplies the bytes of one chunk; ByteBuffer sources slice the payload, FileChannel sources slice a mapped window.
+   */
+  interface Source {
+    ByteBuffer region(long offset, int length);
+
+    /**
+     * Called once the chunk at offset has been digested.
+     */
+    default void release(long offset) {
+    }
+  }
+
+  /**
+   * Maps a file in windows of whole chunks, at most CFLibDbKeyHashDigests.MAP_WINDOW_BYTES each unless a single chunk is larger, and slices each chunk out of its window.
+   * A window is mapped by the first worker to reach it and dropped once all of its chunks are digested,
+   * so a multi-GB file costs one mapping per window rather than per chunk, and only the windows in progress hold address space.
+   */
+  static final class MappedSource implements Source {
+    final FileChannel channel;
+    final long pos;
+    final long len;
+    final long windowBytes;
+    final AtomicReferenceArray<ByteBuffer> windows;
+    final AtomicIntegerArray pending;
+
+    MappedSource(FileChannel channel, long pos, long len, int chunkSize, long maxWindowBytes) {
+      long windowChunks = Math.max(1, maxWindowBytes / chunkSize);
+      long chunks = Math.max(1, (len + chunkSize - 1) / chunkSize);
+      int count = (int) ((chunks + windowChunks - 1) / windowChunks);
+      this.channel = channel;
+      this.pos = pos;
+      this.len = len;
+      this.windowBytes = windowChunks * chunkSize;
+      this.windows = new AtomicReferenceArray<ByteBuffer>(count);
+      this.pending = new AtomicIntegerArray(count);
+      for (int w = 0; w < count; w++) {
+        pending.set(w, (int) Math.min(windowChunks, chunks - w * windowChunks));
+      }
+    }
+
+    @Override
+    public ByteBuffer region(long offset, int length) {
+      int w = (int) (offset / windowBytes);
+      ByteBuffer window = windows.get(w);
+      if (window == null) {
+        synchronized (this) {
+          window = windows.get(w);
+          if (window == null) {
+            long start = w * windowBytes;
+            try {
+              window = channel.map(FileChannel.MapMode.READ_ONLY, pos + start, Math.min(windowBytes, len - start));
+            }
+            catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+            windows.set(w, window);
+          }
+        }
+      }
+      return window.slice((int) (offset - w * windowBytes), length);
+    }
+
+    @Override
+    public void release(long offset) {
+      int w = (int) (offset / windowBytes);
+      if (pending.decrementAndGet(w) == 0) {
+        windows.set(w, null);
+      }
+    }
+  }
+
+  public CFLibDbKeyHashTree(int hashLength, String algo) {
+    this(hashLength, algo, DEFAULT_CHUNK_SIZE, DEFAULT_FAN_OUT);
+  }
+
+  public CFLibDbKeyHashTree(int hashLength, String algo, int chunkSize, int fanOut) {
+    CFLibDbKeyHashGenerator.digestSlot(hashLength);
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize is " + chunkSize + ".  Must be >= 1.");
+    }
+    if (fanOut < 2) {
+      throw new IllegalArgumentException("fanOut is " + fanOut + ".  Must be >= 2.");
+    }
+    this.hashLength = hashLength;
+    this.algo = algo;
+    this.chunkSize = chunkSize;
+    this.fanOut = fanOut;
+  }
+
+  public int getHashLength() {
+    return hashLength;
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  public int getFanOut() {
+    return fanOut;
+  }
+
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  public long getPayloadLength() {
+    return payloadLength;
+  }
+
+  /**
+   * The root of the last build() or updateChunk(), or null if the tree has not been built.
+   */
+  public byte[] getRoot() {
+    return root == null ? null : root.clone();
+  }
+
+  /**
+   * Build the tree over the remaining bytes of payload, digesting chunks on pool (or the calling thread if pool is null).
+   * The buffer's position is unchanged.
+   *
+   * @return the root
+   */
+  public byte[] build(ByteBuffer payload, ForkJoinPool pool) {
+    final ByteBuffer base = payload.slice();
+    return build(base.remaining(), (offset, length) -> base.slice((int) offset, length), pool);
+  }
+
+  /**
+   * Build the tree over len bytes of channel starting at pos, memory-mapping it in bounded windows that the workers slice their chunks from.
+   *
+   * @return the root
+   */
+  public byte[] build(FileChannel channel, long pos, long len, ForkJoinPool pool) throws IOException {
+    if (pos < 0 || len < 0 || pos + len > channel.size()) {
+      throw new IllegalArgumentException("pos " + pos + " and len " + len + " must lie within the channel size " + channel.size() + ".");
+    }
+    try {
+      return build(len, new MappedSource(channel, pos, len, chunkSize, CFLibDbKeyHashDigests.MAP_WINDOW_BYTES), pool);
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  byte[] build(long length, Source source, ForkJoinPool pool) {
+    long chunks = Math.max(1, (length + chunkSize - 1) / chunkSize);
+    if (chunks * hashLength > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("payload of " + length + " bytes needs " + chunks + " chunks of " + chunkSize + " bytes, which is too many; use a larger chunkSize.");
+    }
+    payloadLength = length;
+    chunkCount = (int) chunks;
+    int depth = 1;
+    for (long n = chunks; n > 1; n = (n + fanOut - 1) / fanOut) {
+      depth++;
+    }
+    levels = new byte[depth][];
+    levels[0] = new byte[chunkCount * hashLength];
+    LeafTask task = new LeafTask(source, 0, chunkCount);
+    if (pool == null || chunkCount < LEAVES_PER_TASK) {
+      task.compute();
+    }
+    else {
+      pool.invoke(task);
+    }
+    for (int l = 1; l < depth; l++) {
+      int below = levels[l - 1].length / hashLength;
+      levels[l] = new byte[((below + fanOut - 1) / fanOut) * hashLength];
+      for (int i = 0; i * fanOut < below; i++) {
+        digestNode(l, i);
+      }
+    }
+    digestRoot();
+    return root.clone();
+  }
+
+  /**
+   * Replace the content of one chunk and re-digest only its leaf and the nodes on its path to the root.
+   * Every chunk but the last must keep exactly chunkSize bytes; the last may hold 1 to chunkSize bytes.
+   *
+   * @return the new root
+   */
+  public byte[] updateChunk(int index, ByteBuffer chunk) {
+    if (levels == null) {
+      throw new IllegalStateException("The tree must be built before chunks can be updated.");
+    }
+    if (index < 0 || index >= chunkCount) {
+      throw new IndexOutOfBoundsException("index is " + index + ".  Must be >= 0 and < " + chunkCount + ".");
+    }
+    long start = (long) index * chunkSize;
+    long oldLength = Math.min(chunkSize, payloadLength - start);
+    int newLength = chunk.remaining();
+    boolean last = index == chunkCount - 1;
+    if (last ? (newLength > chunkSize || (newLength < 1 && chunkCount > 1)) : newLength != chunkSize) {
+      throw new IllegalArgumentException("chunk " + index + " holds " + newLength + " bytes; " + (last ? "the last chunk must hold 1 to " + chunkSize : "it must hold exactly " + chunkSize) + " bytes.");
+    }
+    digestLeaf(index, chunk);
+    payloadLength += newLength - Math.max(0, oldLength);
+    int i = index;
+    for (int l = 1; l < levels.length; l++) {
+      i /= fanOut;
+      digestNode(l, i);
+    }
+    digestRoot();
+    return root.clone();
+  }
+
+  void digestLeaf(int index, ByteBuffer chunk) {
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
+    try {
+      MessageDigest md = s.digest(hashLength, algo);
+      md.update(LEAF_TAG);
+      CFLibDbKeyHashDigests.update(md, chunk);
+      CFLibDbKeyHashGenerator.digestInto(md, levels[0], index * hashLength, hashLength);
+    }
+    catch (RuntimeException e) {
+      s.resetDigests();
+      throw e;
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
+    }
+  }
+
+  void digestNode(int level, int index) {
+    byte[] below = levels[level - 1];
+    int first = index * fanOut * hashLength;
+    int bytes = Math.min(fanOut * hashLength, below.length - first);
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
+    try {
+      MessageDigest md = s.digest(hashLength, algo);
+      md.update(NODE_TAG);
+      md.update(below, first, bytes);
+      CFLibDbKeyHashGenerator.digestInto(md, levels[level], index * hashLength, hashLength);
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
+    }
+  }
+
+  void digestRoot() {
+    ByteBuffer params = ByteBuffer.allocate(1 + 8 + 4 + 8);
+    params.put(ROOT_TAG).putLong(chunkSize).putInt(fanOut).putLong(payloadLength);
+    byte[] top = levels[levels.length - 1];
+    byte[] r = new byte[hashLength];
+    CFLibDbKeyHashGenerator.Stripe s = CFLibDbKeyHashGenerator.acquire();
+    try {
+      MessageDigest md = s.digest(hashLength, algo);
+      md.update(params.array());
+      md.update(top, 0, hashLength);
+      CFLibDbKeyHashGenerator.digestInto(md, r, 0, hashLength);
+    }
+    finally {
+      CFLibDbKeyHashGenerator.release(s);
+    }
+    root = r;
+  }
+
+  /**
+   * Digests a range of leaves, splitting in halves until the range drops below LEAVES_PER_TASK chunks.
+   */
+  final class LeafTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final transient Source source;
+    final int first;
+    final int count;
+
+    LeafTask(Source source, int first, int count) {
+      this.source = source;
+      this.first = first;
+      this.count = count;
+    }
+
+    @Override
+    protected void compute() {
+      if (count < LEAVES_PER_TASK * 2 || getPool() == null) {
+        for (int i = first; i < first + count; i++) {
+          long offset = (long) i * chunkSize;
+          int length = (int) Math.max(0, Math.min(chunkSize, payloadLength - offset));
+          digestLeaf(i, source.region(offset, length));
+          source.release(offset);
+        }
+        return;
+      }
+      int half = count / 2;
+      invokeAll(new LeafTask(source, first, half), new LeafTask(source, first + half, count - half));
+    }
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.function.Function;
+
+/**
+ * A reusable hasher that derives many keys of one width under a common namespace prefix.
+ * <p>
+ * The namespace is digested once, when the hasher is constructed, and the digest state after it (the midstate) is kept.
+ * Each value then starts from a clone of that midstate, so the cost of a key is the cost of the value bytes alone, however long the namespace.
+ * Namespaces shorter than one digest block are simply re-fed to a reused digest, which is cheaper than cloning.
+ * Typed values are staged in a reusable buffer and reach the digest in as few update() calls as possible.
+ * <p>
+ * The bytes fed for a value are the plain concatenation of the updates, with no separators or lengths:
+ * ints and longs are big-endian, text is UTF-8 exactly as String.getBytes(UTF_8), and keys are their raw bytes.
+ * A key is therefore the same as the width's hash(byte[]...) of the namespace followed by those bytes, e.g.
+ * <pre>
+ * CFLibDbKeyHasher&lt;CFLibDbKeyHash256&gt; h = CFLibDbKeyHash256.newHasher("tenant-42:");
+ * CFLibDbKeyHash256 k = h.update("order").update(1234L).finish();
+ * </pre>
+ * gives the same key as hashing "tenant-42:" and "order" as UTF-8 and 1234L as 8 big-endian bytes in one payload.
+ * Because values are concatenated, ["ab", "c"] and ["a", "bc"] produce the same key; callers who need distinct
+ * encodings for distinct field lists must delimit them themselves.
+ * <p>
+ * Instances are not thread safe; keep one per thread, or one per task.
+ *
+ * @author msobkow
+ */
+public class CFLibDbKeyHasher<T extends CFLibDbKeyHashBase<T>> {
+
+  static final int STAGING_BYTES = 256;
+
+  /**
+   * The input block size of algo in bytes, or 0 for an algorithm this class does not know.
+   * Namespaces shorter than one block are re-fed to a reused digest for each value instead of cloning the midstate;
+   * they do not fill a block, so re-feeding them is a copy, which is cheaper than the allocation of a clone.
+   * Unknown algorithms always clone.
+   */
+  static int blockBytes(String algo) {
+    switch (algo) {
+      case "SHA-1":
+      case "SHA-224":
+      case "SHA-256":
+        return 64;
+      case "SHA-384":
+      case "SHA-512":
+      case "SHA-512/224":
+      case "SHA-512/256":
+        return 128;
+      default:
+        return 0;
+    }
+  }
+
+  final int hashLength;
+  final String algo;
+  final byte[] namespace;
+  final Function<MessageDigest, T> finisher;
+  final MessageDigest midstate;
+  final boolean useMidstate;
+
+  MessageDigest md = null;
+  MessageDigest spare = null;
+  final byte[] staging = new byte[STAGING_BYTES];
+  int staged = 0;
+
+  /**
+   * @param hashLength the digest length of the key width
+   * @param algo the digest algorithm of the key width
+   * @param namespace the prefix digested ahead of every value; may be empty but not null
+   * @param finisher completes a digest into a key of the width, e.g. CFLibDbKeyHash256::digestToKey
+   */
+  public CFLibDbKeyHasher(int hashLength, String algo, byte[] namespace, Function<MessageDigest, T> finisher) {
+    CFLibDbKeyHashGenerator.digestSlot(hashLength);
+    if (namespace == null || finisher == null) {
+      throw new NullPointerException("namespace and finisher must not be null.");
+    }
+    this.hashLength = hashLength;
+    this.algo = algo;
+    this.namespace = namespace.clone();
+    this.finisher = finisher;
+    this.midstate = CFLibDbKeyHashDigests.newDigest(hashLength, algo);
+    this.midstate.update(this.namespace);
+    boolean canClone = namespace.length >= blockBytes(algo);
+    if (canClone) {
+      try {
+        midstate.clone();
+      }
+      catch (CloneNotSupportedException e) {
+        canClone = false;
+      }
+    }
+    this.useMidstate = canClone;
+  }
+
+  public int getHashLength() {
+    return hashLength;
+  }
+
+  public String getHashAlgo() {
+    return algo;
+  }
+
+  public byte[] getNamespace() {
+    return namespace.clone();
+  }
+
+  /**
+   * Discard any value in progress and start a new one from the namespace midstate.
+   * Values are started implicitly by the first update after construction or finish(), so calling this is only needed to abandon a value.
+   */
+  public CFLibDbKeyHasher<T> reset() {
+    staged = 0;
+    start();
+    return this;
+  }
+
+  /**
+   * Load the namespace midstate into md, leaving anything staged in place.
+   */
+  void start() {
+    if (useMidstate) {
+      try {
+        md = (MessageDigest) midstate.clone();
+        return;
+      }
+      catch (CloneNotSupportedException e) {
+        // Checked at construction; cannot happen
+      }
+    }
+    // Short namespaces, and providers whose digests cannot be cloned, re-digest the namespace into one reused digest instead
+    if (spare == null) {
+      spare = CFLibDbKeyHashDigests.newDigest(hashLength, algo);
+    }
+    md = spare;
+    md.reset();
+    md.update(namespace);
+  }
+
+  MessageDigest begin() {
+    if (md == null) {
+      start();
+    }
+    return md;
+  }
+
+  /**
+   * Make room for count bytes in the staging buffer, feeding what is already staged to the digest if needed.
+   */
+  final void reserve(int count) {
+    if (staged + count > STAGING_BYTES) {
+      flush();
+    }
+  }
+
+  final void flush() {
+    if (staged > 0) {
+      begin().update(staging, 0, staged);
+      staged = 0;
+    }
+  }
+
+  final void stage(long value, int count) {
+    reserve(count);
+    for (int shift = (count - 1) * 8; shift >= 0; shift -= 8) {
+      staging[staged++] = (byte) (value >>> shift);
+    }
+  }
+
+  public CFLibDbKeyHasher<T> update(byte value) {
+    stage(value, 1);
+    return this;
+  }
+
+  public CFLibDbKeyHasher<T> update(int value) {
+    stage(value, 4);
+    return this;
+  }
+
+  public CFLibDbKeyHasher<T> update(long value) {
+    stage(value, 8);
+    return this;
+  }
+
+  public CFLibDbKeyHasher<T> update(int[] values) {
+    staged = CFLibDbKeyHashGenerator.putInts(begin(), staging, staged, values);
+    return this;
+  }
+
+  /**
+   * Append the UTF-8 encoding of text; the bytes are identical to those of String.getBytes(UTF_8).
+   */
+  public CFLibDbKeyHasher<T> update(CharSequence text) {
+    staged = CFLibDbKeyHashGenerator.putUtf8(begin(), staging, staged, text);
+    return this;
+  }
+
+  public CFLibDbKeyHasher<T> update(byte[] value) {
+    return update(value, 0, value.length);
+  }
+
+  public CFLibDbKeyHasher<T> update(byte[] value, int offset, int length) {
+    if (length <= STAGING_BYTES - staged) {
+      System.arraycopy(value, offset, staging, staged, length);
+      staged += length;
+    }
+    else {
+      flush();
+      begin().update(value, offset, length);
+    }
+    return this;
+  }
+
+  /**
+   * Append the remaining bytes of value, leaving its position unchanged.
+   */
+  public CFLibDbKeyHasher<T> update(ByteBuffer value) {
+    flush();
+    CFLibDbKeyHashDigests.update(begin(), value);
+    return this;
+  }
+
+  /**
+   * Append the raw bytes of a nested key of any width.
+   */
+  public CFLibDbKeyHasher<T> update(CFLibDbKeyHashBase<?> key) {
+    int length = key.getHashLength();
+    reserve(length);
+    key.copyBytes(staging, staged);
+    staged += length;
+    return this;
+  }
+
+  /**
+   * Complete the value in progress into a key and leave the hasher ready for the next value.
+   */
+  public T finish() {
+    MessageDigest d = begin();
+    flush();
+    md = null;
+    try {
+      return finisher.apply(d);
+    }
+    catch (RuntimeException e) {
+      d.reset();
+      throw e;
+    }
+  }
+
+  /**
+   * The key of a single value: the namespace followed by value.
+   */
+  public T hash(byte[] value) {
+    reset();
+    return update(value).finish();
+  }
+
+  /**
+   * The key of a single text value: the namespace followed by the UTF-8 encoding of value.
+   */
+  public T hash(CharSequence value) {
+    reset();
+    return update(value).finish();
+  }
+
+  public T hash(long value) {
+    reset();
+    return update(value).finish();
+  }
+
+  /**
+   * Convert a namespace string to the bytes digested ahead of every value.
+   */
+  static byte[] namespaceBytes(String namespace) {
+    if (namespace == null) {
+      throw new NullPointerException("namespace must not be null.");
+    }
+    return namespace.getBytes(StandardCharsets.UTF_8);
+  }
+}
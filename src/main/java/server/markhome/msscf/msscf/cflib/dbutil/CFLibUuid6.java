@@ -23,7 +23,14 @@ package server.markhome.msscf.msscf.cflib.dbutil;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Embeddable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -249,7 +256,7 @@ public class CFLibUuid6 implements java.io.Serializable, Comparable<CFLibUuid6>
     }
     
     private static String formatHexByte(byte b) {
-        return "" + HEXFORMAT[(b>>8)&0x0f] + HEXFORMAT[(b)&0x0f];
+        return "" + HEXFORMAT[(b>>4)&0x0f] + HEXFORMAT[(b)&0x0f];
     }
   
     /**
@@ -329,6 +336,69 @@ public class CFLibUuid6 implements java.io.Serializable, Comparable<CFLibUuid6>
         return fromString1(name);
     }
     
+    /**
+     * String length of the unpadded Base64url form of a Uuid6
+     */
+    public final static int BASE64_LENGTH = (TOTAL_BYTES * 8 + 5) / 6;
+
+    /**
+     * String length of the Crockford Base32 form of a Uuid6
+     */
+    public final static int BASE32_LENGTH = (TOTAL_BYTES * 8 + 4) / 5;
+
+    /**
+     * Creates a {@code Uuid6} from the {@link #toBase64} form.
+     *
+     * @throws  IllegalArgumentException
+     *          If s is not BASE64_LENGTH characters of canonical unpadded Base64url
+     */
+    public static CFLibUuid6 fromBase64(CharSequence s) {
+        return fromEncoded(CFLibDbKeyHashEncoding.BASE64URL, s);
+    }
+
+    /**
+     * Creates a {@code Uuid6} from the {@link #toBase32} form, in either case.
+     *
+     * @throws  IllegalArgumentException
+     *          If s is not BASE32_LENGTH characters of canonical Crockford Base32
+     */
+    public static CFLibUuid6 fromBase32(CharSequence s) {
+        return fromEncoded(CFLibDbKeyHashEncoding.BASE32, s);
+    }
+
+    private static CFLibUuid6 fromEncoded(CFLibDbKeyHashEncoding encoding, CharSequence s) {
+        byte[] v = new byte[TOTAL_BYTES];
+        encoding.decodeExactly(s, 0, s.length(), v, 0, TOTAL_BYTES);
+        return new CFLibUuid6(v);
+    }
+
+    /**
+     * Creates a {@code Uuid6} from any of its string forms, told apart by length: the STRING_LENGTH form of {@link #toString},
+     * 56 plain hex digits, or the BASE64_LENGTH and BASE32_LENGTH forms.
+     *
+     * @throws  IllegalArgumentException
+     *          If s is none of those forms
+     */
+    public static CFLibUuid6 fromAnyString(CharSequence s) {
+        int len = s.length();
+        if (len == STRING_LENGTH) {
+            return fromString(s.toString());
+        }
+        else if (len == TOTAL_BYTES * 2) {
+            byte[] v = new byte[TOTAL_BYTES];
+            CFLibDbKeyHashHex.decode(s, 0, len, v, 0);
+            return new CFLibUuid6(v);
+        }
+        else if (len == BASE64_LENGTH) {
+            return fromBase64(s);
+        }
+        else if (len == BASE32_LENGTH) {
+            return fromBase32(s);
+        }
+        throw new IllegalArgumentException("Uuid6 string length is " + len + ".  Must be " + STRING_LENGTH + ", " + (TOTAL_BYTES * 2)
+            + ", " + BASE64_LENGTH + " or " + BASE32_LENGTH + ".");
+    }
+
     private static CFLibUuid6 fromString1(String name) {
         int len = name.length();
         if (len > STRING_LENGTH) {
@@ -594,6 +664,95 @@ public class CFLibUuid6 implements java.io.Serializable, Comparable<CFLibUuid6>
                 + "-" + formatHexByte(bytes[NODE3_START]) + formatHexByte(bytes[NODE3_START+1]) + formatHexByte(bytes[NODE3_START+2]) + formatHexByte(bytes[NODE3_START+3]);
     }
 
+    /**
+     * Returns the BASE64_LENGTH character unpadded Base64url form of this {@code Uuid6}.
+     */
+    public String toBase64() {
+        return CFLibDbKeyHashEncoding.BASE64URL.encode(bytes);
+    }
+
+    /**
+     * Returns the BASE32_LENGTH character Crockford Base32 form of this {@code Uuid6}, which sorts in unsigned byte order.
+     */
+    public String toBase32() {
+        return CFLibDbKeyHashEncoding.BASE32.encode(bytes);
+    }
+
+    /**
+     * Puts the TOTAL_BYTES raw bytes of this {@code Uuid6} at the position of dst, advancing it.
+     */
+    public void writeTo(ByteBuffer dst) {
+        dst.put(bytes);
+    }
+
+    /**
+     * Writes the TOTAL_BYTES raw bytes of this {@code Uuid6}.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the TOTAL_BYTES raw bytes written by {@link #writeTo(ByteBuffer)}, advancing src past them.
+     */
+    public static CFLibUuid6 readFrom(ByteBuffer src) {
+        byte[] v = new byte[TOTAL_BYTES];
+        src.get(v);
+        return new CFLibUuid6(v);
+    }
+
+    /**
+     * Reads the TOTAL_BYTES raw bytes written by {@link #writeTo(DataOutput)}.
+     */
+    public static CFLibUuid6 readFrom(DataInput in) throws IOException {
+        byte[] v = new byte[TOTAL_BYTES];
+        in.readFully(v);
+        return new CFLibUuid6(v);
+    }
+
+    /**
+     * Serializes this {@code Uuid6} as a {@link Ser} proxy holding just its raw bytes.
+     * Streams written with the default form of this class still deserialize as before.
+     */
+    @java.io.Serial
+    private Object writeReplace() {
+        return new Ser(bytes);
+    }
+
+    /**
+     * The serialized form of a {@code Uuid6}: its TOTAL_BYTES raw bytes, with no field descriptors.
+     * A proxy keeps {@code Uuid6} immutable, where implementing Externalizable directly would need a public readExternal() on it.
+     */
+    static final class Ser implements Externalizable {
+        @java.io.Serial
+        private static final long serialVersionUID = 202610171206L;
+
+        private byte[] bytes;
+
+        public Ser() {
+        }
+
+        Ser(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.write(bytes);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            bytes = new byte[TOTAL_BYTES];
+            in.readFully(bytes);
+        }
+
+        @java.io.Serial
+        private Object readResolve() {
+            return new CFLibUuid6(bytes);
+        }
+    }
+
     /**
      * Returns a hash code for this {@code Uuid6}.
      *
@@ -21,6 +21,20 @@
 
 package server.markhome.msscf.msscf.cflib.dbutil;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -90,4 +104,193 @@ public class CFLibDbKeyHash224Test {
 		assertTrue(CFLibDbKeyHash224.compareOrdered(nullA, notNull) != 0);
 		assertTrue(CFLibDbKeyHash224.compareOrdered(notNull, nullA) != 0);
     }
+
+	@Test
+    void testGenerate() {
+		CFLibDbKeyHash224[] keys = CFLibDbKeyHash224.generate(100);
+		assertEquals(100, keys.length);
+		Set<CFLibDbKeyHash224> seen = new HashSet<CFLibDbKeyHash224>(Arrays.asList(keys));
+		assertEquals(100, seen.size());
+
+		byte[] packed = new byte[28 * 3 + 1];
+		CFLibDbKeyHash224.generate(packed, 1, 3);
+		assertEquals(0, packed[0]);
+		assertFalse(new CFLibDbKeyHash224(Arrays.copyOfRange(packed, 1, 1 + 28)).isNull());
+		assertFalse(new CFLibDbKeyHash224(Arrays.copyOfRange(packed, 1 + 2 * 28, 1 + 3 * 28)).isNull());
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(28 * 300);
+		CFLibDbKeyHash224.generate(direct, 300);
+		assertEquals(28 * 300, direct.position());
+
+		CFLibDbKeyHash224[] parallel = CFLibDbKeyHash224.generate(5000, ForkJoinPool.commonPool());
+		seen = new HashSet<CFLibDbKeyHash224>(Arrays.asList(parallel));
+		assertEquals(5000, seen.size());
+
+		// A bad range throws before any entry of dst is overwritten
+		CFLibDbKeyHash224[] dst = new CFLibDbKeyHash224[4];
+		assertThrows(IndexOutOfBoundsException.class, () -> CFLibDbKeyHash224.generate(dst, 2, 3));
+		assertThrows(IndexOutOfBoundsException.class, () -> CFLibDbKeyHash224.generate(dst, -1, 2));
+		assertArrayEquals(new CFLibDbKeyHash224[4], dst);
+		CFLibDbKeyHash224.generate(dst, 1, 2);
+		assertNull(dst[0]);
+		assertFalse(dst[2].isNull());
+		assertNull(dst[3]);
+    }
+
+	@Test
+    void testTruncatedSha512Algo() throws Exception {
+		CFLibDbKeyHash224 sha2 = CFLibDbKeyHash224.hash("payload");
+		CFLibDbKeyHash224.setHashAlgo(CFLibDbKeyHash224.HASH_ALGO_SHA512_224);
+		try {
+			assertEquals("SHA-512/224", new CFLibDbKeyHash224().getHashAlgo());
+			CFLibDbKeyHash224 truncated = CFLibDbKeyHash224.hash("payload");
+			assertNotEquals(sha2, truncated);
+			assertArrayEquals(MessageDigest.getInstance("SHA-512/224").digest("payload".getBytes("UTF-8")), truncated.getBytes());
+			assertEquals(28, new CFLibDbKeyHash224(0).getBytes().length);
+			assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHash224.setHashAlgo("MD5"));
+		}
+		finally {
+			CFLibDbKeyHash224.setHashAlgo(CFLibDbKeyHash224.HASH_ALGO);
+		}
+		assertEquals(sha2, CFLibDbKeyHash224.hash("payload"));
+    }
+
+	@Test
+    void testHashMatchesDigest() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 700; i++) {
+			sb.append("a\u00e9\u20ac\ud83d\ude00");
+		}
+		String[] texts = { "", "plain ascii", "caf\u00e9 \u20ac \ud83d\ude00", "lone \ud800 high", "lone \udc00 low\ud800", sb.toString() };
+		for (String text : texts) {
+			MessageDigest md = MessageDigest.getInstance(CFLibDbKeyHash224.HASH_ALGO);
+			assertArrayEquals(md.digest(text.getBytes("UTF-8")), CFLibDbKeyHash224.hash(text).getBytes());
+		}
+
+		int[] ints = new int[600];
+		byte[] intBytes = new byte[ints.length * 4];
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = i * 0x01010101 - 7;
+			intBytes[i * 4] = (byte) (ints[i] >>> 24);
+			intBytes[i * 4 + 1] = (byte) (ints[i] >>> 16);
+			intBytes[i * 4 + 2] = (byte) (ints[i] >>> 8);
+			intBytes[i * 4 + 3] = (byte) ints[i];
+		}
+		assertEquals(CFLibDbKeyHash224.hash(intBytes), CFLibDbKeyHash224.hash(ints));
+		assertEquals(CFLibDbKeyHash224.hash(intBytes), CFLibDbKeyHash224.hash(Arrays.copyOfRange(intBytes, 0, 5), Arrays.copyOfRange(intBytes, 5, intBytes.length)));
+
+		CFLibDbKeyHash224 a = CFLibDbKeyHash224.hash("a");
+		CFLibDbKeyHash224 b = CFLibDbKeyHash224.hash("b");
+		byte[] ab = new byte[28 * 2];
+		System.arraycopy(a.getBytes(), 0, ab, 0, 28);
+		System.arraycopy(b.getBytes(), 0, ab, 28, 28);
+		assertEquals(CFLibDbKeyHash224.hash(ab), CFLibDbKeyHash224.hash(a, b));
+    }
+
+	@Test
+    void testHashByteBuffer() {
+		byte[] payload = new byte[10000];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) (i * 31);
+		}
+		CFLibDbKeyHash224 expected = CFLibDbKeyHash224.hash(payload);
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(payload.length + 10);
+		direct.position(10);
+		direct.put(payload);
+		direct.position(10);
+		assertEquals(expected, CFLibDbKeyHash224.hash(direct));
+		assertEquals(10, direct.position());
+		assertEquals(payload.length + 10, direct.limit());
+
+		ByteBuffer heap = ByteBuffer.wrap(payload);
+		assertEquals(expected, CFLibDbKeyHash224.hash(heap));
+		assertEquals(0, heap.position());
+
+		ByteBuffer first = ByteBuffer.wrap(payload, 0, 4000);
+		ByteBuffer second = direct.duplicate().position(4010);
+		assertEquals(expected, CFLibDbKeyHash224.hash(first, second));
+		assertEquals(0, first.position());
+		assertEquals(4010, second.position());
+    }
+
+	@Test
+    void testHashFile() throws IOException {
+		byte[] payload = new byte[100000];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) (i * 7 + (i >> 8));
+		}
+		Path file = Files.createTempFile("CFLibDbKeyHash224", ".bin");
+		try {
+			Files.write(file, payload);
+			List<Long> reports = new ArrayList<Long>();
+			assertEquals(CFLibDbKeyHash224.hash(payload), CFLibDbKeyHash224.hashFile(file, (done, total) -> reports.add(done)));
+			assertEquals(Long.valueOf(payload.length), reports.get(reports.size() - 1));
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				assertEquals(CFLibDbKeyHash224.hash(Arrays.copyOfRange(payload, 1000, 51000)), CFLibDbKeyHash224.hash(channel, 1000, 50000));
+				assertEquals(0, channel.position());
+				assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHash224.hash(channel, 1000, payload.length));
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+    }
+
+	@Test
+    void testWordRepresentation() {
+		java.util.Random rnd = new java.util.Random(224);
+		CFLibDbKeyHash224[] keys = new CFLibDbKeyHash224[200];
+		byte[][] raw = new byte[keys.length][];
+		for (int i = 0; i < keys.length; i++) {
+			raw[i] = new byte[28];
+			rnd.nextBytes(raw[i]);
+			if (i % 4 == 1) {
+				// Share a prefix with the previous key so later words decide the order
+				System.arraycopy(raw[i - 1], 0, raw[i], 0, 28 - 1 - rnd.nextInt(8));
+			}
+			keys[i] = new CFLibDbKeyHash224(raw[i]);
+			assertArrayEquals(raw[i], keys[i].getBytes());
+			assertEquals(keys[i], CFLibDbKeyHash224.fromHex(keys[i].toString()));
+			assertEquals(new CFLibDbKeyHash224(raw[i]).hashCode(), keys[i].hashCode());
+		}
+		for (int i = 0; i < keys.length; i++) {
+			for (int j = 0; j < keys.length; j++) {
+				int unsigned = 0;
+				int signed = 0;
+				for (int b = 0; b < 28 && unsigned == 0; b++) {
+					unsigned = Integer.compare(raw[i][b] & 0xFF, raw[j][b] & 0xFF);
+					signed = Integer.compare(raw[i][b], raw[j][b]);
+				}
+				assertEquals(unsigned, Integer.signum(keys[i].compareTo(keys[j])));
+				assertEquals(signed, Integer.signum(CFLibDbKeyHash224.compareOrdered(keys[i], keys[j])));
+				assertEquals(i == j || Arrays.equals(raw[i], raw[j]), keys[i].equals(keys[j]));
+			}
+		}
+
+		byte[] copy = keys[0].getBytes();
+		copy[0] ^= 1;
+		assertArrayEquals(raw[0], keys[0].getBytes());
+		byte[] dst = new byte[28 + 2];
+		keys[0].copyBytes(dst, 1);
+		assertArrayEquals(raw[0], Arrays.copyOfRange(dst, 1, 1 + 28));
+
+		CFLibDbKeyHash224 unset = new CFLibDbKeyHash224();
+		assertNull(unset.getBytes());
+		assertTrue(unset.isNull());
+		assertEquals("null", unset.toString());
+		assertNotEquals(CFLibDbKeyHash224.nullGet(), unset);
+		unset.setBytes(raw[1]);
+		assertEquals(keys[1], unset);
+		unset.setBytes(new byte[] { 1, 2 }, 0, 2);
+		assertEquals(1, unset.getBytes()[0]);
+		assertEquals(raw[1][28 - 1], unset.getBytes()[28 - 1]);
+
+		assertArrayEquals(new byte[] { 0x12, 0x34, 0x56, 0x78 }, Arrays.copyOf(CFLibDbKeyHash224.fromInt(0x12345678).getBytes(), 4));
+		// The hash covers every word, so keys that differ past the first four bytes hash apart
+		assertNotEquals(CFLibDbKeyHash224.fromInt(0x12345678).hashCode(), CFLibDbKeyHash224.fromInt(0x12345679).hashCode());
+		CFLibDbKeyHash512 wide = CFLibDbKeyHash512.hash("wide");
+		assertArrayEquals(Arrays.copyOf(wide.getBytes(), 28), new CFLibDbKeyHash224(wide).getBytes());
+		assertTrue(new CFLibDbKeyHash224((CFLibDbKeyHash512) null).isNull());
+    }
 }
@@ -21,6 +21,20 @@
 
 package server.markhome.msscf.msscf.cflib.dbutil;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -90,4 +104,193 @@ public class CFLibDbKeyHash256Test {
 		assertTrue(CFLibDbKeyHash256.compareOrdered(nullA, notNull) != 0);
 		assertTrue(CFLibDbKeyHash256.compareOrdered(notNull, nullA) != 0);
     }
+
+	@Test
+    void testGenerate() {
+		CFLibDbKeyHash256[] keys = CFLibDbKeyHash256.generate(100);
+		assertEquals(100, keys.length);
+		Set<CFLibDbKeyHash256> seen = new HashSet<CFLibDbKeyHash256>(Arrays.asList(keys));
+		assertEquals(100, seen.size());
+
+		byte[] packed = new byte[32 * 3 + 1];
+		CFLibDbKeyHash256.generate(packed, 1, 3);
+		assertEquals(0, packed[0]);
+		assertFalse(new CFLibDbKeyHash256(Arrays.copyOfRange(packed, 1, 1 + 32)).isNull());
+		assertFalse(new CFLibDbKeyHash256(Arrays.copyOfRange(packed, 1 + 2 * 32, 1 + 3 * 32)).isNull());
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(32 * 300);
+		CFLibDbKeyHash256.generate(direct, 300);
+		assertEquals(32 * 300, direct.position());
+
+		CFLibDbKeyHash256[] parallel = CFLibDbKeyHash256.generate(5000, ForkJoinPool.commonPool());
+		seen = new HashSet<CFLibDbKeyHash256>(Arrays.asList(parallel));
+		assertEquals(5000, seen.size());
+
+		// A bad range throws before any entry of dst is overwritten
+		CFLibDbKeyHash256[] dst = new CFLibDbKeyHash256[4];
+		assertThrows(IndexOutOfBoundsException.class, () -> CFLibDbKeyHash256.generate(dst, 2, 3));
+		assertThrows(IndexOutOfBoundsException.class, () -> CFLibDbKeyHash256.generate(dst, -1, 2));
+		assertArrayEquals(new CFLibDbKeyHash256[4], dst);
+		CFLibDbKeyHash256.generate(dst, 1, 2);
+		assertNull(dst[0]);
+		assertFalse(dst[2].isNull());
+		assertNull(dst[3]);
+    }
+
+	@Test
+    void testTruncatedSha512Algo() throws Exception {
+		CFLibDbKeyHash256 sha2 = CFLibDbKeyHash256.hash("payload");
+		CFLibDbKeyHash256.setHashAlgo(CFLibDbKeyHash256.HASH_ALGO_SHA512_256);
+		try {
+			assertEquals("SHA-512/256", new CFLibDbKeyHash256().getHashAlgo());
+			CFLibDbKeyHash256 truncated = CFLibDbKeyHash256.hash("payload");
+			assertNotEquals(sha2, truncated);
+			assertArrayEquals(MessageDigest.getInstance("SHA-512/256").digest("payload".getBytes("UTF-8")), truncated.getBytes());
+			assertEquals(32, new CFLibDbKeyHash256(0).getBytes().length);
+			assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHash256.setHashAlgo("MD5"));
+		}
+		finally {
+			CFLibDbKeyHash256.setHashAlgo(CFLibDbKeyHash256.HASH_ALGO);
+		}
+		assertEquals(sha2, CFLibDbKeyHash256.hash("payload"));
+    }
+
+	@Test
+    void testHashMatchesDigest() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 700; i++) {
+			sb.append("a\u00e9\u20ac\ud83d\ude00");
+		}
+		String[] texts = { "", "plain ascii", "caf\u00e9 \u20ac \ud83d\ude00", "lone \ud800 high", "lone \udc00 low\ud800", sb.toString() };
+		for (String text : texts) {
+			MessageDigest md = MessageDigest.getInstance(CFLibDbKeyHash256.HASH_ALGO);
+			assertArrayEquals(md.digest(text.getBytes("UTF-8")), CFLibDbKeyHash256.hash(text).getBytes());
+		}
+
+		int[] ints = new int[600];
+		byte[] intBytes = new byte[ints.length * 4];
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = i * 0x01010101 - 7;
+			intBytes[i * 4] = (byte) (ints[i] >>> 24);
+			intBytes[i * 4 + 1] = (byte) (ints[i] >>> 16);
+			intBytes[i * 4 + 2] = (byte) (ints[i] >>> 8);
+			intBytes[i * 4 + 3] = (byte) ints[i];
+		}
+		assertEquals(CFLibDbKeyHash256.hash(intBytes), CFLibDbKeyHash256.hash(ints));
+		assertEquals(CFLibDbKeyHash256.hash(intBytes), CFLibDbKeyHash256.hash(Arrays.copyOfRange(intBytes, 0, 5), Arrays.copyOfRange(intBytes, 5, intBytes.length)));
+
+		CFLibDbKeyHash256 a = CFLibDbKeyHash256.hash("a");
+		CFLibDbKeyHash256 b = CFLibDbKeyHash256.hash("b");
+		byte[] ab = new byte[32 * 2];
+		System.arraycopy(a.getBytes(), 0, ab, 0, 32);
+		System.arraycopy(b.getBytes(), 0, ab, 32, 32);
+		assertEquals(CFLibDbKeyHash256.hash(ab), CFLibDbKeyHash256.hash(a, b));
+    }
+
+	@Test
+    void testHashByteBuffer() {
+		byte[] payload = new byte[10000];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) (i * 31);
+		}
+		CFLibDbKeyHash256 expected = CFLibDbKeyHash256.hash(payload);
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(payload.length + 10);
+		direct.position(10);
+		direct.put(payload);
+		direct.position(10);
+		assertEquals(expected, CFLibDbKeyHash256.hash(direct));
+		assertEquals(10, direct.position());
+		assertEquals(payload.length + 10, direct.limit());
+
+		ByteBuffer heap = ByteBuffer.wrap(payload);
+		assertEquals(expected, CFLibDbKeyHash256.hash(heap));
+		assertEquals(0, heap.position());
+
+		ByteBuffer first = ByteBuffer.wrap(payload, 0, 4000);
+		ByteBuffer second = direct.duplicate().position(4010);
+		assertEquals(expected, CFLibDbKeyHash256.hash(first, second));
+		assertEquals(0, first.position());
+		assertEquals(4010, second.position());
+    }
+
+	@Test
+    void testHashFile() throws IOException {
+		byte[] payload = new byte[100000];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) (i * 7 + (i >> 8));
+		}
+		Path file = Files.createTempFile("CFLibDbKeyHash256", ".bin");
+		try {
+			Files.write(file, payload);
+			List<Long> reports = new ArrayList<Long>();
+			assertEquals(CFLibDbKeyHash256.hash(payload), CFLibDbKeyHash256.hashFile(file, (done, total) -> reports.add(done)));
+			assertEquals(Long.valueOf(payload.length), reports.get(reports.size() - 1));
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				assertEquals(CFLibDbKeyHash256.hash(Arrays.copyOfRange(payload, 1000, 51000)), CFLibDbKeyHash256.hash(channel, 1000, 50000));
+				assertEquals(0, channel.position());
+				assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHash256.hash(channel, 1000, payload.length));
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+    }
+
+	@Test
+    void testWordRepresentation() {
+		java.util.Random rnd = new java.util.Random(256);
+		CFLibDbKeyHash256[] keys = new CFLibDbKeyHash256[200];
+		byte[][] raw = new byte[keys.length][];
+		for (int i = 0; i < keys.length; i++) {
+			raw[i] = new byte[32];
+			rnd.nextBytes(raw[i]);
+			if (i % 4 == 1) {
+				// Share a prefix with the previous key so later words decide the order
+				System.arraycopy(raw[i - 1], 0, raw[i], 0, 32 - 1 - rnd.nextInt(8));
+			}
+			keys[i] = new CFLibDbKeyHash256(raw[i]);
+			assertArrayEquals(raw[i], keys[i].getBytes());
+			assertEquals(keys[i], CFLibDbKeyHash256.fromHex(keys[i].toString()));
+			assertEquals(new CFLibDbKeyHash256(raw[i]).hashCode(), keys[i].hashCode());
+		}
+		for (int i = 0; i < keys.length; i++) {
+			for (int j = 0; j < keys.length; j++) {
+				int unsigned = 0;
+				int signed = 0;
+				for (int b = 0; b < 32 && unsigned == 0; b++) {
+					unsigned = Integer.compare(raw[i][b] & 0xFF, raw[j][b] & 0xFF);
+					signed = Integer.compare(raw[i][b], raw[j][b]);
+				}
+				assertEquals(unsigned, Integer.signum(keys[i].compareTo(keys[j])));
+				assertEquals(signed, Integer.signum(CFLibDbKeyHash256.compareOrdered(keys[i], keys[j])));
+				assertEquals(i == j || Arrays.equals(raw[i], raw[j]), keys[i].equals(keys[j]));
+			}
+		}
+
+		byte[] copy = keys[0].getBytes();
+		copy[0] ^= 1;
+		assertArrayEquals(raw[0], keys[0].getBytes());
+		byte[] dst = new byte[32 + 2];
+		keys[0].copyBytes(dst, 1);
+		assertArrayEquals(raw[0], Arrays.copyOfRange(dst, 1, 1 + 32));
+
+		CFLibDbKeyHash256 unset = new CFLibDbKeyHash256();
+		assertNull(unset.getBytes());
+		assertTrue(unset.isNull());
+		assertEquals("null", unset.toString());
+		assertNotEquals(CFLibDbKeyHash256.nullGet(), unset);
+		unset.setBytes(raw[1]);
+		assertEquals(keys[1], unset);
+		unset.setBytes(new byte[] { 1, 2 }, 0, 2);
+		assertEquals(1, unset.getBytes()[0]);
+		assertEquals(raw[1][32 - 1], unset.getBytes()[32 - 1]);
+
+		assertArrayEquals(new byte[] { 0x12, 0x34, 0x56, 0x78 }, Arrays.copyOf(CFLibDbKeyHash256.fromInt(0x12345678).getBytes(), 4));
+		// The hash covers every word, so keys that differ past the first four bytes hash apart
+		assertNotEquals(CFLibDbKeyHash256.fromInt(0x12345678).hashCode(), CFLibDbKeyHash256.fromInt(0x12345679).hashCode());
+		CFLibDbKeyHash512 wide = CFLibDbKeyHash512.hash("wide");
+		assertArrayEquals(Arrays.copyOf(wide.getBytes(), 32), new CFLibDbKeyHash256(wide).getBytes());
+		assertTrue(new CFLibDbKeyHash256((CFLibDbKeyHash512) null).isNull());
+    }
 }
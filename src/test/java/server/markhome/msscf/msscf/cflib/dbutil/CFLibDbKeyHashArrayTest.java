@@ -0,0 +1,152 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashArrayTest {
+
+    private static List<CFLibDbKeyHash224> randomKeys(int n, long seed) {
+		Random rnd = new Random(seed);
+		List<CFLibDbKeyHash224> keys = new ArrayList<CFLibDbKeyHash224>();
+		for (int i = 0; i < n; i++) {
+			byte[] b = new byte[CFLibDbKeyHash224.HASH_LENGTH];
+			rnd.nextBytes(b);
+			if (i % 5 == 0 && i > 0) {
+				// Force ties on leading words, and some exact duplicates
+				System.arraycopy(keys.get(i - 1).getBytes(), 0, b, 0, i % 10 == 0 ? b.length : 20);
+			}
+			keys.add(new CFLibDbKeyHash224(b));
+		}
+		return keys;
+    }
+
+    @Test
+    void testAccessorsAndViews() {
+		List<CFLibDbKeyHash224> keys = randomKeys(100, 1);
+		CFLibDbKeyHash224Array a = new CFLibDbKeyHash224Array();
+		for (CFLibDbKeyHash224 k : keys) {
+			a.add(k);
+		}
+		assertEquals(100, a.size());
+		assertEquals(4, a.getStride());
+		CFLibDbKeyHash224 view = new CFLibDbKeyHash224();
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(keys.get(i), a.get(i));
+			assertSame(view, a.get(i, view));
+			assertEquals(keys.get(i), view);
+			assertEquals(keys.get(i).toString(), a.toString(i));
+			assertEquals(keys.get(i).toString(), view.toString());
+			assertEquals(keys.get(i).hashCode(), view.hashCode());
+			byte[] b = new byte[CFLibDbKeyHash224.HASH_LENGTH];
+			a.copyBytes(i, b, 0);
+			assertArrayEquals(keys.get(i).getBytes(), b);
+		}
+		assertEquals(keys, a.toList());
+		assertEquals(keys, new CFLibDbKeyHash224Array(keys).toList());
+		assertEquals(CFLibDbKeyHash224.toCFLibDbKeyHash224Set(a.toHexArray()), a.toSet());
+		assertEquals(keys, CFLibDbKeyHash224.toCFLibDbKeyHash224List(a.toHexArray()));
+		assertEquals(keys, CFLibDbKeyHash224.toCFLibDbKeyHash224Array(a.toHexArray()).toList());
+
+		CFLibDbKeyHash224Array packed = new CFLibDbKeyHash224Array(0);
+		packed.addAll(a.toBytes(), 0, a.size());
+		assertEquals(keys, packed.toList());
+		a.set(3, keys.get(4));
+		assertEquals(keys.get(4), a.get(3));
+		assertThrows(IndexOutOfBoundsException.class, () -> a.get(100));
+		assertThrows(NullPointerException.class, () -> a.add(null));
+    }
+
+    @Test
+    void testSortAndSearch() {
+		for (int n : new int[] { 0, 1, 2, 11, 12, 13, 500, 3000 }) {
+			List<CFLibDbKeyHash224> keys = randomKeys(n, n);
+			CFLibDbKeyHash224Array a = new CFLibDbKeyHash224Array(keys);
+			a.sort();
+			List<CFLibDbKeyHash224> expected = new ArrayList<CFLibDbKeyHash224>(keys);
+			Collections.sort(expected);
+			assertEquals(expected, a.toList());
+			for (CFLibDbKeyHash224 k : keys) {
+				int i = a.binarySearch(k);
+				assertTrue(i >= 0);
+				assertEquals(k, a.get(i));
+			}
+
+			a.sortOrdered();
+			expected.sort(CFLibDbKeyHash224.getComparator());
+			assertEquals(expected, a.toList());
+			for (int i = 0; i + 1 < n; i++) {
+				assertTrue(a.compareOrdered(i, i + 1) <= 0);
+				assertTrue(CFLibDbKeyHash224.compareOrdered(a.get(i), a.get(i + 1)) <= 0);
+			}
+			for (CFLibDbKeyHash224 k : keys) {
+				assertEquals(k, a.get(a.binarySearchOrdered(k)));
+			}
+		}
+		CFLibDbKeyHash224Array a = new CFLibDbKeyHash224Array(Arrays.asList(CFLibDbKeyHash224.fromInt(1), CFLibDbKeyHash224.fromInt(3)));
+		assertEquals(-2, a.binarySearch(CFLibDbKeyHash224.fromInt(2)));
+		assertEquals(-3, a.binarySearch(CFLibDbKeyHash224.fromInt(4)));
+		assertTrue(a.compare(0, 1) < 0);
+    }
+
+    @Test
+    void testRejectedNulls() {
+		CFLibDbKeyHash224 k = CFLibDbKeyHash224.fromInt(7);
+		CFLibDbKeyHash224Array a = new CFLibDbKeyHash224Array();
+		a.add(k);
+		a.sort();
+		assertThrows(NullPointerException.class, () -> a.add(null));
+		assertEquals(1, a.size());
+		assertThrows(NullPointerException.class, () -> a.addAll(Arrays.asList(k, null, k)));
+		assertEquals(1, a.size());
+		assertThrows(NullPointerException.class, () -> a.addAll(new CFLibDbKeyHash224[] { k, k, null }, 0, 3));
+		assertEquals(1, a.size());
+		assertNotNull(a.getOrder());
+		a.addAll(new CFLibDbKeyHash224[] { null, k }, 1, 1);
+		assertEquals(List.of(k, k), a.toList());
+		assertThrows(NullPointerException.class, () -> a.set(0, null));
+		assertEquals(List.of(k, k), a.toList());
+    }
+
+    @Test
+    void testEveryWidth() {
+		assertEquals(2, new CFLibDbKeyHash128Array().getStride());
+		assertEquals(3, new CFLibDbKeyHash160Array().getStride());
+		assertEquals(4, new CFLibDbKeyHash256Array().getStride());
+		assertEquals(6, new CFLibDbKeyHash384Array().getStride());
+		CFLibDbKeyHash512Array a = new CFLibDbKeyHash512Array(Arrays.asList(CFLibDbKeyHash512.generate(50)));
+		a.sort();
+		for (int i = 0; i + 1 < a.size(); i++) {
+			assertTrue(a.get(i).compareTo(a.get(i + 1)) < 0);
+		}
+		CFLibDbKeyHash160Array b = new CFLibDbKeyHash160Array();
+		b.addAll(CFLibDbKeyHash160.generate(5), 1, 3);
+		assertEquals(3, b.size());
+    }
+}
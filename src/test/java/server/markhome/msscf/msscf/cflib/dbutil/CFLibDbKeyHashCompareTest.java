@@ -0,0 +1,228 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashCompareTest {
+
+    private static final byte[] CRITICAL = { 0x00, 0x01, 0x7f, (byte) 0x80, (byte) 0x81, (byte) 0xfe, (byte) 0xff };
+
+    /**
+     * The byte-at-a-time reference: unsigned for the natural order, signed for compareOrdered().
+     */
+    private static int reference(byte[] a, byte[] b, boolean signed) {
+		for (int i = 0; i < a.length; i++) {
+			int x = signed ? a[i] : a[i] & 0xff;
+			int y = signed ? b[i] : b[i] & 0xff;
+			if (x != y) {
+				return x < y ? -1 : 1;
+			}
+		}
+		return 0;
+    }
+
+    /**
+     * Every critical byte value at every position, over backgrounds of 0x00, 0x80 and 0xff, so each word boundary and sign bit is crossed.
+     */
+    private static List<byte[]> patterns(int length) {
+		List<byte[]> r = new ArrayList<byte[]>();
+		for (byte background : new byte[] { 0x00, (byte) 0x80, (byte) 0xff }) {
+			byte[] plain = new byte[length];
+			Arrays.fill(plain, background);
+			r.add(plain);
+			for (int p = 0; p < length; p++) {
+				for (byte v : CRITICAL) {
+					if (v != background) {
+						byte[] b = plain.clone();
+						b[p] = v;
+						r.add(b);
+					}
+				}
+			}
+		}
+		return r;
+    }
+
+    private static <T extends CFLibDbKeyHashBase<T>> void checkWidth(int length, Function<byte[], T> ctor, IntFunction<T[]> arrays,
+		Comparator<T> ordered, Function<List<T>, CFLibDbKeyHashArray<T>> columns)
+    {
+		List<byte[]> bytes = patterns(length);
+		int n = bytes.size();
+		T[] keys = arrays.apply(n);
+		for (int i = 0; i < n; i++) {
+			keys[i] = ctor.apply(bytes.get(i));
+			boolean zero = reference(bytes.get(i), new byte[length], false) == 0;
+			assertEquals(zero, keys[i].isNull(), "isNull width " + length + " key " + keys[i]);
+		}
+		CFLibDbKeyHashArray<T> a = columns.apply(Arrays.asList(keys));
+		int[] natural = new int[n];
+		int[] signed = new int[n];
+		for (int j = 0; j < n; j++) {
+			T probe = keys[j];
+			a.compareAll(probe, natural);
+			a.compareAllOrdered(probe, signed);
+			int less = 0;
+			int lessSigned = 0;
+			for (int i = 0; i < n; i++) {
+				T k = keys[i];
+				String msg = "width " + length + " " + k + " vs " + probe;
+				int expected = reference(bytes.get(i), bytes.get(j), false);
+				int expectedSigned = reference(bytes.get(i), bytes.get(j), true);
+				assertEquals(expected, k.compareTo(probe), msg);
+				assertEquals(expected, k.compare(k, probe), msg);
+				assertEquals(expected, natural[i], msg);
+				assertEquals(expectedSigned, ordered.compare(k, probe), msg);
+				assertEquals(expectedSigned, signed[i], msg);
+				for (CFLibDbKeyHashOrder order : CFLibDbKeyHashOrder.values()) {
+					assertEquals(order.isSigned() ? expectedSigned : expected, order.compare(k, probe), msg + " " + order);
+				}
+				assertEquals(expected == 0, k.equals(probe), msg);
+				if (expected == 0) {
+					assertEquals(k.hashCode(), probe.hashCode(), msg);
+				}
+				less += expected < 0 ? 1 : 0;
+				lessSigned += expectedSigned < 0 ? 1 : 0;
+			}
+			assertEquals(less, a.countLess(probe));
+			assertEquals(lessSigned, a.countLessOrdered(probe));
+			assertEquals(j, a.indexOf(probe));
+			assertEquals(j, a.lastIndexOf(probe));
+		}
+    }
+
+    @Test
+    void testWordComparisonsMatchByteReference() {
+		checkWidth(CFLibDbKeyHash128.HASH_LENGTH, CFLibDbKeyHash128::new, CFLibDbKeyHash128[]::new, CFLibDbKeyHash128.getComparator(),
+			CFLibDbKeyHash128Array::new);
+		checkWidth(CFLibDbKeyHash160.HASH_LENGTH, CFLibDbKeyHash160::new, CFLibDbKeyHash160[]::new, CFLibDbKeyHash160.getComparator(),
+			CFLibDbKeyHash160Array::new);
+		checkWidth(CFLibDbKeyHash224.HASH_LENGTH, CFLibDbKeyHash224::new, CFLibDbKeyHash224[]::new, CFLibDbKeyHash224.getComparator(),
+			CFLibDbKeyHash224Array::new);
+		checkWidth(CFLibDbKeyHash256.HASH_LENGTH, CFLibDbKeyHash256::new, CFLibDbKeyHash256[]::new, CFLibDbKeyHash256.getComparator(),
+			CFLibDbKeyHash256Array::new);
+		checkWidth(CFLibDbKeyHash384.HASH_LENGTH, CFLibDbKeyHash384::new, CFLibDbKeyHash384[]::new, CFLibDbKeyHash384.getComparator(),
+			CFLibDbKeyHash384Array::new);
+		checkWidth(CFLibDbKeyHash512.HASH_LENGTH, CFLibDbKeyHash512::new, CFLibDbKeyHash512[]::new, CFLibDbKeyHash512.getComparator(),
+			CFLibDbKeyHash512Array::new);
+    }
+
+    @Test
+    void testNullsAndUnsetKeys() {
+		CFLibDbKeyHash256 k = CFLibDbKeyHash256.fromInt(5);
+		CFLibDbKeyHash256 unset = new CFLibDbKeyHash256();
+		assertTrue(unset.isNull());
+		assertNotEquals(unset, new CFLibDbKeyHash256(new byte[CFLibDbKeyHash256.HASH_LENGTH]));
+		assertEquals(-1, k.compare(k, null));
+		assertEquals(1, k.compare(null, k));
+		assertEquals(0, k.compare(null, null));
+		assertEquals(1, CFLibDbKeyHash256.compareOrdered(k, null));
+		assertEquals(-1, CFLibDbKeyHash256.compareOrdered(null, k));
+		assertEquals(-1, CFLibDbKeyHash256.NULLS_FIRST.compare(null, k));
+		assertEquals(1, CFLibDbKeyHash256.NULLS_LAST.compare(null, k));
+		assertEquals(1, CFLibDbKeyHashOrder.SIGNED_NULLS_LAST.compare(null, k));
+		assertEquals(0, CFLibDbKeyHashOrder.NATURAL_NULLS_FIRST.compare(null, null));
+		assertSame(CFLibDbKeyHash256.getComparator(), CFLibDbKeyHash256.getComparator());
+		assertSame(CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST, CFLibDbKeyHash512.getComparator());
+		assertSame(CFLibDbKeyHash256.NULLS_LAST, CFLibDbKeyHash256.getComparator(CFLibDbKeyHashOrder.NATURAL_NULLS_LAST));
+		CFLibDbKeyHash256Array a = new CFLibDbKeyHash256Array();
+		a.add(k);
+		a.add(k);
+		assertEquals(0, a.indexOf(k));
+		assertEquals(1, a.indexOf(k, 1));
+		assertEquals(-1, a.indexOf(k, 2));
+		assertEquals(1, a.lastIndexOf(k));
+		assertFalse(a.contains(CFLibDbKeyHash256.fromInt(6)));
+		assertThrows(NullPointerException.class, () -> a.indexOf(null));
+		assertThrows(NullPointerException.class, () -> a.compareAll(null, new int[2]));
+		assertThrows(IllegalArgumentException.class, () -> a.compareAll(k, new int[1]));
+    }
+
+    /**
+     * The documented hash of the key bytes, computed independently of the key classes.
+     */
+    private static int referenceHash(byte[] b) {
+		long h = 0L;
+		for (int w = 0; w < (b.length + 7) / 8; w++) {
+			long word = 0L;
+			for (int i = 0; i < 8; i++) {
+				int at = 8 * w + i;
+				word = (word << 8) | (at < b.length ? b[at] & 0xFF : 0);
+			}
+			h = (h ^ word) * 0x9E3779B97F4A7C15L;
+		}
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return (int) h;
+    }
+
+    @Test
+    void testHashCodeMixesEveryWord() {
+		for (byte[] b : patterns(CFLibDbKeyHash160.HASH_LENGTH)) {
+			assertEquals(referenceHash(b), new CFLibDbKeyHash160(b).hashCode());
+		}
+		for (byte[] b : patterns(CFLibDbKeyHash512.HASH_LENGTH)) {
+			assertEquals(referenceHash(b), new CFLibDbKeyHash512(b).hashCode());
+		}
+		// fromInt() keys differ only in bytes 0-3 and sequential keys only in the last bytes; both must spread over a power of two table
+		int n = 1 << 16;
+		int[] fromInt = new int[n];
+		int[] sequential = new int[n];
+		byte[] b = new byte[CFLibDbKeyHash256.HASH_LENGTH];
+		for (int i = 0; i < n; i++) {
+			fromInt[i] = CFLibDbKeyHash256.fromInt(i).hashCode();
+			b[b.length - 2] = (byte) (i >>> 8);
+			b[b.length - 1] = (byte) i;
+			sequential[i] = new CFLibDbKeyHash256(b).hashCode();
+		}
+		for (int[] hashes : new int[][] { fromInt, sequential }) {
+			int[] buckets = new int[n];
+			int distinct = (int) Arrays.stream(hashes).distinct().count();
+			assertTrue(distinct > n - 8, "distinct " + distinct);
+			for (int h : hashes) {
+				buckets[(h ^ (h >>> 16)) & (n - 1)]++;
+			}
+			// A uniform hash leaves about n/e buckets empty and no bucket with more than about ten keys
+			int empty = (int) Arrays.stream(buckets).filter(c -> c == 0).count();
+			int max = Arrays.stream(buckets).max().getAsInt();
+			assertTrue(empty < n * 0.40 && empty > n * 0.34, "empty " + empty);
+			assertTrue(max <= 12, "max " + max);
+		}
+		CFLibDbKeyHash256 view = new CFLibDbKeyHash256(b);
+		int before = view.hashCode();
+		view.setBytes(new byte[CFLibDbKeyHash256.HASH_LENGTH]);
+		assertNotEquals(before, view.hashCode());
+		assertEquals(CFLibDbKeyHash256.nullGet().hashCode(), view.hashCode());
+    }
+}
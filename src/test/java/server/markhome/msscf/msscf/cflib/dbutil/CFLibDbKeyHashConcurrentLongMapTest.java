@@ -0,0 +1,211 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashConcurrentLongMapTest {
+
+    private static CFLibDbKeyHash160 key(int i) {
+		// Alternate fromInt keys, which differ in one word, with digest keys
+		return i % 2 == 0 ? CFLibDbKeyHash160.fromInt(i) : CFLibDbKeyHash160.hash(Integer.toString(i).getBytes());
+    }
+
+    private static void runThreads(int count, java.util.function.IntConsumer body) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < count; t++) {
+			final int id = t;
+			Thread th = new Thread(() -> {
+				try {
+					start.await();
+					body.accept(id);
+				}
+				catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			th.start();
+			threads.add(th);
+		}
+		start.countDown();
+		for (Thread th : threads) {
+			th.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+    }
+
+    @Test
+    void testMatchesHashMap() {
+		CFLibDbKeyHashConcurrentLongMap<CFLibDbKeyHash160> map = CFLibDbKeyHash160.newConcurrentLongMap(0);
+		Map<CFLibDbKeyHash160, Long> ref = new HashMap<CFLibDbKeyHash160, Long>();
+		Random rnd = new Random(3);
+		for (int op = 0; op < 300000; op++) {
+			CFLibDbKeyHash160 k = key(rnd.nextInt(5000));
+			long v = rnd.nextInt(1 << 20);
+			switch (rnd.nextInt(5)) {
+			case 0:
+				assertEquals(ref.getOrDefault(k, -1L).longValue(), map.put(k, v));
+				ref.put(k, v);
+				break;
+			case 1:
+				assertEquals(ref.getOrDefault(k, -1L).longValue(), map.putIfAbsent(k, v));
+				ref.putIfAbsent(k, v);
+				break;
+			case 2:
+				Long prior = ref.remove(k);
+				assertEquals(prior == null ? -1L : prior.longValue(), map.remove(k));
+				break;
+			case 3:
+				Long cur = ref.get(k);
+				assertEquals(cur != null && cur.longValue() == v, map.remove(k, v));
+				if (cur != null && cur.longValue() == v) {
+					ref.remove(k);
+				}
+				break;
+			default:
+				assertEquals(ref.getOrDefault(k, -1L).longValue(), map.get(k));
+			}
+			assertEquals(ref.size(), map.size());
+		}
+		Map<CFLibDbKeyHash160, Long> seen = new HashMap<CFLibDbKeyHash160, Long>();
+		map.forEach((k, v) -> assertNull(seen.put(k.deepClone(), v)));
+		assertEquals(ref, seen);
+		assertEquals(-1L, map.get(CFLibDbKeyHash160.nullGet()));
+		map.put(CFLibDbKeyHash160.nullGet(), 5L);
+		assertEquals(5L, map.get(CFLibDbKeyHash160.nullGet()));
+		assertThrows(IllegalArgumentException.class, () -> map.put(key(1), -1L));
+		assertThrows(IllegalArgumentException.class, () -> map.put(key(1), CFLibDbKeyHashConcurrentLongMap.MAX_VALUE + 1));
+		assertThrows(NullPointerException.class, () -> map.get(null));
+    }
+
+    @Test
+    void testDisjointWritersThroughResizes() throws InterruptedException {
+		final int threads = 4;
+		final int keysPerThread = 20000;
+		CFLibDbKeyHashConcurrentLongMap<CFLibDbKeyHash160> map = CFLibDbKeyHash160.newConcurrentLongMap(0);
+		List<Map<CFLibDbKeyHash160, Long>> models = new ArrayList<Map<CFLibDbKeyHash160, Long>>();
+		for (int t = 0; t < threads; t++) {
+			models.add(new HashMap<CFLibDbKeyHash160, Long>());
+		}
+		runThreads(threads, id -> {
+			Map<CFLibDbKeyHash160, Long> model = models.get(id);
+			Random rnd = new Random(id);
+			for (int op = 0; op < 200000; op++) {
+				CFLibDbKeyHash160 k = key(id + threads * rnd.nextInt(keysPerThread));
+				long v = rnd.nextInt(Integer.MAX_VALUE);
+				int which = rnd.nextInt(10);
+				if (which < 5) {
+					assertEquals(model.getOrDefault(k, -1L).longValue(), map.put(k, v));
+					model.put(k, v);
+				}
+				else if (which < 7) {
+					Long prior = model.remove(k);
+					assertEquals(prior == null ? -1L : prior.longValue(), map.remove(k));
+				}
+				else {
+					assertEquals(model.getOrDefault(k, -1L).longValue(), map.get(k));
+				}
+			}
+		});
+		Map<CFLibDbKeyHash160, Long> all = new HashMap<CFLibDbKeyHash160, Long>();
+		for (Map<CFLibDbKeyHash160, Long> m : models) {
+			all.putAll(m);
+		}
+		assertEquals(all.size(), map.size());
+		for (Map.Entry<CFLibDbKeyHash160, Long> e : all.entrySet()) {
+			assertEquals(e.getValue().longValue(), map.get(e.getKey()));
+		}
+		Map<CFLibDbKeyHash160, Long> seen = new HashMap<CFLibDbKeyHash160, Long>();
+		map.forEach((k, v) -> assertNull(seen.put(k.deepClone(), v)));
+		assertEquals(all, seen);
+    }
+
+    @Test
+    void testContendedPutIfAbsentHasOneWinner() throws InterruptedException {
+		final int threads = 4;
+		final int keys = 30000;
+		CFLibDbKeyHashConcurrentLongMap<CFLibDbKeyHash160> map = CFLibDbKeyHash160.newConcurrentLongMap(16);
+		ConcurrentHashMap<Integer, Long> winners = new ConcurrentHashMap<Integer, Long>();
+		runThreads(threads, id -> {
+			for (int round = 0; round < 3; round++) {
+				for (int i = 0; i < keys; i++) {
+					int n = (i * 7919 + id * 131) % keys;
+					long mine = (long) n * threads + id;
+					long prior = map.putIfAbsent(key(n), mine);
+					if (prior == -1L) {
+						assertNull(winners.put(n, mine), "two winners for " + n);
+					}
+					else {
+						// Nothing is removed, so the winning value never changes
+						assertEquals(map.get(key(n)), prior);
+						assertEquals(n, prior / threads);
+					}
+				}
+			}
+		});
+		assertEquals(keys, winners.size());
+		assertEquals(keys, map.size());
+		for (Map.Entry<Integer, Long> e : winners.entrySet()) {
+			assertEquals(e.getValue().longValue(), map.get(key(e.getKey())));
+		}
+    }
+
+    @Test
+    void testRemoveAndReinsertRace() throws InterruptedException {
+		final int threads = 4;
+		final int keys = 512;
+		CFLibDbKeyHashConcurrentLongMap<CFLibDbKeyHash160> map = CFLibDbKeyHash160.newConcurrentLongMap(0);
+		runThreads(threads, id -> {
+			Random rnd = new Random(100 + id);
+			for (int op = 0; op < 300000; op++) {
+				int n = rnd.nextInt(keys);
+				CFLibDbKeyHash160 k = key(n);
+				if (rnd.nextBoolean()) {
+					map.putIfAbsent(k, n);
+				}
+				else {
+					map.remove(k, n);
+				}
+				long v = map.get(k);
+				// Every value ever stored for a key is the key's own number
+				assertTrue(v == -1L || v == n, "key " + n + " read " + v);
+			}
+		});
+		final long[] count = new long[1];
+		map.forEach((k, v) -> count[0]++);
+		assertEquals(count[0], map.size());
+    }
+}
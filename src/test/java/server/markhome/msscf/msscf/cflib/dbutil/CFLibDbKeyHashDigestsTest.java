@@ -0,0 +1,118 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashDigestsTest {
+
+    static class CountingProvider implements CFLibDbKeyHashDigestProvider {
+		final AtomicInteger created = new AtomicInteger();
+		final String algo;
+
+		CountingProvider(String algo) {
+			this.algo = algo;
+		}
+
+		@Override
+		public String getName() {
+			return "counting";
+		}
+
+		@Override
+		public boolean supports(int hashLength) {
+			return hashLength == 16;
+		}
+
+		@Override
+		public MessageDigest newDigest(int hashLength, String ignored) throws NoSuchAlgorithmException {
+			created.incrementAndGet();
+			return MessageDigest.getInstance(algo);
+		}
+    }
+
+    @Test
+    void testDefaultProvider() {
+		assertSame(CFLibDbKeyHashDigests.JCA, CFLibDbKeyHashDigests.findProvider(null));
+		assertSame(CFLibDbKeyHashDigests.JCA, CFLibDbKeyHashDigests.findProvider("jca"));
+		assertEquals("jca:SUN", CFLibDbKeyHashDigests.findProvider("jca:SUN").getName());
+		assertNull(CFLibDbKeyHashDigests.findProvider("no-such-provider"));
+		assertEquals("jca", CFLibDbKeyHashDigests.getProvider(CFLibDbKeyHash384.HASH_LENGTH).getName());
+    }
+
+    @Test
+    void testMisconfiguredProviderRejected() {
+		int slot = CFLibDbKeyHashGenerator.digestSlot(CFLibDbKeyHash224.HASH_LENGTH);
+		String property = CFLibDbKeyHashDigests.PROPERTY_PREFIX + ".224";
+		try {
+			for (String name : new String[] { "no-such-provider", "counting", "jca:NoSuchJcaProvider" }) {
+				System.setProperty(property, name);
+				CFLibDbKeyHashDigests.selected.set(slot, null);
+				IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+					() -> CFLibDbKeyHashDigests.getProvider(CFLibDbKeyHash224.HASH_LENGTH), name);
+				assertTrue(e.getMessage().contains(property), e.getMessage());
+				assertTrue(e.getMessage().contains(name), e.getMessage());
+				assertNull(CFLibDbKeyHashDigests.selected.get(slot));
+			}
+			System.setProperty(property, "jca:SUN");
+			assertEquals("jca:SUN", CFLibDbKeyHashDigests.getProvider(CFLibDbKeyHash224.HASH_LENGTH).getName());
+		}
+		finally {
+			System.clearProperty(property);
+			CFLibDbKeyHashDigests.selected.set(slot, null);
+		}
+		assertSame(CFLibDbKeyHashDigests.JCA, CFLibDbKeyHashDigests.getProvider(CFLibDbKeyHash224.HASH_LENGTH));
+    }
+
+    @Test
+    void testProviderUsedForHashAndGenerate() {
+		CFLibDbKeyHash128 before = CFLibDbKeyHash128.hash("provider");
+		CountingProvider p = new CountingProvider("MD5");
+		CFLibDbKeyHashDigests.setProvider(CFLibDbKeyHash128.HASH_LENGTH, p);
+		try {
+			assertSame(p, CFLibDbKeyHashDigests.getProvider(CFLibDbKeyHash128.HASH_LENGTH));
+			assertEquals(before, CFLibDbKeyHash128.hash("provider"));
+			assertFalse(new CFLibDbKeyHash128(0).isNull());
+			assertTrue(p.created.get() >= 1);
+			assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHashDigests.setProvider(CFLibDbKeyHash256.HASH_LENGTH, p));
+		}
+		finally {
+			CFLibDbKeyHashDigests.setProvider(CFLibDbKeyHash128.HASH_LENGTH, CFLibDbKeyHashDigests.JCA);
+		}
+    }
+
+    @Test
+    void testWrongDigestLengthRejected() {
+		CFLibDbKeyHashDigests.setProvider(CFLibDbKeyHash128.HASH_LENGTH, new CountingProvider("SHA-256"));
+		try {
+			assertThrows(IllegalStateException.class, () -> CFLibDbKeyHashDigests.newDigest(CFLibDbKeyHash128.HASH_LENGTH, "MD5"));
+		}
+		finally {
+			CFLibDbKeyHashDigests.setProvider(CFLibDbKeyHash128.HASH_LENGTH, CFLibDbKeyHashDigests.JCA);
+		}
+    }
+}
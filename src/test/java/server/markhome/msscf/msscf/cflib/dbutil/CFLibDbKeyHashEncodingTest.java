@@ -0,0 +1,179 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashEncodingTest {
+
+    /**
+     * Crockford Base32 a bit at a time, as the specification describes it.
+     */
+    private static String base32Reference(byte[] b) {
+		String alphabet = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+		StringBuilder sb = new StringBuilder();
+		int nbits = b.length * 8;
+		for (int at = 0; at < nbits; at += 5) {
+			int v = 0;
+			for (int j = 0; j < 5; j++) {
+				int bit = at + j;
+				v <<= 1;
+				if (bit < nbits && (b[bit / 8] & (0x80 >>> (bit % 8))) != 0) {
+					v |= 1;
+				}
+			}
+			sb.append(alphabet.charAt(v));
+		}
+		return sb.toString();
+    }
+
+    @Test
+    void testCodecsMatchReferences() {
+		Random rnd = new Random(23);
+		Base64.Encoder b64 = Base64.getUrlEncoder().withoutPadding();
+		for (int n = 0; n < 100; n++) {
+			byte[] b = new byte[n];
+			rnd.nextBytes(b);
+			String s64 = CFLibDbKeyHashEncoding.BASE64URL.encode(b);
+			assertEquals(b64.encodeToString(b), s64);
+			assertArrayEquals(b, CFLibDbKeyHashEncoding.BASE64URL.decode(s64));
+			String s32 = CFLibDbKeyHashEncoding.BASE32.encode(b);
+			assertEquals(base32Reference(b), s32);
+			assertEquals(CFLibDbKeyHashEncoding.BASE32.encodedLength(n), s32.length());
+			assertArrayEquals(b, CFLibDbKeyHashEncoding.BASE32.decode(s32));
+			assertArrayEquals(b, CFLibDbKeyHashEncoding.BASE32.decode(s32.toLowerCase()));
+			assertArrayEquals(b, CFLibDbKeyHashEncoding.BASE32.decode(s32.replace('1', 'i').replace('0', 'O')));
+			assertArrayEquals(b, CFLibDbKeyHashEncoding.BASE32.decode(s32.replace('1', 'L')));
+			for (CFLibDbKeyHashEncoding e : CFLibDbKeyHashEncoding.values()) {
+				String s = e.encode(b);
+				assertEquals(n, e.decodedLength(s.length()));
+				assertTrue(e.isEncoding(s, 0, s.length(), n));
+				byte[] dst = new byte[n + 1];
+				assertEquals(n, e.decode("<" + s + ">", 1, 1 + s.length(), dst, 1));
+				if (n > 0 && e.encodedLength(n) * e.bits > 8 * n) {
+					// Setting a pad bit gives a different string for the same bytes, which is rejected
+					char last = s.charAt(s.length() - 1);
+					String padded = s.substring(0, s.length() - 1) + (char) e.digits[e.value(last) | 1];
+					assertFalse(e.isEncoding(padded, 0, padded.length(), n), padded);
+					assertThrows(IllegalArgumentException.class, () -> e.decode(padded));
+				}
+			}
+		}
+		// Standard Base64 digits, Crockford's excluded U, and characters past ASCII are not digits
+		for (String bad : new String[] { "ab+c", "ab/c", "ab=c", "abéc", "abŁc" }) {
+			assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHashEncoding.BASE64URL.decode(bad), bad);
+		}
+		for (String bad : new String[] { "0U", "0u", "0-", "0İ", "0000000U", "000000é0", "0000000ÿ" }) {
+			assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHashEncoding.BASE32.decode(bad), bad);
+		}
+		// No whole number of bytes encodes to these lengths
+		assertEquals(-1, CFLibDbKeyHashEncoding.BASE64URL.decodedLength(5));
+		assertEquals(-1, CFLibDbKeyHashEncoding.BASE32.decodedLength(3));
+		assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHashEncoding.BASE64URL.decode("AAAAA"));
+    }
+
+    private static <T extends CFLibDbKeyHashBase<T>> void checkWidth(int length, Function<byte[], T> ctor, Function<CharSequence, T> fromBase64,
+		Function<CharSequence, T> fromBase32, Function<CharSequence, T> fromAnyString, int base64Length, int base32Length)
+    {
+		Random rnd = new Random(length);
+		assertEquals(CFLibDbKeyHashEncoding.BASE64URL.encodedLength(length), base64Length);
+		assertEquals(CFLibDbKeyHashEncoding.BASE32.encodedLength(length), base32Length);
+		List<T> keys = new ArrayList<T>();
+		List<String> base32 = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			byte[] b = new byte[length];
+			rnd.nextBytes(b);
+			T k = ctor.apply(b);
+			String s64 = k.toBase64();
+			String s32 = k.toBase32();
+			assertEquals(base64Length, s64.length());
+			assertEquals(base32Length, s32.length());
+			assertEquals(k, fromBase64.apply(s64));
+			assertEquals(k, fromBase32.apply(s32));
+			assertEquals(k, fromBase32.apply(s32.toLowerCase()));
+			assertEquals(k, fromAnyString.apply(k.toString()));
+			assertEquals(k, fromAnyString.apply(k.toString().toUpperCase()));
+			assertEquals(k, fromAnyString.apply(s64));
+			assertEquals(k, fromAnyString.apply(s32));
+			assertThrows(IllegalArgumentException.class, () -> fromBase64.apply(s32));
+			assertThrows(IllegalArgumentException.class, () -> fromBase32.apply(s64));
+			assertThrows(IllegalArgumentException.class, () -> fromAnyString.apply(s64.substring(1)));
+			keys.add(k);
+			base32.add(s32);
+		}
+		// Base32 sorts as the keys do
+		Collections.sort(keys);
+		Collections.sort(base32);
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(keys.get(i).toBase32(), base32.get(i));
+		}
+		assertEquals(ctor.apply(new byte[length]), fromAnyString.apply(null));
+		assertEquals(ctor.apply(new byte[length]), fromBase64.apply(null));
+    }
+
+    @Test
+    void testEveryWidth() {
+		checkWidth(CFLibDbKeyHash128.HASH_LENGTH, CFLibDbKeyHash128::new, CFLibDbKeyHash128::fromBase64, CFLibDbKeyHash128::fromBase32,
+			CFLibDbKeyHash128::fromAnyString, CFLibDbKeyHash128.HASH_LENGTH_BASE64, CFLibDbKeyHash128.HASH_LENGTH_BASE32);
+		checkWidth(CFLibDbKeyHash160.HASH_LENGTH, CFLibDbKeyHash160::new, CFLibDbKeyHash160::fromBase64, CFLibDbKeyHash160::fromBase32,
+			CFLibDbKeyHash160::fromAnyString, CFLibDbKeyHash160.HASH_LENGTH_BASE64, CFLibDbKeyHash160.HASH_LENGTH_BASE32);
+		checkWidth(CFLibDbKeyHash224.HASH_LENGTH, CFLibDbKeyHash224::new, CFLibDbKeyHash224::fromBase64, CFLibDbKeyHash224::fromBase32,
+			CFLibDbKeyHash224::fromAnyString, CFLibDbKeyHash224.HASH_LENGTH_BASE64, CFLibDbKeyHash224.HASH_LENGTH_BASE32);
+		checkWidth(CFLibDbKeyHash256.HASH_LENGTH, CFLibDbKeyHash256::new, CFLibDbKeyHash256::fromBase64, CFLibDbKeyHash256::fromBase32,
+			CFLibDbKeyHash256::fromAnyString, CFLibDbKeyHash256.HASH_LENGTH_BASE64, CFLibDbKeyHash256.HASH_LENGTH_BASE32);
+		checkWidth(CFLibDbKeyHash384.HASH_LENGTH, CFLibDbKeyHash384::new, CFLibDbKeyHash384::fromBase64, CFLibDbKeyHash384::fromBase32,
+			CFLibDbKeyHash384::fromAnyString, CFLibDbKeyHash384.HASH_LENGTH_BASE64, CFLibDbKeyHash384.HASH_LENGTH_BASE32);
+		checkWidth(CFLibDbKeyHash512.HASH_LENGTH, CFLibDbKeyHash512::new, CFLibDbKeyHash512::fromBase64, CFLibDbKeyHash512::fromBase32,
+			CFLibDbKeyHash512::fromAnyString, CFLibDbKeyHash512.HASH_LENGTH_BASE64, CFLibDbKeyHash512.HASH_LENGTH_BASE32);
+		assertEquals(86, CFLibDbKeyHash512.HASH_LENGTH_BASE64);
+		assertEquals(103, CFLibDbKeyHash512.HASH_LENGTH_BASE32);
+		assertEquals("null", new CFLibDbKeyHash256().toBase64());
+    }
+
+    @Test
+    void testUuid6() {
+		for (int i = 0; i < 100; i++) {
+			CFLibUuid6 u = i % 2 == 0 ? CFLibUuid6.generateUuid6() : CFLibUuid6.randomUuid6();
+			String s64 = u.toBase64();
+			String s32 = u.toBase32();
+			assertEquals(CFLibUuid6.BASE64_LENGTH, s64.length());
+			assertEquals(CFLibUuid6.BASE32_LENGTH, s32.length());
+			assertEquals(u, CFLibUuid6.fromBase64(s64));
+			assertEquals(u, CFLibUuid6.fromBase32(s32.toLowerCase()));
+			assertEquals(u, CFLibUuid6.fromAnyString(s64));
+			assertEquals(u, CFLibUuid6.fromAnyString(s32));
+			assertEquals(u, CFLibUuid6.fromAnyString(u.toString()));
+			assertEquals(u, CFLibUuid6.fromAnyString(u.toString().replace("-", "")));
+		}
+		assertThrows(IllegalArgumentException.class, () -> CFLibUuid6.fromAnyString("abc"));
+		assertThrows(IllegalArgumentException.class, () -> CFLibUuid6.fromBase64(CFLibUuid6.randomUuid6().toBase32()));
+    }
+}
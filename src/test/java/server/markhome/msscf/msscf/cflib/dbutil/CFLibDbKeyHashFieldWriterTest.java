@@ -0,0 +1,113 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashFieldWriterTest {
+
+    @Test
+    void testCanonicalLayout() throws IOException {
+		String text = "naïve 中文 😀 \uD800x";
+		byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+		byte[] blob = new byte[600];
+		for (int i = 0; i < blob.length; i++) {
+			blob[i] = (byte) (i * 7);
+		}
+		CFLibUuid6 uuid = CFLibUuid6.generateUuid6();
+		CFLibDbKeyHash160 key = CFLibDbKeyHash160.hash("nested");
+
+		// An independent encoding of the layout documented on CFLibDbKeyHashFieldWriter
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bos);
+		out.write("ns".getBytes(StandardCharsets.UTF_8));
+		out.writeByte(0x01); out.writeByte(1);
+		out.writeByte(0x02); out.writeByte(-5);
+		out.writeByte(0x03); out.writeShort(-2);
+		out.writeByte(0x04); out.writeChar('Z');
+		out.writeByte(0x05); out.writeInt(123456789);
+		out.writeByte(0x06); out.writeLong(-1234567890123L);
+		out.writeByte(0x07); out.writeInt(0x7fc00000);
+		out.writeByte(0x08); out.writeLong(Double.doubleToLongBits(2.5));
+		out.writeByte(0x00);
+		out.writeByte(0x10); out.writeInt(blob.length); out.write(blob);
+		out.writeByte(0x11); out.writeInt(utf8.length); out.write(utf8);
+		out.writeByte(0x12); out.writeInt(2); out.writeShort(1); out.writeShort(-1);
+		out.writeByte(0x13); out.writeInt(2); out.writeChar('a'); out.writeChar('中');
+		out.writeByte(0x14); out.writeInt(3); out.writeInt(1); out.writeInt(2); out.writeInt(3);
+		out.writeByte(0x15); out.writeInt(1); out.writeLong(Long.MIN_VALUE);
+		out.writeByte(0x16); out.writeInt(1); out.writeFloat(1.5f);
+		out.writeByte(0x17); out.writeInt(1); out.writeDouble(-0.0);
+		out.writeByte(0x18); out.writeInt(2); out.writeByte(0); out.writeByte(1);
+		out.writeByte(0x20); out.write(uuid.getBytes());
+		out.writeByte(0x21); out.writeByte(20); out.write(key.getBytes());
+		out.writeByte(0x00);
+		out.flush();
+
+		CFLibDbKeyHashFieldWriter<CFLibDbKeyHash256> w = CFLibDbKeyHash256.newFieldWriter("ns");
+		w.putBoolean(true).putByte((byte) -5).putShort((short) -2).putChar('Z').putInt(123456789).putLong(-1234567890123L)
+			.putFloat(Float.intBitsToFloat(0x7fc00001)).putDouble(2.5).putString(null)
+			.putBytes(blob).putString(text)
+			.putShorts(new short[] { 1, -1 }).putChars(new char[] { 'a', '中' }).putInts(new int[] { 1, 2, 3 })
+			.putLongs(new long[] { Long.MIN_VALUE }).putFloats(new float[] { 1.5f }).putDoubles(new double[] { -0.0 })
+			.putBooleans(new boolean[] { false, true })
+			.putUuid6(uuid).putKey(key).putKey(null);
+		CFLibDbKeyHash256 expected = CFLibDbKeyHash256.hash(bos.toByteArray());
+		assertEquals(expected, w.finish());
+    }
+
+    @Test
+    void testFieldBoundariesDistinguished() {
+		CFLibDbKeyHashFieldWriter<CFLibDbKeyHash128> w = CFLibDbKeyHash128.newFieldWriter();
+		CFLibDbKeyHash128 abc = w.putString("ab").putString("c").finish();
+		assertNotEquals(abc, w.putString("a").putString("bc").finish());
+		assertNotEquals(abc, w.putString("abc").finish());
+		assertEquals(abc, w.putString(new StringBuilder("ab")).putString("c").finish());
+		assertNotEquals(w.putInt(1).finish(), w.putLong(1).finish());
+		assertNotEquals(w.putKey(CFLibDbKeyHash128.hash("x")).finish(), w.putBytes(CFLibDbKeyHash128.hash("x").getBytes()).finish());
+		assertNotEquals(w.putNull().finish(), w.putString("").finish());
+		assertEquals(CFLibDbKeyHash128.hash(new byte[0]), w.finish());
+		// A rejected range stages nothing
+		CFLibDbKeyHash128 one = w.putInt(1).finish();
+		byte[] b = new byte[4];
+		assertThrows(IndexOutOfBoundsException.class, () -> w.putBytes(b, 2, 3));
+		assertThrows(IndexOutOfBoundsException.class, () -> w.putBytes(b, 0, -1));
+		assertEquals(one, w.putInt(1).finish());
+    }
+
+    @Test
+    void testEveryWidth() {
+		byte[] payload = { 0x05, 0, 0, 0, 42 };
+		assertEquals(CFLibDbKeyHash128.hash(payload), CFLibDbKeyHash128.newFieldWriter().putInt(42).finish());
+		assertEquals(CFLibDbKeyHash160.hash(payload), CFLibDbKeyHash160.newFieldWriter().putInt(42).finish());
+		assertEquals(CFLibDbKeyHash224.hash(payload), CFLibDbKeyHash224.newFieldWriter().putInt(42).finish());
+		assertEquals(CFLibDbKeyHash256.hash(payload), CFLibDbKeyHash256.newFieldWriter().putInt(42).finish());
+		assertEquals(CFLibDbKeyHash384.hash(payload), CFLibDbKeyHash384.newFieldWriter().putInt(42).finish());
+		assertEquals(CFLibDbKeyHash512.hash(payload), CFLibDbKeyHash512.newFieldWriter().putInt(42).finish());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashGeneratorTest {
+
+    static final int THREADS = 8;
+    static final int KEYS_PER_THREAD = 5000;
+
+    private static void mintConcurrently(Thread.Builder builder, Set<CFLibDbKeyHash128> seen) throws InterruptedException {
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			threads.add(builder.start(() -> {
+				for (int i = 0; i < KEYS_PER_THREAD; i++) {
+					CFLibDbKeyHash128 k = new CFLibDbKeyHash128(0);
+					assertFalse(k.isNull());
+					seen.add(k);
+				}
+			}));
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+    }
+
+    @Test
+    void testUniqueAcrossPlatformThreads() throws InterruptedException {
+		Set<CFLibDbKeyHash128> seen = ConcurrentHashMap.newKeySet();
+		mintConcurrently(Thread.ofPlatform(), seen);
+		assertEquals(THREADS * KEYS_PER_THREAD, seen.size());
+    }
+
+    @Test
+    void testUniqueAcrossVirtualThreads() throws InterruptedException {
+		Set<CFLibDbKeyHash128> seen = ConcurrentHashMap.newKeySet();
+		mintConcurrently(Thread.ofVirtual(), seen);
+		mintConcurrently(Thread.ofPlatform(), seen);
+		assertEquals(2 * THREADS * KEYS_PER_THREAD, seen.size());
+    }
+
+    @Test
+    void testGenerateWidths() {
+		assertEquals(16, new CFLibDbKeyHash128(0).getBytes().length);
+		assertEquals(20, new CFLibDbKeyHash160(0).getBytes().length);
+		assertEquals(28, new CFLibDbKeyHash224(0).getBytes().length);
+		assertEquals(32, new CFLibDbKeyHash256(0).getBytes().length);
+		assertEquals(48, new CFLibDbKeyHash384(0).getBytes().length);
+		assertEquals(64, new CFLibDbKeyHash512(0).getBytes().length);
+		assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHashGenerator.generate(17, "MD5"));
+    }
+
+    @Test
+    void testSetMachineId() {
+		int prior = CFLibDbKeyHashGenerator.getMachineId();
+		try {
+			CFLibDbKeyHashBase.setMachineId(42);
+			assertEquals(42, CFLibDbKeyHashGenerator.getMachineId());
+			assertFalse(new CFLibDbKeyHash256(0).isNull());
+		}
+		finally {
+			CFLibDbKeyHashBase.setMachineId(prior);
+		}
+    }
+
+    @Test
+    void testTimeOrderedMode() throws InterruptedException {
+		assertEquals(CFLibDbKeyHashGenerator.Mode.RANDOM, CFLibDbKeyHash224.getGenerationMode());
+		CFLibDbKeyHash224.setGenerationMode(CFLibDbKeyHashGenerator.Mode.TIME_ORDERED);
+		try {
+			assertEquals(CFLibDbKeyHashGenerator.Mode.TIME_ORDERED, CFLibDbKeyHash224.getGenerationMode());
+			assertEquals(CFLibDbKeyHashGenerator.Mode.RANDOM, CFLibDbKeyHash256.getGenerationMode());
+			CFLibDbKeyHash224 early = new CFLibDbKeyHash224(0);
+			Thread.sleep(40);
+			CFLibDbKeyHash224[] later = CFLibDbKeyHash224.generate(10);
+			Set<CFLibDbKeyHash224> seen = new HashSet<CFLibDbKeyHash224>();
+			seen.add(early);
+			long stamp = System.currentTimeMillis() >> 4;
+			for (CFLibDbKeyHash224 k : later) {
+				assertEquals(28, k.getBytes().length);
+				assertTrue(CFLibDbKeyHash224.compareOrdered(early, k) < 0);
+				long prefix = 0;
+				for (int i = 0; i < 6; i++) {
+					prefix = (prefix << 8) | (k.getBytes()[i] & 0xFF);
+				}
+				assertTrue(prefix <= stamp && prefix >= stamp - 2);
+				seen.add(k);
+			}
+			assertEquals(11, seen.size());
+		}
+		finally {
+			CFLibDbKeyHash224.setGenerationMode(CFLibDbKeyHashGenerator.Mode.RANDOM);
+		}
+    }
+}
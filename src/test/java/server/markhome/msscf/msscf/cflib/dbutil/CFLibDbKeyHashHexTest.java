@@ -0,0 +1,247 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashHexTest {
+
+    @Test
+    void testCodecMatchesHexFormat() throws Exception {
+		Random rnd = new Random(21);
+		HexFormat hf = HexFormat.of();
+		for (int n = 0; n < 100; n++) {
+			byte[] b = new byte[n];
+			rnd.nextBytes(b);
+			String hex = hf.formatHex(b);
+			assertEquals(hex, CFLibDbKeyHashHex.encode(b));
+			char[] chars = new char[2 * n + 3];
+			assertEquals(2 * n + 1, CFLibDbKeyHashHex.encode(b, 0, n, chars, 1));
+			assertEquals(hex, new String(chars, 1, 2 * n));
+			assertEquals(hex, CFLibDbKeyHashHex.encode(b, 0, n, new StringBuilder()).toString());
+			assertArrayEquals(b, CFLibDbKeyHashHex.decode(hex));
+			assertArrayEquals(b, CFLibDbKeyHashHex.decode(hex.toUpperCase()));
+			byte[] dst = new byte[n + 2];
+			assertEquals(n, CFLibDbKeyHashHex.decode("xy" + hex + "z", 2, 2 + 2 * n, dst, 1));
+			assertArrayEquals(b, Arrays.copyOfRange(dst, 1, 1 + n));
+		}
+		for (int c = 0; c < 0x10000; c++) {
+			assertEquals(HexFormat.isHexDigit(c) ? Character.digit(c, 16) : -1, CFLibDbKeyHashHex.digit((char) c), "char " + c);
+		}
+		// Character.digit() accepts these, the codec does not
+		for (String bad : new String[] { "0g", "٠١", "０１", " 1", "1-", "0x" }) {
+			assertFalse(CFLibDbKeyHashHex.isHex(bad, 0, bad.length()), bad);
+			assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHashHex.decode(bad));
+		}
+		assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHashHex.decode("abc"));
+    }
+
+    private static <T extends CFLibDbKeyHashBase<T>> void checkWidth(int length, Function<byte[], T> ctor, Function<String, T> fromHex,
+		Function<String, T> fromHexQuick)
+    {
+		Random rnd = new Random(length);
+		HexFormat hf = HexFormat.of();
+		for (int i = 0; i < 50; i++) {
+			byte[] b = new byte[length];
+			rnd.nextBytes(b);
+			T k = ctor.apply(b);
+			String hex = hf.formatHex(b);
+			assertEquals(hex, k.toString());
+			StringBuilder sb = new StringBuilder("<");
+			k.toString(sb);
+			assertEquals("<" + hex, sb.toString());
+			char[] chars = new char[2 * length];
+			assertEquals(2 * length, k.toHex(chars, 0));
+			assertEquals(hex, new String(chars));
+			assertEquals(k, fromHex.apply(hex));
+			assertEquals(k, fromHex.apply(hex.toUpperCase()));
+			assertEquals(k, fromHexQuick.apply(hex));
+			// A short string fills the leading bytes
+			byte[] prefix = new byte[length];
+			System.arraycopy(b, 0, prefix, 0, 5);
+			assertEquals(ctor.apply(prefix), fromHex.apply(hex.substring(0, 10)));
+			assertNull(fromHexQuick.apply(hex.substring(0, 10)));
+			String bad = hex.substring(0, 2 * length - 1) + "g";
+			assertNull(fromHexQuick.apply(bad));
+			assertThrows(IllegalArgumentException.class, () -> fromHex.apply(bad));
+			assertThrows(IllegalArgumentException.class, () -> fromHex.apply(hex + "00"));
+			assertThrows(IllegalArgumentException.class, () -> fromHex.apply(hex.substring(1)));
+		}
+		assertNull(fromHexQuick.apply(null));
+		assertEquals(ctor.apply(new byte[length]), fromHex.apply(null));
+    }
+
+    @Test
+    void testEveryWidth() {
+		checkWidth(CFLibDbKeyHash128.HASH_LENGTH, CFLibDbKeyHash128::new, CFLibDbKeyHash128::fromHex, CFLibDbKeyHash128::fromHexQuick);
+		checkWidth(CFLibDbKeyHash160.HASH_LENGTH, CFLibDbKeyHash160::new, CFLibDbKeyHash160::fromHex, CFLibDbKeyHash160::fromHexQuick);
+		checkWidth(CFLibDbKeyHash224.HASH_LENGTH, CFLibDbKeyHash224::new, CFLibDbKeyHash224::fromHex, CFLibDbKeyHash224::fromHexQuick);
+		checkWidth(CFLibDbKeyHash256.HASH_LENGTH, CFLibDbKeyHash256::new, CFLibDbKeyHash256::fromHex, CFLibDbKeyHash256::fromHexQuick);
+		checkWidth(CFLibDbKeyHash384.HASH_LENGTH, CFLibDbKeyHash384::new, CFLibDbKeyHash384::fromHex, CFLibDbKeyHash384::fromHexQuick);
+		checkWidth(CFLibDbKeyHash512.HASH_LENGTH, CFLibDbKeyHash512::new, CFLibDbKeyHash512::fromHex, CFLibDbKeyHash512::fromHexQuick);
+    }
+
+    @Test
+    void testRangesAndArrays() {
+		CFLibDbKeyHash224 k = CFLibDbKeyHash224.hash("range");
+		StringBuilder sb = new StringBuilder("id=").append(k).append(";");
+		assertEquals(k, CFLibDbKeyHash224.fromHex(sb, 3, 3 + CFLibDbKeyHash224.HASH_LENGTH_STRING));
+		assertThrows(IndexOutOfBoundsException.class, () -> CFLibDbKeyHash224.fromHex(sb, 3, sb.length() + 1));
+		assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHash224.fromHex(sb, 2, 2 + CFLibDbKeyHash224.HASH_LENGTH_STRING));
+		CFLibDbKeyHash224Array a = new CFLibDbKeyHash224Array();
+		a.add(k);
+		assertEquals(k.toString(), a.toString(0));
+		byte[] ascii = new byte[CFLibDbKeyHash224.HASH_LENGTH_STRING];
+		a.toHex(0, ascii, 0);
+		byte[] expected = new byte[ascii.length];
+		k.toHex(expected, 0);
+		assertArrayEquals(expected, ascii);
+		assertEquals(k, new CFLibDbKeyHash224(k.toString()));
+		assertArrayEquals(k.getBytes(), k.bytesFromHex(k.toString()));
+    }
+
+    @Test
+    void testSwarMatchesTables() {
+		Random rnd = new Random(22);
+		byte[] ascii = new byte[8];
+		for (int n = 0; n < 20000; n++) {
+			int x = n < 256 ? n * 0x01010101 : rnd.nextInt();
+			long digits = CFLibDbKeyHashHex.encodeSwar(x);
+			CFLibDbKeyHashBase.LONGS.set(ascii, 0, digits);
+			assertEquals(String.format("%08x", x), new String(ascii, StandardCharsets.ISO_8859_1));
+			assertEquals(x & 0xFFFFFFFFL, CFLibDbKeyHashHex.decodeSwar(digits));
+			// Upper case the letters, which are the digits with 0x40 set
+			assertEquals(x & 0xFFFFFFFFL, CFLibDbKeyHashHex.decodeSwar(digits & ~((digits & 0x4040404040404040L) >>> 1)));
+		}
+		// Every byte value at every position, among otherwise valid digits
+		for (int pos = 0; pos < 8; pos++) {
+			for (int c = 0; c < 256; c++) {
+				Arrays.fill(ascii, (byte) (pos % 2 == 0 ? 'F' : '9'));
+				ascii[pos] = (byte) c;
+				long v = CFLibDbKeyHashHex.decodeSwar((long) CFLibDbKeyHashBase.LONGS.get(ascii, 0));
+				String s = new String(ascii, StandardCharsets.ISO_8859_1);
+				if (CFLibDbKeyHashHex.isHex(s, 0, 8)) {
+					assertEquals(Long.parseLong(s, 16), v, s);
+				}
+				else {
+					assertEquals(-1L, v, "byte " + c + " at " + pos);
+				}
+			}
+		}
+    }
+
+    private static <T extends CFLibDbKeyHashBase<T>> void checkBulk(CFLibDbKeyHashArray<T> a, Supplier<CFLibDbKeyHashArray<T>> empty,
+		Function<byte[], T> ctor)
+    {
+		int length = a.getHashLength();
+		Random rnd = new Random(length);
+		List<T> list = new ArrayList<T>();
+		for (int i = 0; i < 300; i++) {
+			byte[] b = new byte[length];
+			if (i == 1) {
+				Arrays.fill(b, (byte) 0xFF);
+			}
+			else if (i > 1) {
+				rnd.nextBytes(b);
+			}
+			T k = ctor.apply(b);
+			a.add(k);
+			list.add(k);
+		}
+		CFLibDbKeyHashBase<?>[] objects = list.toArray(new CFLibDbKeyHashBase<?>[0]);
+		for (int separator : new int[] { -1, '\n', ',' }) {
+			int record = CFLibDbKeyHashHex.recordLength(length, separator);
+			StringBuilder expected = new StringBuilder();
+			for (T k : list) {
+				expected.append(k);
+				if (separator >= 0) {
+					expected.append((char) separator);
+				}
+			}
+			byte[] hex = a.toHexBytes(separator);
+			assertEquals(expected.toString(), new String(hex, StandardCharsets.ISO_8859_1));
+			byte[] fromObjects = new byte[hex.length + 2];
+			assertEquals(hex.length + 1, CFLibDbKeyHashHex.encode(objects, 0, objects.length, fromObjects, 1, separator));
+			assertArrayEquals(hex, Arrays.copyOfRange(fromObjects, 1, 1 + hex.length));
+
+			CFLibDbKeyHashArray<T> back = empty.get();
+			back.addAllHex(hex, 0, a.size(), separator);
+			assertEquals(list, back.toList());
+			back.clear();
+			back.addAllHex(new String(hex, StandardCharsets.ISO_8859_1).toUpperCase().getBytes(StandardCharsets.ISO_8859_1), 0, a.size(), separator);
+			assertEquals(list, back.toList());
+
+			for (ByteBuffer buf : new ByteBuffer[] { ByteBuffer.allocate(hex.length + 3), ByteBuffer.allocateDirect(hex.length + 3) }) {
+				buf.position(3);
+				a.encodeHex(buf, separator);
+				assertFalse(buf.hasRemaining());
+				buf.position(3);
+				back.clear();
+				back.addAllHex(buf, a.size(), separator);
+				assertFalse(buf.hasRemaining());
+				assertEquals(list, back.toList());
+			}
+
+			// A bad digit or separator in the last record is rejected, leaving the array as it was
+			back.clear();
+			back.add(list.get(0));
+			for (int at : new int[] { hex.length - record, hex.length - 1 }) {
+				byte[] bad = hex.clone();
+				bad[at] = (byte) 'g';
+				assertThrows(IllegalArgumentException.class, () -> back.addAllHex(bad, 0, a.size(), separator));
+				assertEquals(1, back.size());
+				ByteBuffer direct = ByteBuffer.allocateDirect(bad.length);
+				direct.put(bad).flip();
+				assertThrows(IllegalArgumentException.class, () -> back.addAllHex(direct, a.size(), separator));
+				assertEquals(1, back.size());
+			}
+			assertThrows(IndexOutOfBoundsException.class, () -> back.addAllHex(hex, 1, a.size(), separator));
+			assertThrows(IndexOutOfBoundsException.class, () -> a.encodeHex(new byte[hex.length - 1], 0, separator));
+		}
+		assertThrows(IllegalArgumentException.class, () -> a.toHexBytes(0x80));
+    }
+
+    @Test
+    void testBulkEveryWidth() {
+		checkBulk(new CFLibDbKeyHash128Array(), CFLibDbKeyHash128Array::new, CFLibDbKeyHash128::new);
+		checkBulk(new CFLibDbKeyHash160Array(), CFLibDbKeyHash160Array::new, CFLibDbKeyHash160::new);
+		checkBulk(new CFLibDbKeyHash224Array(), CFLibDbKeyHash224Array::new, CFLibDbKeyHash224::new);
+		checkBulk(new CFLibDbKeyHash256Array(), CFLibDbKeyHash256Array::new, CFLibDbKeyHash256::new);
+		checkBulk(new CFLibDbKeyHash384Array(), CFLibDbKeyHash384Array::new, CFLibDbKeyHash384::new);
+		checkBulk(new CFLibDbKeyHash512Array(), CFLibDbKeyHash512Array::new, CFLibDbKeyHash512::new);
+		CFLibDbKeyHashBase<?>[] mixed = { CFLibDbKeyHash128.hash("a"), CFLibDbKeyHash256.hash("b") };
+		assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHashHex.encode(mixed, 0, 2, new byte[200], 0, -1));
+		assertThrows(NullPointerException.class, () -> CFLibDbKeyHashHex.encode(new CFLibDbKeyHashBase<?>[2], 0, 2, new byte[200], 0, -1));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashIdsTest {
+
+    private static <T extends CFLibDbKeyHashBase<T>, A extends CFLibDbKeyHashArray<T>> void checkWidth(int length, Function<byte[], T> ctor,
+		Supplier<T> keyFactory, Supplier<A> arrayFactory)
+    {
+		Random rnd = new Random(length);
+		List<T> keys = new ArrayList<T>();
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			byte[] b = new byte[length];
+			rnd.nextBytes(b);
+			T k = ctor.apply(b);
+			keys.add(k);
+			ids.add(i % 3 == 0 ? k.toString().toUpperCase() : k.toString());
+		}
+		// Sequential and parallel, from a Stream, an Iterable and a Spliterator, all keep the order of the ids
+		for (boolean parallel : new boolean[] { false, true }) {
+			Stream<String> s = parallel ? ids.parallelStream() : ids.stream();
+			assertEquals(keys, CFLibDbKeyHashIds.stream(s, keyFactory, false).collect(Collectors.toList()));
+			assertEquals(keys, CFLibDbKeyHashIds.stream(ids, parallel, keyFactory, true).collect(Collectors.toList()));
+			assertEquals(keys, CFLibDbKeyHashIds.stream(ids.spliterator(), parallel, keyFactory, false).collect(Collectors.toList()));
+			A a = (parallel ? ids.parallelStream() : ids.stream()).collect(CFLibDbKeyHashIds.toArray(arrayFactory, false));
+			assertEquals(keys, a.toList());
+			assertNull(a.getOrder());
+		}
+
+		// Lenient conversion skips what strict conversion rejects, and also what the String constructor would pad
+		String good = ids.get(0);
+		List<String> mixed = Arrays.asList(good, null, good.substring(2), good.substring(1), good.replace(good.charAt(5), 'g'),
+			good.substring(0, 10) + 'é' + good.substring(11), good + "00", "", ids.get(1));
+		List<T> expect = List.of(keys.get(0), keys.get(1));
+		for (boolean parallel : new boolean[] { false, true }) {
+			Stream<String> s = parallel ? mixed.parallelStream() : mixed.stream();
+			assertEquals(expect, CFLibDbKeyHashIds.stream(s, keyFactory, true).collect(Collectors.toList()));
+			assertEquals(expect, CFLibDbKeyHashIds.stream(mixed, parallel, keyFactory, true).collect(Collectors.toList()));
+			assertEquals(expect, (parallel ? mixed.parallelStream() : mixed.stream()).collect(CFLibDbKeyHashIds.toArray(arrayFactory, true)).toList());
+		}
+		for (String bad : mixed.subList(3, 7)) {
+			assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHashIds.parse(bad, keyFactory), bad);
+			// A failed append leaves a sorted array sorted
+			A a = arrayFactory.get();
+			a.addHex(ids.get(1));
+			a.addHex(good);
+			a.sort();
+			CFLibDbKeyHashOrder order = a.getOrder();
+			assertNotNull(order);
+			assertThrows(IllegalArgumentException.class, () -> a.addHex(bad), bad);
+			assertEquals(2, a.size());
+			assertSame(order, a.getOrder());
+			assertFalse(a.addHexQuietly(bad));
+			assertEquals(2, a.size());
+			assertSame(order, a.getOrder());
+			assertTrue(a.addHexQuietly(ids.get(2)));
+			assertEquals(keys.get(2), a.get(2));
+			assertNull(a.getOrder());
+			a.sort();
+			a.addAll(keys.get(3).getBytes(), 0, 1);
+			assertEquals(keys.get(3), a.get(3));
+			assertNull(a.getOrder());
+		}
+
+		// Strict conversion reads ids as the String constructor does
+		T zero = ctor.apply(new byte[length]);
+		byte[] lead = new byte[length];
+		System.arraycopy(keys.get(0).getBytes(), 0, lead, 0, length - 1);
+		List<T> strict = List.of(keys.get(0), zero, ctor.apply(lead), zero);
+		List<String> loose = Arrays.asList(good, null, good.substring(0, good.length() - 2), "");
+		assertEquals(strict, CFLibDbKeyHashIds.stream(loose.stream(), keyFactory, false).collect(Collectors.toList()));
+		assertEquals(strict, loose.stream().collect(CFLibDbKeyHashIds.toArray(arrayFactory, false)).toList());
+		assertThrows(IllegalArgumentException.class, () -> mixed.parallelStream().collect(CFLibDbKeyHashIds.toArray(arrayFactory, false)));
+    }
+
+    @Test
+    void testEveryWidth() {
+		checkWidth(CFLibDbKeyHash128.HASH_LENGTH, CFLibDbKeyHash128::new, CFLibDbKeyHash128::new, CFLibDbKeyHash128Array::new);
+		checkWidth(CFLibDbKeyHash160.HASH_LENGTH, CFLibDbKeyHash160::new, CFLibDbKeyHash160::new, CFLibDbKeyHash160Array::new);
+		checkWidth(CFLibDbKeyHash224.HASH_LENGTH, CFLibDbKeyHash224::new, CFLibDbKeyHash224::new, CFLibDbKeyHash224Array::new);
+		checkWidth(CFLibDbKeyHash256.HASH_LENGTH, CFLibDbKeyHash256::new, CFLibDbKeyHash256::new, CFLibDbKeyHash256Array::new);
+		checkWidth(CFLibDbKeyHash384.HASH_LENGTH, CFLibDbKeyHash384::new, CFLibDbKeyHash384::new, CFLibDbKeyHash384Array::new);
+		checkWidth(CFLibDbKeyHash512.HASH_LENGTH, CFLibDbKeyHash512::new, CFLibDbKeyHash512::new, CFLibDbKeyHash512Array::new);
+    }
+
+    @Test
+    void testWidthHelpers() {
+		String[] ids = new String[1000];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = CFLibDbKeyHash256.fromInt(i).toString();
+		}
+		List<CFLibDbKeyHash256> keys = CFLibDbKeyHash256.toCFLibDbKeyHash256List(ids);
+		assertEquals(keys, CFLibDbKeyHash256.toCFLibDbKeyHash256Stream(Arrays.stream(ids).parallel(), false).collect(Collectors.toList()));
+		assertEquals(keys, CFLibDbKeyHash256.toCFLibDbKeyHash256Stream(Arrays.asList(ids), true, true).collect(Collectors.toList()));
+		assertEquals(keys, CFLibDbKeyHash256.toCFLibDbKeyHash256Stream(Arrays.spliterator(ids), false, false).collect(Collectors.toList()));
+		assertEquals(keys, CFLibDbKeyHash256.toCFLibDbKeyHash256Array(Arrays.stream(ids).parallel(), true).toList());
+		assertEquals(keys, CFLibDbKeyHash256.toCFLibDbKeyHash256Array(ids).toList());
+		// Sequential streams of known and unknown size fill the array directly
+		assertEquals(keys, CFLibDbKeyHash256.toCFLibDbKeyHash256Array(Arrays.stream(ids), false).toList());
+		assertEquals(keys.subList(1, keys.size()),
+			CFLibDbKeyHash256.toCFLibDbKeyHash256Array(Arrays.stream(ids).filter(id -> id != ids[0]), true).toList());
+		assertEquals(keys, CFLibDbKeyHash256.toCFLibDbKeyHash256Array(Stream.concat(Arrays.stream(ids), Stream.of("x")), true).toList());
+		assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHash256.toCFLibDbKeyHash256Array(Stream.of(ids[0], "x"), false));
+		StringBuilder sb = new StringBuilder(ids[7]);
+		assertEquals(keys.get(7), CFLibDbKeyHash256.toCFLibDbKeyHash256Stream(Stream.of(sb, "zz"), true).findFirst().get());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashMapTest {
+
+    private static List<CFLibDbKeyHash128> mixedKeys(int n, long seed) {
+		Random rnd = new Random(seed);
+		List<CFLibDbKeyHash128> keys = new ArrayList<CFLibDbKeyHash128>();
+		for (int i = 0; i < n; i++) {
+			if (i % 3 == 0) {
+				// Small integers differ only in their first word, and cluster without the fold and multiply
+				keys.add(CFLibDbKeyHash128.fromInt(i));
+			}
+			else {
+				byte[] b = new byte[CFLibDbKeyHash128.HASH_LENGTH];
+				rnd.nextBytes(b);
+				keys.add(new CFLibDbKeyHash128(b));
+			}
+		}
+		keys.add(CFLibDbKeyHash128.nullGet());
+		return keys;
+    }
+
+    @Test
+    void testLongMapMatchesHashMap() {
+		List<CFLibDbKeyHash128> keys = mixedKeys(3000, 7);
+		Random rnd = new Random(11);
+		CFLibDbKeyHashLongMap<CFLibDbKeyHash128> map = CFLibDbKeyHash128.newLongMap(0, -1L);
+		Map<CFLibDbKeyHash128, Long> ref = new HashMap<CFLibDbKeyHash128, Long>();
+		for (int op = 0; op < 200000; op++) {
+			CFLibDbKeyHash128 k = keys.get(rnd.nextInt(keys.size()));
+			int which = rnd.nextInt(4);
+			if (which < 2) {
+				long v = rnd.nextLong();
+				Long prior = ref.put(k, v);
+				assertEquals(prior == null ? -1L : prior.longValue(), map.put(k, v));
+			}
+			else if (which == 2) {
+				Long prior = ref.remove(k);
+				assertEquals(prior == null ? -1L : prior.longValue(), map.remove(k));
+			}
+			else {
+				Long v = ref.get(k);
+				assertEquals(v == null ? -1L : v.longValue(), map.get(k));
+				assertEquals(v != null, map.containsKey(k));
+			}
+			assertEquals(ref.size(), map.size());
+		}
+		Map<CFLibDbKeyHash128, Long> seen = new HashMap<CFLibDbKeyHash128, Long>();
+		map.forEach((k, v) -> assertNull(seen.put(k.deepClone(), v)));
+		assertEquals(ref, seen);
+		map.clear();
+		assertTrue(map.isEmpty());
+		for (CFLibDbKeyHash128 k : keys) {
+			assertFalse(map.containsKey(k));
+		}
+    }
+
+    @Test
+    void testObjectMapMatchesHashMap() {
+		List<CFLibDbKeyHash128> keys = mixedKeys(2000, 3);
+		Random rnd = new Random(5);
+		CFLibDbKeyHashObjectMap<CFLibDbKeyHash128, String> map = CFLibDbKeyHash128.newMap(16);
+		Map<CFLibDbKeyHash128, String> ref = new HashMap<CFLibDbKeyHash128, String>();
+		for (int op = 0; op < 100000; op++) {
+			CFLibDbKeyHash128 k = keys.get(rnd.nextInt(keys.size()));
+			int which = rnd.nextInt(4);
+			if (which == 0) {
+				String v = Integer.toString(op);
+				assertEquals(ref.put(k, v), map.put(k, v));
+			}
+			else if (which == 1) {
+				String v = Integer.toString(op);
+				assertEquals(ref.putIfAbsent(k, v), map.putIfAbsent(k, v));
+			}
+			else if (which == 2) {
+				assertEquals(ref.remove(k), map.remove(k));
+			}
+			else {
+				assertEquals(ref.get(k), map.get(k));
+			}
+			assertEquals(ref.size(), map.size());
+		}
+		Map<CFLibDbKeyHash128, String> seen = new HashMap<CFLibDbKeyHash128, String>();
+		map.forEach((k, v) -> assertNull(seen.put(k.deepClone(), v)));
+		assertEquals(ref, seen);
+		assertThrows(NullPointerException.class, () -> map.put(keys.get(1), null));
+		assertThrows(NullPointerException.class, () -> map.get(null));
+    }
+
+    @Test
+    void testEveryWidth() {
+		CFLibDbKeyHashLongMap<CFLibDbKeyHash160> m160 = CFLibDbKeyHash160.newLongMap(4);
+		CFLibDbKeyHashLongMap<CFLibDbKeyHash224> m224 = CFLibDbKeyHash224.newLongMap(4);
+		CFLibDbKeyHashLongMap<CFLibDbKeyHash256> m256 = CFLibDbKeyHash256.newLongMap(4);
+		CFLibDbKeyHashLongMap<CFLibDbKeyHash384> m384 = CFLibDbKeyHash384.newLongMap(4);
+		CFLibDbKeyHashLongMap<CFLibDbKeyHash512> m512 = CFLibDbKeyHash512.newLongMap(4);
+		for (int i = 1; i <= 1000; i++) {
+			m160.put(CFLibDbKeyHash160.fromInt(i), i);
+			m224.put(CFLibDbKeyHash224.fromInt(i), i);
+			m256.put(CFLibDbKeyHash256.fromInt(i), i);
+			m384.put(CFLibDbKeyHash384.fromInt(i), i);
+			m512.put(CFLibDbKeyHash512.fromInt(i), i);
+		}
+		for (int i = 1; i <= 1000; i++) {
+			assertEquals(i, m160.get(CFLibDbKeyHash160.fromInt(i)));
+			assertEquals(i, m224.get(CFLibDbKeyHash224.fromInt(i)));
+			assertEquals(i, m256.get(CFLibDbKeyHash256.fromInt(i)));
+			assertEquals(i, m384.get(CFLibDbKeyHash384.fromInt(i)));
+			assertEquals(i, m512.get(CFLibDbKeyHash512.fromInt(i)));
+		}
+		assertEquals(0L, m512.get(CFLibDbKeyHash512.fromInt(1001)));
+		assertEquals(1000, m256.size());
+		assertTrue(m256.capacity() >= 1000 / 0.75);
+		// A key that differs only in its last word must not match
+		byte[] b = CFLibDbKeyHash384.fromInt(5).getBytes();
+		b[47] = 1;
+		assertFalse(m384.containsKey(new CFLibDbKeyHash384(b)));
+    }
+}
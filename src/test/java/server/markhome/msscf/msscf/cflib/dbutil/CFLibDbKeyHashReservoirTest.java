@@ -0,0 +1,201 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashReservoirTest {
+
+    @Test
+    void testDryReservoirFallsBack() {
+		CFLibDbKeyHashReservoir<CFLibDbKeyHash256> r = CFLibDbKeyHash256.newReservoir(64);
+		assertEquals(64, r.getCapacity());
+		assertEquals(16, r.getLowWater());
+		assertEquals(64, r.getHighWater());
+		CFLibDbKeyHash256 k = r.take();
+		assertNotNull(k);
+		assertFalse(k.isNull());
+		assertEquals(1, r.getMisses());
+		assertEquals(0, r.getTakes());
+    }
+
+    @Test
+    void testRefillAndShutdown() throws InterruptedException {
+		CFLibDbKeyHashReservoir<CFLibDbKeyHash512> r = CFLibDbKeyHash512.newReservoir(100, 10, 90);
+		assertEquals(128, r.getCapacity());
+		r.start();
+		try {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (r.getLevel() < 90 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			assertEquals(90, r.getLevel());
+			Set<CFLibDbKeyHash512> seen = ConcurrentHashMap.newKeySet();
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int t = 0; t < 4; t++) {
+				threads.add(Thread.ofPlatform().start(() -> {
+					for (int i = 0; i < 2000; i++) {
+						seen.add(r.take());
+					}
+				}));
+			}
+			for (Thread t : threads) {
+				t.join();
+			}
+			assertEquals(8000, seen.size());
+			assertEquals(8000, r.getTakes() + r.getMisses());
+			assertTrue(r.getRefills() > 0);
+		}
+		finally {
+			r.shutdown();
+		}
+		assertFalse(r.isRunning());
+		assertNotNull(r.take());
+    }
+
+    private static void awaitLevel(CFLibDbKeyHashReservoir<?> r, int level) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (r.getLevel() < level && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+    }
+
+    @Test
+    void testFailingRefillerStops() throws InterruptedException {
+		CFLibDbKeyHashReservoir<CFLibDbKeyHash256> r = new CFLibDbKeyHashReservoir<CFLibDbKeyHash256>("failing", 16,
+			n -> { throw new IllegalStateException("no digest"); }, () -> new CFLibDbKeyHash256(0));
+		r.start();
+		try {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (r.isRunning() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			assertFalse(r.isRunning());
+			assertEquals(CFLibDbKeyHashReservoir.MAX_FAILURES, r.getFailures());
+			assertTrue(r.getLastFailure() instanceof IllegalStateException);
+			assertEquals(0, r.getLevel());
+			assertFalse(r.take().isNull());
+			assertEquals(1, r.getMisses());
+		}
+		finally {
+			r.shutdown();
+		}
+    }
+
+    @Test
+    void testTransientFailureRecovers() throws InterruptedException {
+		AtomicInteger calls = new AtomicInteger();
+		CFLibDbKeyHashReservoir<CFLibDbKeyHash256> r = new CFLibDbKeyHashReservoir<CFLibDbKeyHash256>("flaky", 16,
+			n -> {
+				if (calls.incrementAndGet() <= 2) {
+					throw new IllegalStateException("transient");
+				}
+				return CFLibDbKeyHash256.generate(n);
+			},
+			() -> new CFLibDbKeyHash256(0));
+		r.start();
+		try {
+			awaitLevel(r, 16);
+			assertEquals(16, r.getLevel());
+			assertEquals(2, r.getFailures());
+			assertTrue(r.isRunning());
+		}
+		finally {
+			r.shutdown();
+		}
+		assertFalse(r.isRunning());
+    }
+
+    @Test
+    void testRestartWhileBatchBlocked() throws InterruptedException {
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		CFLibDbKeyHash256 stale = CFLibDbKeyHash256.fromInt(1);
+		CFLibDbKeyHashReservoir<CFLibDbKeyHash256> r = new CFLibDbKeyHashReservoir<CFLibDbKeyHash256>("restart", 16,
+			n -> {
+				if (calls.incrementAndGet() > 1) {
+					return CFLibDbKeyHash256.generate(n);
+				}
+				entered.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				CFLibDbKeyHash256[] batch = new CFLibDbKeyHash256[n];
+				Arrays.fill(batch, stale);
+				return batch;
+			},
+			() -> new CFLibDbKeyHash256(0));
+		try {
+			r.start(false);
+			assertTrue(entered.await(10, TimeUnit.SECONDS));
+			Thread old = r.refiller;
+			// The first refiller is stuck in its batch, so shutdown() times out and the restart runs alongside it
+			r.shutdown(10);
+			assertTrue(old.isAlive());
+			r.start(false);
+			awaitLevel(r, 16);
+			assertEquals(16, r.getLevel());
+			release.countDown();
+			old.join(10000);
+			assertFalse(old.isAlive());
+			assertTrue(r.isRunning());
+			Set<CFLibDbKeyHash256> seen = ConcurrentHashMap.newKeySet();
+			for (int i = 0; i < 64; i++) {
+				CFLibDbKeyHash256 k = r.take();
+				assertNotEquals(stale, k);
+				seen.add(k);
+			}
+			assertEquals(64, seen.size());
+		}
+		finally {
+			release.countDown();
+			r.shutdown();
+		}
+    }
+
+    @Test
+    void testShutdownRemovesHook() {
+		CFLibDbKeyHashReservoir<CFLibDbKeyHash128> r = CFLibDbKeyHash128.newReservoir(16);
+		r.start();
+		r.registerShutdownHook();
+		Thread hook = r.shutdownHook;
+		assertNotNull(hook);
+		r.shutdown();
+		assertNull(r.shutdownHook);
+		// Removing it again fails because shutdown() already did
+		assertFalse(Runtime.getRuntime().removeShutdownHook(hook));
+    }
+}
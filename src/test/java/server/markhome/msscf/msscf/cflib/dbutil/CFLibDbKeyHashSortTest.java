@@ -0,0 +1,182 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashSortTest {
+
+    /**
+     * Random keys with long shared prefixes, exact duplicates, all-0x80 and all-0x7f bytes, and some nulls.
+     */
+    private static <T extends CFLibDbKeyHashBase<T>> T[] keys(int n, int length, long seed, Function<byte[], T> ctor, IntFunction<T[]> arrays) {
+		Random rnd = new Random(seed);
+		T[] keys = arrays.apply(n);
+		byte[] prev = new byte[length];
+		for (int i = 0; i < n; i++) {
+			byte[] b = new byte[length];
+			rnd.nextBytes(b);
+			switch (rnd.nextInt(8)) {
+			case 0:
+				System.arraycopy(prev, 0, b, 0, rnd.nextInt(length + 1));
+				break;
+			case 1:
+				Arrays.fill(b, rnd.nextBoolean() ? (byte) 0x80 : (byte) 0x7f);
+				b[length - 1] = (byte) rnd.nextInt();
+				break;
+			case 2:
+				if (rnd.nextInt(4) == 0) {
+					keys[i] = null;
+					continue;
+				}
+				break;
+			default:
+			}
+			prev = b;
+			keys[i] = ctor.apply(b);
+		}
+		return keys;
+    }
+
+    private static <T extends CFLibDbKeyHashBase<T>> void checkWidth(int length, Function<byte[], T> ctor, IntFunction<T[]> arrays,
+		Comparator<T> ordered)
+    {
+		for (int n : new int[] { 0, 1, 2, 31, 33, 500, 40000 }) {
+			T[] keys = keys(n, length, n * 31 + length, ctor, arrays);
+			T[] expected = keys.clone();
+			Arrays.sort(expected, ordered);
+			T[] actual = keys.clone();
+			CFLibDbKeyHashSort.sortOrdered(actual);
+			assertArrayEquals(expected, actual, "width " + length + " n " + n);
+			actual = keys.clone();
+			CFLibDbKeyHashSort.parallelSortOrdered(actual, ForkJoinPool.commonPool());
+			assertArrayEquals(expected, actual, "parallel width " + length + " n " + n);
+			List<T> list = new LinkedList<T>(Arrays.asList(keys));
+			CFLibDbKeyHashSort.sortOrdered(list);
+			assertEquals(Arrays.asList(expected), list);
+		}
+    }
+
+    @Test
+    void testMatchesCompareOrderedForEveryWidth() {
+		checkWidth(CFLibDbKeyHash128.HASH_LENGTH, CFLibDbKeyHash128::new, CFLibDbKeyHash128[]::new, CFLibDbKeyHash128.getComparator());
+		checkWidth(CFLibDbKeyHash160.HASH_LENGTH, CFLibDbKeyHash160::new, CFLibDbKeyHash160[]::new, CFLibDbKeyHash160.getComparator());
+		checkWidth(CFLibDbKeyHash224.HASH_LENGTH, CFLibDbKeyHash224::new, CFLibDbKeyHash224[]::new, CFLibDbKeyHash224.getComparator());
+		checkWidth(CFLibDbKeyHash256.HASH_LENGTH, CFLibDbKeyHash256::new, CFLibDbKeyHash256[]::new, CFLibDbKeyHash256.getComparator());
+		checkWidth(CFLibDbKeyHash384.HASH_LENGTH, CFLibDbKeyHash384::new, CFLibDbKeyHash384[]::new, CFLibDbKeyHash384.getComparator());
+		checkWidth(CFLibDbKeyHash512.HASH_LENGTH, CFLibDbKeyHash512::new, CFLibDbKeyHash512[]::new, CFLibDbKeyHash512.getComparator());
+    }
+
+    @Test
+    void testStableAndRanged() {
+		CFLibDbKeyHash160[] keys = new CFLibDbKeyHash160[200];
+		for (int i = 0; i < keys.length; i++) {
+			// Equal keys, distinct objects
+			keys[i] = CFLibDbKeyHash160.fromInt(i % 7 - 3);
+		}
+		CFLibDbKeyHash160[] expected = keys.clone();
+		Arrays.sort(expected, 50, 150, CFLibDbKeyHash160.getComparator());
+		CFLibDbKeyHash160[] actual = keys.clone();
+		CFLibDbKeyHashSort.sortOrdered(actual, 50, 150);
+		for (int i = 0; i < keys.length; i++) {
+			assertSame(expected[i], actual[i], "index " + i);
+		}
+		assertThrows(IndexOutOfBoundsException.class, () -> CFLibDbKeyHashSort.sortOrdered(actual, 10, 201));
+    }
+
+    @Test
+    void testColumnarArraySorts() {
+		CFLibDbKeyHash384[] keys = keys(50000, CFLibDbKeyHash384.HASH_LENGTH, 9, CFLibDbKeyHash384::new, CFLibDbKeyHash384[]::new);
+		List<CFLibDbKeyHash384> present = new ArrayList<CFLibDbKeyHash384>();
+		for (CFLibDbKeyHash384 k : keys) {
+			if (k != null) {
+				present.add(k);
+			}
+		}
+		List<CFLibDbKeyHash384> natural = new ArrayList<CFLibDbKeyHash384>(present);
+		natural.sort(null);
+		List<CFLibDbKeyHash384> ordered = new ArrayList<CFLibDbKeyHash384>(present);
+		ordered.sort(CFLibDbKeyHash384.getComparator());
+		CFLibDbKeyHash384Array a = new CFLibDbKeyHash384Array(present);
+		a.sort();
+		assertEquals(natural, a.toList());
+		a.sortOrdered();
+		assertEquals(ordered, a.toList());
+		a = new CFLibDbKeyHash384Array(present);
+		a.parallelSort(ForkJoinPool.commonPool());
+		assertEquals(natural, a.toList());
+		a.parallelSortOrdered(ForkJoinPool.commonPool());
+		assertEquals(ordered, a.toList());
+    }
+
+    @Test
+    void testEveryOrderAndMerge() {
+		CFLibDbKeyHash224[] keys = keys(3000, CFLibDbKeyHash224.HASH_LENGTH, 17, CFLibDbKeyHash224::new, CFLibDbKeyHash224[]::new);
+		for (CFLibDbKeyHashOrder order : CFLibDbKeyHashOrder.values()) {
+			Comparator<CFLibDbKeyHash224> c = CFLibDbKeyHash224.getComparator(order);
+			CFLibDbKeyHash224[] expected = keys.clone();
+			Arrays.sort(expected, c);
+			CFLibDbKeyHash224[] actual = keys.clone();
+			CFLibDbKeyHashSort.sort(actual, order);
+			assertArrayEquals(expected, actual, order.toString());
+			actual = keys.clone();
+			CFLibDbKeyHashSort.parallelSort(actual, order, ForkJoinPool.commonPool());
+			assertArrayEquals(expected, actual, "parallel " + order);
+			List<CFLibDbKeyHash224> left = new ArrayList<CFLibDbKeyHash224>(Arrays.asList(keys).subList(0, 1000));
+			List<CFLibDbKeyHash224> right = new LinkedList<CFLibDbKeyHash224>(Arrays.asList(keys).subList(1000, keys.length));
+			CFLibDbKeyHashSort.sort(left, order);
+			CFLibDbKeyHashSort.sort(right, order);
+			assertTrue(CFLibDbKeyHashSort.isSorted(left, order));
+			List<CFLibDbKeyHash224> merged = CFLibDbKeyHashSort.merge(left, right, order);
+			assertTrue(CFLibDbKeyHashSort.isSorted(merged, order));
+			assertEquals(Arrays.asList(expected), merged);
+			assertFalse(CFLibDbKeyHashSort.isSorted(Arrays.asList(keys), order));
+		}
+		CFLibDbKeyHash224Array a = new CFLibDbKeyHash224Array();
+		for (CFLibDbKeyHash224 k : keys) {
+			if (k != null) {
+				a.add(k);
+			}
+		}
+		assertNull(a.getOrder());
+		a.sort(CFLibDbKeyHashOrder.SIGNED_NULLS_LAST);
+		assertEquals(CFLibDbKeyHashOrder.SIGNED_NULLS_LAST, a.getOrder());
+		assertTrue(a.isSortedBy(CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST));
+		assertFalse(a.isSortedBy(CFLibDbKeyHashOrder.NATURAL_NULLS_LAST));
+		assertTrue(CFLibDbKeyHashSort.isSorted(a.toList(), CFLibDbKeyHashOrder.SIGNED_NULLS_FIRST));
+		a.sort();
+		assertEquals(CFLibDbKeyHashOrder.NATURAL_NULLS_LAST, a.getOrder());
+		a.set(0, a.get(1));
+		assertNull(a.getOrder());
+    }
+}
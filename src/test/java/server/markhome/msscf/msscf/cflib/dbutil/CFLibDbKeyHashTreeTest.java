@@ -0,0 +1,164 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashTreeTest {
+
+    /**
+     * A direct transcription of the definition in the CFLibDbKeyHashTree class comment.
+     */
+    private static byte[] reference(String algo, byte[] payload, int chunkSize, int fanOut) throws Exception {
+		MessageDigest md = MessageDigest.getInstance(algo);
+		List<byte[]> level = new ArrayList<byte[]>();
+		int offset = 0;
+		do {
+			int n = Math.min(chunkSize, payload.length - offset);
+			md.update((byte) 0x00);
+			md.update(payload, offset, n);
+			level.add(md.digest());
+			offset += n;
+		} while (offset < payload.length);
+		while (level.size() > 1) {
+			List<byte[]> next = new ArrayList<byte[]>();
+			for (int i = 0; i < level.size(); i += fanOut) {
+				md.update((byte) 0x01);
+				for (int j = i; j < Math.min(i + fanOut, level.size()); j++) {
+					md.update(level.get(j));
+				}
+				next.add(md.digest());
+			}
+			level = next;
+		}
+		ByteArrayOutputStream root = new ByteArrayOutputStream();
+		root.write(0x02);
+		root.write(ByteBuffer.allocate(20).putLong(chunkSize).putInt(fanOut).putLong(payload.length).array());
+		root.write(level.get(0));
+		return md.digest(root.toByteArray());
+    }
+
+    private static byte[] payload(int length) {
+		byte[] b = new byte[length];
+		for (int i = 0; i < length; i++) {
+			b[i] = (byte) (i * 13 + (i >> 7));
+		}
+		return b;
+    }
+
+    @Test
+    void testMatchesDefinition() throws Exception {
+		int[] lengths = { 0, 1, 99, 100, 101, 1050, 30000 };
+		for (int length : lengths) {
+			byte[] payload = payload(length);
+			byte[] expected = reference("SHA-512", payload, 100, 3);
+			CFLibDbKeyHashTree serial = CFLibDbKeyHash512.newTree(100, 3);
+			assertArrayEquals(expected, serial.build(ByteBuffer.wrap(payload), null), "serial length " + length);
+			CFLibDbKeyHashTree parallel = CFLibDbKeyHash512.newTree(100, 3);
+			assertArrayEquals(expected, parallel.build(ByteBuffer.wrap(payload), ForkJoinPool.commonPool()), "parallel length " + length);
+		}
+		byte[] small = payload(5000);
+		assertArrayEquals(reference("SHA-256", small, CFLibDbKeyHashTree.DEFAULT_CHUNK_SIZE, CFLibDbKeyHashTree.DEFAULT_FAN_OUT), CFLibDbKeyHash256.treeHash(small).getBytes());
+		assertNotEquals(CFLibDbKeyHash256.hash(small), CFLibDbKeyHash256.treeHash(small));
+    }
+
+    @Test
+    void testIncrementalUpdate() throws Exception {
+		byte[] payload = payload(1050);
+		CFLibDbKeyHashTree tree = CFLibDbKeyHash160.newTree(100, 4);
+		tree.build(ByteBuffer.wrap(payload), ForkJoinPool.commonPool());
+		assertEquals(11, tree.getChunkCount());
+
+		byte[] changed = payload.clone();
+		Arrays.fill(changed, 300, 400, (byte) 7);
+		byte[] root = tree.updateChunk(3, ByteBuffer.wrap(changed, 300, 100));
+		assertArrayEquals(reference("SHA-1", changed, 100, 4), root);
+
+		byte[] shorter = Arrays.copyOf(changed, 1020);
+		root = tree.updateChunk(10, ByteBuffer.wrap(shorter, 1000, 20));
+		assertArrayEquals(reference("SHA-1", shorter, 100, 4), root);
+		assertEquals(1020, tree.getPayloadLength());
+		assertArrayEquals(root, tree.getRoot());
+
+		assertThrows(IllegalArgumentException.class, () -> tree.updateChunk(2, ByteBuffer.allocate(99)));
+		assertThrows(IndexOutOfBoundsException.class, () -> tree.updateChunk(11, ByteBuffer.allocate(100)));
+    }
+
+    @Test
+    void testTreeHashFile() throws Exception {
+		byte[] payload = payload(3 * 4096 + 17);
+		Path file = Files.createTempFile("CFLibDbKeyHashTree", ".bin");
+		try {
+			Files.write(file, payload);
+			CFLibDbKeyHashTree fromBuffer = CFLibDbKeyHash384.newTree(4096, 2);
+			CFLibDbKeyHashTree fromFile = CFLibDbKeyHash384.newTree(4096, 2);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				assertArrayEquals(fromBuffer.build(ByteBuffer.wrap(payload), null), fromFile.build(channel, 0, channel.size(), ForkJoinPool.commonPool()));
+			}
+			assertEquals(CFLibDbKeyHash384.treeHash(payload), CFLibDbKeyHash384.treeHashFile(file, null));
+		}
+		finally {
+			Files.delete(file);
+		}
+    }
+
+    @Test
+    void testMappedWindows() throws Exception {
+		byte[] payload = payload(37 * 1000 + 123);
+		Path file = Files.createTempFile("CFLibDbKeyHashTree", ".bin");
+		try {
+			Files.write(file, payload);
+			byte[] expected = reference("SHA-256", Arrays.copyOfRange(payload, 500, payload.length), 1000, 4);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				// Windows of 4 chunks, and windows smaller than one chunk, which fall back to a chunk apiece
+				for (long window : new long[] { 4000, 4500, 100 }) {
+					for (ForkJoinPool pool : new ForkJoinPool[] { null, ForkJoinPool.commonPool() }) {
+						CFLibDbKeyHashTree.MappedSource source = new CFLibDbKeyHashTree.MappedSource(channel, 500, payload.length - 500, 1000, window);
+						CFLibDbKeyHashTree tree = CFLibDbKeyHash256.newTree(1000, 4);
+						assertArrayEquals(expected, tree.build(payload.length - 500, source, pool), "window " + window);
+						// Every window is dropped once its chunks are digested
+						for (int w = 0; w < source.windows.length(); w++) {
+							assertNull(source.windows.get(w));
+							assertEquals(0, source.pending.get(w));
+						}
+					}
+				}
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHashWireTest {
+
+    private interface Reader<R> {
+		R read(DataInput in) throws IOException;
+    }
+
+    private static DataInputStream input(byte[] b) {
+		return new DataInputStream(new ByteArrayInputStream(b));
+    }
+
+    private static byte[] serialize(Object o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(o);
+		}
+		return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] b) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(b))) {
+			return in.readObject();
+		}
+    }
+
+    private static <T extends CFLibDbKeyHashBase<T>> void checkWidth(int length, Function<byte[], T> ctor, Supplier<T> unset,
+		Function<ByteBuffer, T> readBuffer, Reader<T> readData, Reader<List<T>> readAll, Supplier<? extends CFLibDbKeyHashArray<T>> newArray)
+		throws IOException, ClassNotFoundException
+    {
+		Random rnd = new Random(length);
+		List<T> keys = new ArrayList<T>();
+		for (int i = 0; i < 3000; i++) {
+			byte[] b = new byte[length];
+			rnd.nextBytes(b);
+			keys.add(ctor.apply(b));
+		}
+		for (T k : keys.subList(0, 50)) {
+			// The wire bytes are the key bytes whatever the buffer order
+			for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+				for (ByteBuffer buf : new ByteBuffer[] { ByteBuffer.allocate(length + 1), ByteBuffer.allocateDirect(length + 1) }) {
+					buf.order(order).put((byte) 7);
+					k.writeTo(buf);
+					assertEquals(length + 1, buf.position());
+					buf.flip().get();
+					byte[] raw = new byte[length];
+					buf.duplicate().get(raw);
+					assertArrayEquals(k.getBytes(), raw);
+					assertEquals(k, readBuffer.apply(buf));
+					assertFalse(buf.hasRemaining());
+				}
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			k.writeTo(new DataOutputStream(bytes));
+			assertArrayEquals(k.getBytes(), bytes.toByteArray());
+			assertEquals(k, readData.read(input(bytes.toByteArray())));
+			assertEquals(k, deserialize(serialize(k)));
+		}
+		assertThrows(IndexOutOfBoundsException.class, () -> readBuffer.apply(ByteBuffer.allocate(length - 1)));
+		assertThrows(IndexOutOfBoundsException.class, () -> keys.get(0).writeTo(ByteBuffer.allocate(length - 1)));
+		assertThrows(EOFException.class, () -> readData.read(input(new byte[length - 1])));
+
+		// A key without a value writes as zeros on the wire
+		T none = unset.get();
+		ByteBuffer zeros = ByteBuffer.allocate(length);
+		none.writeTo(zeros);
+		assertArrayEquals(new byte[length], zeros.array());
+		assertTrue(readBuffer.apply(zeros.flip()).hasValue());
+
+		// Bulk forms are a count then the packed bytes, and agree with each other
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CFLibDbKeyHashBase.writeAll(keys, new DataOutputStream(bytes));
+		byte[] packed = bytes.toByteArray();
+		assertEquals(4 + keys.size() * length, packed.length);
+		assertEquals(keys.size(), ByteBuffer.wrap(packed).getInt());
+		assertEquals(keys, readAll.read(input(packed)));
+		CFLibDbKeyHashArray<T> a = newArray.get();
+		a.addAllFrom(input(packed));
+		assertEquals(keys, a.toList());
+		bytes.reset();
+		a.writeTo(new DataOutputStream(bytes));
+		assertArrayEquals(packed, bytes.toByteArray());
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+			for (ByteBuffer buf : new ByteBuffer[] { ByteBuffer.allocate(packed.length), ByteBuffer.allocateDirect(packed.length) }) {
+				buf.order(order);
+				a.writeTo(buf);
+				assertFalse(buf.hasRemaining());
+				buf.flip();
+				byte[] b = new byte[packed.length];
+				buf.duplicate().get(b);
+				assertArrayEquals(packed, b);
+				CFLibDbKeyHashArray<T> back = newArray.get();
+				back.addAllFrom(buf);
+				assertFalse(buf.hasRemaining());
+				assertEquals(keys, back.toList());
+				buf.clear();
+				CFLibDbKeyHashBase.writeAll(keys, buf);
+				buf.flip();
+				buf.duplicate().get(b);
+				assertArrayEquals(packed, b);
+			}
+		}
+		assertEquals(List.of(), readAll.read(input(new byte[4])));
+
+		// Malformed input leaves the array as it was
+		CFLibDbKeyHashArray<T> partial = newArray.get();
+		partial.add(keys.get(0));
+		assertThrows(EOFException.class, () -> partial.addAllFrom(input(Arrays.copyOf(packed, packed.length - 1))));
+		assertEquals(1, partial.size());
+		ByteBuffer shortBuf = ByteBuffer.wrap(Arrays.copyOf(packed, packed.length - 1));
+		assertThrows(IndexOutOfBoundsException.class, () -> partial.addAllFrom(shortBuf));
+		assertEquals(0, shortBuf.position());
+		assertEquals(1, partial.size());
+		assertThrows(StreamCorruptedException.class, () -> partial.addAllFrom(input(new byte[] { (byte) 0x80, 0, 0, 0 })));
+		assertThrows(IllegalArgumentException.class, () -> partial.addAllFrom(ByteBuffer.wrap(new byte[] { (byte) 0x80, 0, 0, 0 })));
+    }
+
+    @Test
+    void testEveryWidth() throws IOException, ClassNotFoundException {
+		checkWidth(CFLibDbKeyHash128.HASH_LENGTH, CFLibDbKeyHash128::new, CFLibDbKeyHash128::new, CFLibDbKeyHash128::readFrom,
+			CFLibDbKeyHash128::readFrom, CFLibDbKeyHash128::readAll, CFLibDbKeyHash128Array::new);
+		checkWidth(CFLibDbKeyHash160.HASH_LENGTH, CFLibDbKeyHash160::new, CFLibDbKeyHash160::new, CFLibDbKeyHash160::readFrom,
+			CFLibDbKeyHash160::readFrom, CFLibDbKeyHash160::readAll, CFLibDbKeyHash160Array::new);
+		checkWidth(CFLibDbKeyHash224.HASH_LENGTH, CFLibDbKeyHash224::new, CFLibDbKeyHash224::new, CFLibDbKeyHash224::readFrom,
+			CFLibDbKeyHash224::readFrom, CFLibDbKeyHash224::readAll, CFLibDbKeyHash224Array::new);
+		checkWidth(CFLibDbKeyHash256.HASH_LENGTH, CFLibDbKeyHash256::new, CFLibDbKeyHash256::new, CFLibDbKeyHash256::readFrom,
+			CFLibDbKeyHash256::readFrom, CFLibDbKeyHash256::readAll, CFLibDbKeyHash256Array::new);
+		checkWidth(CFLibDbKeyHash384.HASH_LENGTH, CFLibDbKeyHash384::new, CFLibDbKeyHash384::new, CFLibDbKeyHash384::readFrom,
+			CFLibDbKeyHash384::readFrom, CFLibDbKeyHash384::readAll, CFLibDbKeyHash384Array::new);
+		checkWidth(CFLibDbKeyHash512.HASH_LENGTH, CFLibDbKeyHash512::new, CFLibDbKeyHash512::new, CFLibDbKeyHash512::readFrom,
+			CFLibDbKeyHash512::readFrom, CFLibDbKeyHash512::readAll, CFLibDbKeyHash512Array::new);
+    }
+
+    /**
+     * The tail of a serialized stream holding one Externalizable object: its block of raw data and the end of the block.
+     */
+    private static byte[] block(byte[] stream, int length) {
+		assertEquals(0x77, stream[stream.length - length - 3]);
+		assertEquals(length, stream[stream.length - length - 2] & 0xFF);
+		assertEquals(0x78, stream[stream.length - 1]);
+		return Arrays.copyOfRange(stream, stream.length - length - 1, stream.length - 1);
+    }
+
+    @Test
+    void testSerializedForm() throws IOException, ClassNotFoundException {
+		// An array serializes as its packed keys, keeping the order it was sorted by
+		CFLibDbKeyHash256Array a = new CFLibDbKeyHash256Array();
+		for (int i = 0; i < 1000; i++) {
+			a.add(CFLibDbKeyHash256.hash("wire " + i));
+		}
+		a.sort();
+		byte[] stream = serialize(a);
+		assertTrue(stream.length < 4 + 1000 * 32 + 1000, "serialized " + stream.length + " bytes");
+		CFLibDbKeyHash256Array back = (CFLibDbKeyHash256Array) deserialize(stream);
+		assertEquals(a.toList(), back.toList());
+		assertEquals(CFLibDbKeyHashOrder.NATURAL_NULLS_LAST, back.getOrder());
+		back.add(CFLibDbKeyHash256.hash("more"));
+		assertEquals(1001, back.size());
+		assertEquals(0, ((CFLibDbKeyHash256Array) deserialize(serialize(new CFLibDbKeyHash256Array()))).size());
+
+		// Mixed widths and nulls are not one bulk record
+		CFLibDbKeyHash256 k = CFLibDbKeyHash256.hash("wire");
+		List<CFLibDbKeyHashBase<?>> mixed = List.of(k, CFLibDbKeyHash128.hash("wire"));
+		assertThrows(IllegalArgumentException.class, () -> CFLibDbKeyHashBase.writeAll(mixed, new DataOutputStream(new ByteArrayOutputStream())));
+		assertThrows(NullPointerException.class, () -> CFLibDbKeyHashBase.writeAll(Arrays.asList(k, null), ByteBuffer.allocate(100)));
+    }
+
+    /**
+     * A stream written by a release that held the key in a byte array: one object whose only field is bytes,
+     * with the class name and serialVersionUID of that release.  A null value is a key that had not been given one.
+     */
+    private static byte[] baselineStream(Class<?> type, long uid, byte[] value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeShort(0xACED);
+		out.writeShort(5);
+		out.writeByte(0x73); // TC_OBJECT
+		out.writeByte(0x72); // TC_CLASSDESC
+		out.writeUTF(type.getName());
+		out.writeLong(uid);
+		out.writeByte(0x02); // SC_SERIALIZABLE
+		out.writeShort(1);
+		out.writeByte('[');
+		out.writeUTF("bytes");
+		out.writeByte(0x74); // TC_STRING
+		out.writeUTF("[B");
+		out.writeByte(0x78); // TC_ENDBLOCKDATA
+		out.writeByte(0x70); // no serializable superclass
+		if (value == null) {
+			out.writeByte(0x70); // TC_NULL
+		}
+		else {
+			out.writeByte(0x75); // TC_ARRAY
+			out.writeByte(0x72);
+			out.writeUTF("[B");
+			out.writeLong(0xACF317F8060854E0L);
+			out.writeByte(0x02);
+			out.writeShort(0);
+			out.writeByte(0x78);
+			out.writeByte(0x70);
+			out.writeInt(value.length);
+			out.write(value);
+		}
+		out.flush();
+		return bytes.toByteArray();
+    }
+
+    private static <T extends CFLibDbKeyHashBase<T>> void checkBaseline(Class<T> type, long uid, int length, Function<byte[], T> ctor)
+		throws IOException, ClassNotFoundException
+    {
+		byte[] b = new byte[length];
+		new Random(length).nextBytes(b);
+		T k = ctor.apply(b);
+		assertEquals(k, deserialize(baselineStream(type, uid, b)));
+		T none = type.cast(deserialize(baselineStream(type, uid, null)));
+		assertFalse(none.hasValue());
+		assertNull(none.getBytes());
+		assertThrows(IOException.class, () -> deserialize(baselineStream(type, uid, new byte[length - 1])));
+		// The current form still carries the bytes field under the same serialVersionUID
+		byte[] stream = serialize(k);
+		assertEquals(uid, ObjectStreamClass.lookup(type).getSerialVersionUID());
+		assertArrayEquals(b, Arrays.copyOfRange(stream, stream.length - length - 1, stream.length - 1));
+    }
+
+    @Test
+    void testBaselineSerializedForm() throws IOException, ClassNotFoundException {
+		checkBaseline(CFLibDbKeyHash128.class, 202505131740L, CFLibDbKeyHash128.HASH_LENGTH, CFLibDbKeyHash128::new);
+		checkBaseline(CFLibDbKeyHash160.class, 202505162130L, CFLibDbKeyHash160.HASH_LENGTH, CFLibDbKeyHash160::new);
+		checkBaseline(CFLibDbKeyHash224.class, 202505162145L, CFLibDbKeyHash224.HASH_LENGTH, CFLibDbKeyHash224::new);
+		checkBaseline(CFLibDbKeyHash256.class, 202505162230L, CFLibDbKeyHash256.HASH_LENGTH, CFLibDbKeyHash256::new);
+		checkBaseline(CFLibDbKeyHash384.class, 202505162237L, CFLibDbKeyHash384.HASH_LENGTH, CFLibDbKeyHash384::new);
+		checkBaseline(CFLibDbKeyHash512.class, 202505130953L, CFLibDbKeyHash512.HASH_LENGTH, CFLibDbKeyHash512::new);
+    }
+
+    @Test
+    void testUuid6() throws IOException, ClassNotFoundException {
+		for (int i = 0; i < 20; i++) {
+			CFLibUuid6 u = i % 2 == 0 ? CFLibUuid6.generateUuid6() : CFLibUuid6.randomUuid6();
+			byte[] stream = serialize(u);
+			assertArrayEquals(u.getBytes(), block(stream, CFLibUuid6.TOTAL_BYTES));
+			assertEquals(u, deserialize(stream));
+			ByteBuffer buf = ByteBuffer.allocateDirect(CFLibUuid6.TOTAL_BYTES);
+			u.writeTo(buf);
+			assertEquals(u, CFLibUuid6.readFrom(buf.flip()));
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			u.writeTo(new DataOutputStream(bytes));
+			assertArrayEquals(u.getBytes(), bytes.toByteArray());
+			assertEquals(u, CFLibUuid6.readFrom(input(bytes.toByteArray())));
+		}
+		// A shared reference stays shared
+		CFLibUuid6 u = CFLibUuid6.randomUuid6();
+		Object[] pair = (Object[]) deserialize(serialize(new Object[] { u, u }));
+		assertSame(pair[0], pair[1]);
+		assertEquals(u, pair[0]);
+    }
+}
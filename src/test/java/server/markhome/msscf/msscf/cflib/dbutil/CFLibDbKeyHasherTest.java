@@ -0,0 +1,106 @@
+/*
+ *	MSS Code Factory CFLib DbUtil
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+
+package server.markhome.msscf.msscf.cflib.dbutil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CFLibDbKeyHasherTest {
+
+    private static final byte[] NS = "tenant-42:".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testMatchesConcatenatedHash() {
+		CFLibDbKeyHasher<CFLibDbKeyHash256> h = CFLibDbKeyHash256.newHasher("tenant-42:");
+		byte[] text = "order é中😀".getBytes(StandardCharsets.UTF_8);
+		byte[] num = ByteBuffer.allocate(12).putInt(7).putLong(1234L).array();
+		CFLibDbKeyHash256 expected = CFLibDbKeyHash256.hash(NS, text, num);
+		assertEquals(expected, h.update("order é中😀").update(7).update(1234L).finish());
+		// The hasher is reusable once finished
+		assertEquals(expected, h.update("order é中😀").update(7).update(1234L).finish());
+		assertEquals(CFLibDbKeyHash256.hash(NS, text), h.hash("order é中😀"));
+    }
+
+    @Test
+    void testEveryWidth() {
+		byte[] v = "value".getBytes(StandardCharsets.UTF_8);
+		assertEquals(CFLibDbKeyHash128.hash(NS, v), CFLibDbKeyHash128.newHasher(NS).hash(v));
+		assertEquals(CFLibDbKeyHash160.hash(NS, v), CFLibDbKeyHash160.newHasher(NS).hash(v));
+		assertEquals(CFLibDbKeyHash224.hash(NS, v), CFLibDbKeyHash224.newHasher(NS).hash(v));
+		assertEquals(CFLibDbKeyHash256.hash(NS, v), CFLibDbKeyHash256.newHasher(NS).hash(v));
+		assertEquals(CFLibDbKeyHash384.hash(NS, v), CFLibDbKeyHash384.newHasher(NS).hash(v));
+		assertEquals(CFLibDbKeyHash512.hash(NS, v), CFLibDbKeyHash512.newHasher(NS).hash(v));
+    }
+
+    @Test
+    void testNestedKeysAndLargeValues() {
+		CFLibDbKeyHash128 inner = CFLibDbKeyHash128.hash("inner");
+		byte[] big = new byte[5000];
+		for (int i = 0; i < big.length; i++) {
+			big[i] = (byte) i;
+		}
+		int[] ints = new int[700];
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = i * 31;
+		}
+		ByteBuffer intBytes = ByteBuffer.allocate(ints.length * 4);
+		intBytes.asIntBuffer().put(ints);
+		CFLibDbKeyHash512 expected = CFLibDbKeyHash512.hash(NS, inner.getBytes(), big, intBytes.array());
+		CFLibDbKeyHasher<CFLibDbKeyHash512> h = CFLibDbKeyHash512.newHasher(NS);
+		assertEquals(expected, h.update(inner).update(big).update(ints).finish());
+		assertEquals(expected, h.update(inner).update(ByteBuffer.wrap(big)).update(ints).finish());
+    }
+
+    @Test
+    void testResetDiscardsValue() {
+		CFLibDbKeyHasher<CFLibDbKeyHash160> h = CFLibDbKeyHash160.newHasher("ns");
+		h.update("abandoned").update(99);
+		h.reset();
+		assertEquals(CFLibDbKeyHash160.hash("nsx"), h.update("x").finish());
+		assertEquals(CFLibDbKeyHash160.hash("ns"), h.finish());
+		assertNotEquals(CFLibDbKeyHash160.newHasher("a").hash("bc"), CFLibDbKeyHash160.newHasher("b").hash("bc"));
+		assertThrows(NullPointerException.class, () -> CFLibDbKeyHash160.newHasher((String) null));
+    }
+
+    @Test
+    void testMidstateFromBlockSize() {
+		// Namespaces shorter than one block of the width's digest are re-fed, longer ones cloned
+		byte[] ns64 = new byte[64];
+		byte[] ns127 = new byte[127];
+		byte[] ns128 = new byte[128];
+		assertTrue(CFLibDbKeyHash256.newHasher(ns64).useMidstate);
+		assertFalse(CFLibDbKeyHash256.newHasher(new byte[63]).useMidstate);
+		assertFalse(CFLibDbKeyHash384.newHasher(ns64).useMidstate);
+		assertFalse(CFLibDbKeyHash512.newHasher(ns127).useMidstate);
+		assertTrue(CFLibDbKeyHash512.newHasher(ns128).useMidstate);
+		assertEquals(128, CFLibDbKeyHasher.blockBytes(CFLibDbKeyHash256.HASH_ALGO_SHA512_256));
+		assertEquals(0, CFLibDbKeyHasher.blockBytes("SHA3-256"));
+		byte[] v = "value".getBytes(StandardCharsets.UTF_8);
+		for (byte[] ns : new byte[][] { ns64, ns127, ns128 }) {
+			assertEquals(CFLibDbKeyHash384.hash(ns, v), CFLibDbKeyHash384.newHasher(ns).hash(v));
+			assertEquals(CFLibDbKeyHash256.hash(ns, v), CFLibDbKeyHash256.newHasher(ns).hash(v));
+		}
+    }
+}